@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.foxnet.rmi.util.concurrent.Future;
+import com.foxnet.rmi.util.concurrent.FutureCallback;
+
+/**
+ * A call chain connects an invocation with all nested invocations (e.g.
+ * callbacks) which are made while the invocation is processed. A thread which
+ * waits synchronously for an invocation of a chain executes the incoming
+ * nested invocations of the same chain itself, so deep callback chains neither
+ * need nor exhaust further invocation threads.
+ * <p>
+ * Waiters are registered per invoker manager, so only the connection of the
+ * waiting invocation can hand over tasks. A thread only starts waiting for a
+ * chain which was issued by this side or received from the same connection,
+ * so a remote side can not make a thread execute its invocations by sending a
+ * guessed chain id. Handed over tasks bypass the concurrency caps and the
+ * queued tasks of their scheduler, since the waiting thread already runs
+ * within an admitted task. They are only refused if the scheduler is shut
+ * down.
+ * 
+ * @author Christopher Probst
+ */
+final class CallChain {
+
+	/*
+	 * A task which is handed over to a waiting thread.
+	 */
+	private static final class Handoff {
+
+		// The runnable
+		final Runnable runnable;
+
+		// The executor which is used if the waiting thread returns
+		final Executor fallback;
+
+		Handoff(Runnable runnable, Executor fallback) {
+			this.runnable = runnable;
+			this.fallback = fallback;
+		}
+	}
+
+	/*
+	 * A thread which waits for an invocation of a chain.
+	 */
+	static final class Waiter {
+
+		// The chain id
+		final long chainId;
+
+		// The handed over tasks (guarded by this)
+		final Queue<Handoff> tasks = new ArrayDeque<>();
+
+		// The invoker managers this waiter is registered with (guarded by this)
+		final List<InvokerManager> managers = new ArrayList<>();
+
+		// The number of nested waits of the thread (guarded by this)
+		int depth;
+
+		// Whether or not the thread stopped waiting (guarded by this)
+		boolean closed;
+
+		Waiter(long chainId) {
+			this.chainId = chainId;
+		}
+
+		synchronized boolean offer(Handoff handoff) {
+			if (closed) {
+				return false;
+			}
+			tasks.offer(handoff);
+			notifyAll();
+			return true;
+		}
+
+		boolean register(InvokerManager manager) {
+			Waiter existing = manager.chainWaiters.putIfAbsent(chainId, this);
+			if (existing == null) {
+				synchronized (this) {
+					managers.add(manager);
+				}
+				return true;
+			}
+			return existing == this;
+		}
+	}
+
+	// The logger
+	private static final Logger LOGGER = Logger.getLogger(CallChain.class
+			.getName());
+
+	// Used to create chain ids (random base to avoid collisions between peers)
+	private static final AtomicLong IDS = new AtomicLong(new Random().nextLong());
+
+	// The waiter of the current thread or null
+	private static final ThreadLocal<Waiter> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * @return the chain id for a new invocation. Invocations made while a
+	 *         remote invocation is processed inherit its chain id.
+	 */
+	static long chainId() {
+		InvocationTask current = InvocationTask.current();
+		if (current != null && current.message().chainId() != 0) {
+			return current.message().chainId();
+		}
+
+		long id;
+		while ((id = IDS.incrementAndGet()) == 0) {
+			// 0 means no chain
+		}
+		return id;
+	}
+
+	/**
+	 * @param manager
+	 *            The invoker manager of a new invocation.
+	 * @param chainId
+	 *            The chain id of the new invocation.
+	 * @return true if the given chain id was issued by this side or was
+	 *         received from the remote side of the given invoker manager,
+	 *         otherwise false. Only such chains can be awaited, since the
+	 *         remote side knows them anyway.
+	 */
+	static boolean isKnownBy(InvokerManager manager, long chainId) {
+		InvocationTask current = InvocationTask.current();
+		return current == null || current.message().chainId() != chainId
+				|| current.manager() == manager;
+	}
+
+	/**
+	 * Returns the executor for an incoming invocation of the given chain. If a
+	 * thread waits for the chain on the given invoker manager, the invocation
+	 * is handed over to this thread.
+	 * 
+	 * @param manager
+	 *            The invoker manager which received the invocation.
+	 * @param chainId
+	 *            The chain id.
+	 * @param fallback
+	 *            The executor which is used if no thread waits for the chain.
+	 * @return the executor.
+	 */
+	static Executor executorOf(InvokerManager manager, long chainId,
+			final Executor fallback) {
+		final Waiter waiter = chainId != 0 ? manager.chainWaiters
+				.get(chainId) : null;
+		if (waiter == null) {
+			return fallback;
+		}
+
+		return new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				if (!waiter.offer(new Handoff(command, fallback))) {
+					fallback.execute(command);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Registers the calling thread as waiter for the given chain on the given
+	 * invoker manager. Incoming invocations of the chain are handed over to
+	 * the thread from now on, so the thread should enter the chain before it
+	 * sends the invocation it waits for. Otherwise nested invocations which
+	 * arrive in the meantime would be queued by the scheduler.
+	 * 
+	 * @param manager
+	 *            The invoker manager.
+	 * @param chainId
+	 *            The chain id.
+	 * @param known
+	 *            Whether or not the chain id is known by the remote side of
+	 *            the invoker manager.
+	 * @return the waiter which must be passed to
+	 *         {@link #await(Waiter, Future, long)} by the same thread or null
+	 *         if the calling thread can not wait for the chain.
+	 */
+	static Waiter enter(InvokerManager manager, long chainId, boolean known) {
+		// Nested waits of the same chain use the waiter of the thread
+		Waiter previous = CURRENT.get();
+		Waiter waiter = previous != null && previous.chainId == chainId ? previous
+				: null;
+
+		if (waiter == null) {
+			// Only chains known by the remote side are accepted
+			if (!known) {
+				return null;
+			}
+			waiter = new Waiter(chainId);
+		}
+
+		// Another thread waits for the chain on this invoker manager
+		if (!waiter.register(manager) && waiter != previous) {
+			return null;
+		}
+
+		synchronized (waiter) {
+			waiter.depth++;
+		}
+		return waiter;
+	}
+
+	/**
+	 * Waits for the given future and executes the handed over invocations of
+	 * the chain meanwhile. After calling this method the future is completed
+	 * and the waiter is released.
+	 * 
+	 * @param waiter
+	 *            The waiter returned by
+	 *            {@link #enter(InvokerManager, long, boolean)}.
+	 * @param future
+	 *            The future.
+	 * @param timeoutMillies
+	 *            The timeout you want to wait in milliseconds.
+	 */
+	static void await(Waiter waiter, Future future, long timeoutMillies) {
+		Waiter previous = CURRENT.get();
+		CURRENT.set(waiter);
+		try {
+			process(waiter, future, timeoutMillies);
+		} finally {
+			CURRENT.set(previous);
+			release(waiter);
+		}
+	}
+
+	/**
+	 * Waits for the given future and executes the handed over invocations of
+	 * the given chain meanwhile. After calling this method the future is
+	 * completed, unless the calling thread can not wait for the chain.
+	 * 
+	 * @param manager
+	 *            The invoker manager of the future.
+	 * @param chainId
+	 *            The chain id.
+	 * @param known
+	 *            Whether or not the chain id is known by the remote side of
+	 *            the invoker manager.
+	 * @param future
+	 *            The future.
+	 * @param timeoutMillies
+	 *            The timeout you want to wait in milliseconds.
+	 * @return true if the calling thread waited, otherwise false.
+	 */
+	static boolean await(InvokerManager manager, long chainId,
+			boolean known, Future future, long timeoutMillies) {
+		Waiter waiter = enter(manager, chainId, known);
+		if (waiter == null) {
+			return false;
+		}
+		await(waiter, future, timeoutMillies);
+		return true;
+	}
+
+	/**
+	 * Executes a handed over task. If the task belongs to a scheduler, the
+	 * scheduler must admit it, otherwise it is queued by the scheduler.
+	 * 
+	 * @param handoff
+	 *            The handed over task.
+	 */
+	private static void execute(Handoff handoff) {
+		if (handoff.fallback instanceof InvocationScheduler) {
+			InvocationScheduler scheduler = (InvocationScheduler) handoff.fallback;
+			if (!scheduler.runDirectly(handoff.runnable)) {
+				scheduler.execute(handoff.runnable);
+			}
+		} else {
+			handoff.runnable.run();
+		}
+	}
+
+	/**
+	 * Executes the handed over tasks until the future is completed.
+	 * 
+	 * @param waiter
+	 *            The waiter.
+	 * @param future
+	 *            The future.
+	 * @param timeoutMillies
+	 *            The timeout you want to wait in milliseconds.
+	 */
+	private static void process(final Waiter waiter, Future future,
+			long timeoutMillies) {
+
+		// Wake up the waiter when completed
+		FutureCallback wakeUp = new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				synchronized (waiter) {
+					waiter.notifyAll();
+				}
+			}
+		};
+		future.add(wakeUp);
+
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(timeoutMillies);
+		try {
+			for (;;) {
+				Handoff handoff;
+				synchronized (waiter) {
+					while ((handoff = waiter.tasks.poll()) == null) {
+						if (future.isCompleted()) {
+							return;
+						} else if (timeoutMillies > 0) {
+							long remaining = deadline - System.nanoTime();
+							if (remaining <= 0) {
+								future.fail(new IllegalStateException(
+										"Future has timed out during "
+												+ "synchronization"));
+								return;
+							}
+							TimeUnit.NANOSECONDS.timedWait(waiter, remaining);
+						} else {
+							waiter.wait();
+						}
+					}
+				}
+
+				try {
+					execute(handoff);
+				} catch (Throwable e) {
+					LOGGER.warning("Failed to execute nested invocation. "
+							+ "Reason: " + e.getMessage());
+				}
+			}
+		} catch (InterruptedException e) {
+			// Fail the future (Thread got interrupted...)
+			future.fail(e);
+		} finally {
+			future.remove(wakeUp);
+		}
+	}
+
+	/**
+	 * Unregisters the waiter if the outermost wait returns. Tasks which are
+	 * still queued are passed to their fallback executors. Must also be called
+	 * if a thread entered a chain but does not wait for it.
+	 * 
+	 * @param waiter
+	 *            The waiter.
+	 */
+	static void release(Waiter waiter) {
+		Queue<Handoff> remaining;
+		List<InvokerManager> managers;
+		synchronized (waiter) {
+			if (--waiter.depth > 0) {
+				return;
+			}
+			waiter.closed = true;
+			remaining = new ArrayDeque<>(waiter.tasks);
+			waiter.tasks.clear();
+			managers = new ArrayList<>(waiter.managers);
+		}
+
+		for (InvokerManager manager : managers) {
+			manager.chainWaiters.remove(waiter.chainId, waiter);
+		}
+
+		for (Handoff handoff : remaining) {
+			try {
+				handoff.fallback.execute(handoff.runnable);
+			} catch (Throwable e) {
+				LOGGER.warning("Failed to execute nested invocation. "
+						+ "Reason: " + e.getMessage());
+			}
+		}
+	}
+
+	private CallChain() {
+	}
+}
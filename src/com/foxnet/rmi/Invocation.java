@@ -32,6 +32,7 @@
 package com.foxnet.rmi;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
 
 import com.foxnet.rmi.util.concurrent.Future;
 
@@ -46,7 +47,16 @@ public final class Invocation extends Future {
 	private final Invoker invoker;
 
 	// The invocation message of this invocation
-	private final InvocationMessage invocationMessage;
+	private volatile InvocationMessage invocationMessage;
+
+	// Whether or not the remote side knows the chain of the invocation
+	private final boolean chainKnown;
+
+	// The deadline of the invocation (based on System.nanoTime())
+	private volatile long deadline;
+
+	// The waiter of the calling thread if it entered the chain before sending
+	private CallChain.Waiter waiter;
 
 	/*
 	 * (non-Javadoc)
@@ -58,6 +68,126 @@ public final class Invocation extends Future {
 		return invoker.manager().remoteToLocal(attachment);
 	}
 
+	/**
+	 * Synchronizes this invocation with the calling thread. While waiting, the
+	 * calling thread executes incoming nested invocations (e.g. callbacks) of
+	 * the same call chain, so re-entrant calls do not need further invocation
+	 * threads.
+	 * 
+	 * @see com.foxnet.rmi.util.concurrent.Future#synchronize(long)
+	 */
+	@Override
+	public boolean synchronize(long timeoutMillies) {
+		// Waiting in the call chain bypasses the future
+		awaiting(true);
+		try {
+			CallChain.Waiter entered = waiter;
+			if (entered != null) {
+				waiter = null;
+				CallChain.await(entered, this, timeoutMillies);
+				return isSuccessful();
+			}
+
+			if (!isCompleted()
+					&& invocationMessage.chainId() != 0
+					&& CallChain.await(invoker.manager(),
+							invocationMessage.chainId(), chainKnown, this,
+							timeoutMillies)) {
+				return isSuccessful();
+			}
+			return super.synchronize(timeoutMillies);
+		} finally {
+			awaiting(false);
+		}
+	}
+
+	/**
+	 * Lets the calling thread enter the call chain of this invocation before
+	 * the invocation is sent. Nested invocations which arrive before the
+	 * thread synchronizes are then handed over to it as well instead of being
+	 * queued behind the busy thread. The calling thread must either
+	 * synchronize this invocation or call {@link #leaveChain()} afterwards.
+	 */
+	void enterChain() {
+		waiter = CallChain.enter(invoker.manager(),
+				invocationMessage.chainId(), chainKnown);
+	}
+
+	/**
+	 * Leaves the call chain entered by {@link #enterChain()} without
+	 * synchronizing.
+	 */
+	void leaveChain() {
+		CallChain.Waiter entered = waiter;
+		if (entered != null) {
+			waiter = null;
+			CallChain.release(entered);
+		}
+	}
+
+	/**
+	 * Calculates the timeout of a new invocation. If the invoker does not
+	 * specify a timeout and the invocation is created within a remote
+	 * invocation which has a deadline, the remaining time budget of the remote
+	 * caller is used.
+	 * 
+	 * @param invoker
+	 *            The invoker.
+	 * @return the timeout in milliseconds. A value <= 0 means no timeout.
+	 */
+	private static long timeoutOf(Invoker invoker) {
+		// Timeout of the invoker has precedence
+		if (invoker.proxyTimeout() > 0) {
+			return invoker.proxyTimeout();
+		}
+
+		// Propagate the deadline of the current remote invocation
+		InvocationTask current = InvocationTask.current();
+		if (current != null && current.hasDeadline()) {
+			return Math.max(1, current.remainingMillies());
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Calculates the result mode of a new invocation. The result mode of the
+	 * invoker has precedence over the {@link DiscardResult} annotation.
+	 * 
+	 * @param invoker
+	 *            The invoker.
+	 * @param methodId
+	 *            The method id.
+	 * @return the result mode.
+	 */
+	private static ResultMode resultModeOf(Invoker invoker, int methodId) {
+		if (invoker.resultMode() != null) {
+			return invoker.resultMode();
+		}
+
+		return invoker.binding().template().resultMode(methodId);
+	}
+
+	/**
+	 * Creates a new invocation message.
+	 * 
+	 * @param invoker
+	 *            The invoker.
+	 * @param methodId
+	 *            The method id.
+	 * @param priority
+	 *            The priority or 0 to use the priority of the method.
+	 * @param arguments
+	 *            The arguments.
+	 * @return the new invocation message.
+	 */
+	static InvocationMessage newMessage(Invoker invoker, int methodId,
+			int priority, Object... arguments) {
+		return new InvocationMessage(invoker.binding().isDynamic(), invoker
+				.binding().id(), methodId, timeoutOf(invoker), priority,
+				CallChain.chainId(), resultModeOf(invoker, methodId), arguments);
+	}
+
 	/**
 	 * Creates a new invocation with the given arguments.
 	 * 
@@ -65,39 +195,87 @@ public final class Invocation extends Future {
 	 *            The invoker.
 	 * @param methodId
 	 *            The method id.
+	 * @param priority
+	 *            The priority or 0 to use the priority of the method.
 	 * @param arguments
 	 *            The arguments.
 	 */
-	Invocation(Invoker invoker, int methodId, Object... arguments) {
+	Invocation(Invoker invoker, int methodId, int priority,
+			Object... arguments) {
 		if (invoker == null) {
 			throw new NullPointerException("invoker");
 		}
 
 		// Create the new invocation message
-		invocationMessage = new InvocationMessage(
-				invoker.binding().isDynamic(), invoker.binding().id(),
-				methodId, arguments);
+		invocationMessage = newMessage(invoker, methodId, priority, arguments);
+		chainKnown = CallChain.isKnownBy(invoker.manager(),
+				invocationMessage.chainId());
 
 		// Save the invoker
 		this.invoker = invoker;
 	}
 
+	/**
+	 * Starts the time budget of this invocation. Called when the invocation is
+	 * dispatched, so waiting for capacity uses a part of the budget.
+	 */
+	void startDeadline() {
+		deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(invocationMessage.timeout());
+	}
+
+	/**
+	 * @return true if the invocation has a timeout, otherwise false.
+	 */
+	public boolean hasDeadline() {
+		return invocationMessage.timeout() > 0;
+	}
+
+	/**
+	 * @return the remaining time budget of this invocation in nanoseconds or
+	 *         {@link Long#MAX_VALUE} if there is no timeout.
+	 */
+	long remainingNanos() {
+		return hasDeadline() ? deadline - System.nanoTime() : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Reduces the timeout of the message to the remaining time budget before
+	 * the message is sent.
+	 * 
+	 * @return false if the budget is used up, otherwise true.
+	 */
+	boolean applyRemainingTimeout() {
+		if (!hasDeadline()) {
+			return true;
+		}
+
+		long remaining = TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+		if (remaining <= 0) {
+			return false;
+		} else if (remaining < invocationMessage.timeout()) {
+			invocationMessage = invocationMessage.withTimeout(remaining);
+		}
+		return true;
+	}
+
 	/**
 	 * @return true if and only if the invoked method is marked as asynchronous
 	 *         and return void.
 	 */
 	public boolean isAsyncVoid() {
-		// Annotation
-		AsyncVoid av;
-
-		// Get method...
-		Method method = method();
+		return invoker.binding().template()
+				.isAsyncVoid(invocationMessage.methodId());
+	}
 
-		// Check for async void method
-		return method.getReturnType() == void.class
-				&& method.getExceptionTypes().length == 0
-				&& ((av = method.getAnnotation(AsyncVoid.class)) != null && av
-						.value());
+	/**
+	 * @return true if nothing is sent back for this invocation, either because
+	 *         the method is asynchronous void or the result mode is
+	 *         {@link ResultMode#NONE}.
+	 */
+	public boolean isOneWay() {
+		return invocationMessage.resultMode() == ResultMode.NONE
+				|| isAsyncVoid();
 	}
 
 	/**
@@ -54,6 +54,18 @@ public final class InvocationMessage implements Serializable {
 	// The method id
 	private final int methodId;
 
+	// The timeout of the invocation in milliseconds (<= 0 means no timeout)
+	private final long timeout;
+
+	// The priority of the invocation (0 means not specified)
+	private final int priority;
+
+	// The id of the call chain of the invocation (0 means no chain)
+	private final long chainId;
+
+	// Determines what is sent back
+	private final ResultMode resultMode;
+
 	// The arguments of the invocation
 	private final Object[] arguments;
 
@@ -66,14 +78,29 @@ public final class InvocationMessage implements Serializable {
 	 *            The binding id.
 	 * @param methodId
 	 *            The method id.
+	 * @param timeout
+	 *            The remaining time budget of the caller in milliseconds. A
+	 *            value <= 0 means no timeout.
+	 * @param priority
+	 *            The priority of the invocation. A value of 0 means that the
+	 *            priority of the method is used.
+	 * @param chainId
+	 *            The id of the call chain. A value of 0 means no chain.
+	 * @param resultMode
+	 *            The result mode.
 	 * @param arguments
 	 *            The arguments.
 	 */
 	InvocationMessage(boolean dynamic, long bindingId, int methodId,
+			long timeout, int priority, long chainId, ResultMode resultMode,
 			Object... arguments) {
 		this.dynamic = dynamic;
 		this.bindingId = bindingId;
 		this.methodId = methodId;
+		this.timeout = timeout;
+		this.priority = priority;
+		this.chainId = chainId;
+		this.resultMode = resultMode;
 		this.arguments = arguments;
 	}
 
@@ -98,10 +125,66 @@ public final class InvocationMessage implements Serializable {
 		return methodId;
 	}
 
+	/**
+	 * @return the remaining time budget of the caller in milliseconds when the
+	 *         message was created. A value <= 0 means no timeout.
+	 */
+	public long timeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return the priority of the invocation. A value of 0 means that the
+	 *         priority of the method is used.
+	 */
+	public int priority() {
+		return priority;
+	}
+
+	/**
+	 * @return the id of the call chain of the invocation. A value of 0 means
+	 *         no chain.
+	 */
+	public long chainId() {
+		return chainId;
+	}
+
+	/**
+	 * @return the result mode which determines what is sent back.
+	 */
+	public ResultMode resultMode() {
+		return resultMode;
+	}
+
 	/**
 	 * @return the arguments.
 	 */
 	public Object[] arguments() {
 		return arguments;
 	}
+
+	/**
+	 * Creates a copy of this message which uses the given timeout.
+	 * 
+	 * @param timeout
+	 *            The new timeout in milliseconds.
+	 * @return the copy.
+	 */
+	InvocationMessage withTimeout(long timeout) {
+		return new InvocationMessage(dynamic, bindingId, methodId, timeout,
+				priority, chainId, resultMode, arguments);
+	}
+
+	/**
+	 * Creates a copy of this message which uses the given arguments. Used by
+	 * transports which do not serialize the message.
+	 * 
+	 * @param arguments
+	 *            The new arguments.
+	 * @return the copy.
+	 */
+	public InvocationMessage withArguments(Object... arguments) {
+		return new InvocationMessage(dynamic, bindingId, methodId, timeout,
+				priority, chainId, resultMode, arguments);
+	}
 }
@@ -0,0 +1,892 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import com.foxnet.rmi.binding.LocalBinding.OrderedExecutionQueue;
+import com.foxnet.rmi.binding.StaticBinding;
+
+/**
+ * An invocation scheduler executes invocation tasks using a fixed number of
+ * threads. Queued tasks are executed by {@link Priority} and deadline of the
+ * remote caller (earliest deadline first), while aging prevents the starvation
+ * of low priority tasks. The queue of the scheduler is bounded and controlled
+ * by a CoDel-style queue-time shedding, so the latency of accepted invocations
+ * stays predictable under overload. Rejected and shed invocations fail with an
+ * {@link OverloadedException}.
+ * <p>
+ * Every invoker manager (connection) has its own sub-queue and the sub-queues
+ * are served by deficit round robin using the
+ * {@link InvokerManager#schedulingWeight() scheduling weights}, so a single
+ * aggressive client cannot starve the others. The priority and deadline order
+ * applies within a sub-queue. Optionally the number of concurrently executing
+ * tasks of a connection is capped by its
+ * {@link InvokerManager#concurrencyLimit() concurrency limit}.
+ * <p>
+ * Tasks which are not {@link InvocationTask}s (e.g. ordered execution queues)
+ * and invocations of exempted static bindings are never shed.
+ * 
+ * @author Christopher Probst
+ */
+public final class InvocationScheduler extends AbstractExecutorService {
+
+	/**
+	 * The default maximum number of queued tasks.
+	 */
+	public static final int DEFAULT_CAPACITY = 10000;
+
+	/**
+	 * The default target queue delay in milliseconds.
+	 */
+	public static final long DEFAULT_TARGET_DELAY = 100;
+
+	/**
+	 * The default shedding interval in milliseconds.
+	 */
+	public static final long DEFAULT_INTERVAL = 1000;
+
+	/**
+	 * The default aging quantum in milliseconds.
+	 */
+	public static final long DEFAULT_AGING_QUANTUM = 50;
+
+	/*
+	 * A queued task.
+	 */
+	private static final class Entry implements Comparable<Entry> {
+
+		// The runnable
+		final Runnable runnable;
+
+		// The invocation task which determines the scheduling or null
+		final InvocationTask task;
+
+		// Whether or not the runnable is an ordered execution queue
+		final boolean ordered;
+
+		// The time of enqueuing (based on System.nanoTime())
+		final long enqueued;
+
+		// The scheduling key (based on System.nanoTime())
+		final long key;
+
+		// Used to keep the FIFO order of equal keys
+		final long sequence;
+
+		// The flow of this entry (guarded by the lock)
+		Flow flow;
+
+		Entry(Runnable runnable, InvocationTask task, boolean ordered,
+				long enqueued, long key, long sequence) {
+			this.runnable = runnable;
+			this.task = task;
+			this.ordered = ordered;
+			this.enqueued = enqueued;
+			this.key = key;
+			this.sequence = sequence;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(Entry other) {
+			long diff = key - other.key;
+			if (diff != 0) {
+				return diff < 0 ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1
+					: sequence > other.sequence ? 1 : 0;
+		}
+	}
+
+	/*
+	 * The sub-queue of an invoker manager.
+	 */
+	private static final class Flow {
+
+		// The invoker manager or null for tasks without one
+		final InvokerManager manager;
+
+		// The queued tasks ordered by their scheduling keys
+		final Queue<Entry> queue = new PriorityQueue<>();
+
+		// The number of tasks this flow may still take in the current round
+		int deficit;
+
+		// The number of executing tasks
+		int running;
+
+		// Whether or not this flow is in the round robin
+		boolean active;
+
+		Flow(InvokerManager manager) {
+			this.manager = manager;
+		}
+
+		int weight() {
+			return manager != null ? manager.schedulingWeight() : 1;
+		}
+
+		boolean isCapped() {
+			int limit = manager != null ? manager.concurrencyLimit() : 0;
+			return limit > 0 && running >= limit;
+		}
+	}
+
+	// The logger
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// The lock of this scheduler
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// Signaled when tasks are available or the scheduler is shut down
+	private final Condition available = lock.newCondition();
+
+	// Signaled when all workers are terminated
+	private final Condition terminated = lock.newCondition();
+
+	// The flows by invoker manager (guarded by the lock)
+	private final Map<InvokerManager, Flow> flows = new HashMap<>();
+
+	// The flows with queued tasks which are allowed to run (guarded by the lock)
+	private final Queue<Flow> activeFlows = new ArrayDeque<>();
+
+	// The number of queued tasks (guarded by the lock)
+	private int size;
+
+	// Used to create sequence numbers
+	private final AtomicLong sequencer = new AtomicLong();
+
+	// The worker threads
+	private final List<Thread> workers = new ArrayList<>();
+
+	// The names of the static bindings which are never shed
+	private final Set<String> exemptions = new CopyOnWriteArraySet<>();
+
+	// The number of shed tasks
+	private final AtomicLong shedCount = new AtomicLong();
+
+	// The maximum number of queued tasks
+	private volatile int capacity = DEFAULT_CAPACITY;
+
+	// The target delay and interval in nanoseconds (<= 0 means no shedding)
+	private volatile long targetDelay = TimeUnit.MILLISECONDS
+			.toNanos(DEFAULT_TARGET_DELAY), interval = TimeUnit.MILLISECONDS
+			.toNanos(DEFAULT_INTERVAL);
+
+	// The aging quantum in nanoseconds
+	private volatile long agingQuantum = TimeUnit.MILLISECONDS
+			.toNanos(DEFAULT_AGING_QUANTUM);
+
+	/*
+	 * The CoDel state (guarded by the lock).
+	 */
+	private long firstAboveTime, dropNext;
+	private int dropCount;
+	private boolean dropping;
+
+	// The number of running workers (guarded by the lock)
+	private int runningWorkers;
+
+	// The shutdown flag (guarded by the lock)
+	private boolean shutdown;
+
+	/**
+	 * Creates a new entry for the given runnable. Tasks are ordered by the
+	 * earliest of their deadline and their enqueuing time plus a slack which
+	 * shrinks with increasing priority. So a high priority task overtakes low
+	 * priority tasks which were enqueued at most
+	 * <code>(priority difference * aging quantum)</code> before, which
+	 * prevents starvation.
+	 * 
+	 * @param runnable
+	 *            The runnable.
+	 * @return the new entry.
+	 */
+	private Entry newEntry(Runnable runnable) {
+		boolean ordered = runnable instanceof OrderedExecutionQueue;
+
+		// Ordered execution queues are scheduled like their next task
+		Runnable head = ordered ? ((OrderedExecutionQueue) runnable).head()
+				: runnable;
+		InvocationTask task = head instanceof InvocationTask ? (InvocationTask) head
+				: null;
+
+		// Calculate the key
+		long now = System.nanoTime();
+		int priority = task != null ? task.priority() : Priority.NORM_PRIORITY;
+		long key = now + (Priority.MAX_PRIORITY - priority) * agingQuantum;
+		if (task != null && task.hasDeadline() && task.deadline() - key < 0) {
+			key = task.deadline();
+		}
+
+		return new Entry(runnable, task, ordered, now, key,
+				sequencer.getAndIncrement());
+	}
+
+	/**
+	 * @param entry
+	 *            The entry you want to check.
+	 * @return true if the given entry may be shed, otherwise false.
+	 */
+	private boolean isSheddable(Entry entry) {
+		if (entry.task == null || entry.ordered) {
+			return false;
+		} else if (exemptions.isEmpty()
+				|| !(entry.task.binding() instanceof StaticBinding)) {
+			return true;
+		} else {
+			return !exemptions.contains(((StaticBinding) entry.task.binding())
+					.name());
+		}
+	}
+
+	/**
+	 * The CoDel control law.
+	 * 
+	 * @param time
+	 *            The base time.
+	 * @return the time of the next drop.
+	 */
+	private long controlLaw(long time) {
+		return time + (long) (interval / Math.sqrt(dropCount));
+	}
+
+	/**
+	 * Decides whether or not the dequeued entry should be shed. Must be called
+	 * with the lock held.
+	 * 
+	 * @param entry
+	 *            The dequeued entry.
+	 * @param now
+	 *            The current time.
+	 * @return true if the entry should be shed, otherwise false.
+	 */
+	private boolean shouldShed(Entry entry, long now) {
+		long target = targetDelay;
+
+		// Shedding deactivated
+		if (target <= 0) {
+			dropping = false;
+			return false;
+		}
+
+		// Is the queue delay above the target for at least one interval ?
+		boolean okToDrop = false;
+		if (now - entry.enqueued < target || size == 0) {
+			firstAboveTime = 0;
+		} else if (firstAboveTime == 0) {
+			firstAboveTime = now + interval;
+		} else if (now - firstAboveTime >= 0) {
+			okToDrop = true;
+		}
+
+		if (dropping) {
+			if (!okToDrop) {
+				// Below the target again
+				dropping = false;
+			} else if (now - dropNext >= 0 && isSheddable(entry)) {
+				dropCount++;
+				dropNext = controlLaw(dropNext);
+				return true;
+			}
+		} else if (okToDrop && isSheddable(entry)) {
+			// Enter the dropping state
+			dropping = true;
+			dropCount = dropCount > 2 && now - dropNext < 8 * interval ? dropCount - 2
+					: 1;
+			dropNext = controlLaw(now);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the given flow to the round robin if it has queued tasks and is
+	 * not capped. Must be called with the lock held.
+	 * 
+	 * @param flow
+	 *            The flow.
+	 * @return true if the flow was activated, otherwise false.
+	 */
+	private boolean activate(Flow flow) {
+		if (flow.active || flow.queue.isEmpty() || flow.isCapped()) {
+			return false;
+		}
+		flow.active = true;
+		flow.deficit = 0;
+		activeFlows.offer(flow);
+		return true;
+	}
+
+	/**
+	 * Removes the given flow if it is idle. Must be called with the lock
+	 * held.
+	 * 
+	 * @param flow
+	 *            The flow.
+	 */
+	private void removeIfIdle(Flow flow) {
+		if (!flow.active && flow.running == 0 && flow.queue.isEmpty()) {
+			flows.remove(flow.manager);
+		}
+	}
+
+	/**
+	 * Polls the next entry using deficit round robin. The flow of the
+	 * returned entry counts the entry as running. Must be called with the
+	 * lock held.
+	 * 
+	 * @return the next entry or null if there is no runnable entry.
+	 */
+	private Entry poll() {
+		Flow flow;
+		while ((flow = activeFlows.peek()) != null) {
+			// The concurrency limit was reached in the meantime
+			if (flow.isCapped()) {
+				activeFlows.poll();
+				flow.active = false;
+				continue;
+			}
+
+			// A new round for this flow
+			if (flow.deficit <= 0) {
+				flow.deficit += flow.weight();
+			}
+
+			Entry entry = flow.queue.poll();
+			flow.deficit--;
+			flow.running++;
+			size--;
+
+			if (flow.queue.isEmpty()) {
+				activeFlows.poll();
+				flow.active = false;
+			} else if (flow.deficit <= 0) {
+				// Move to the end of the round robin
+				activeFlows.offer(activeFlows.poll());
+			}
+			return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Called when the given entry is finished or shed. Must be called with the
+	 * lock held.
+	 * 
+	 * @param entry
+	 *            The entry.
+	 */
+	private void finished(Entry entry) {
+		Flow flow = entry.flow;
+		flow.running--;
+		if (activate(flow)) {
+			available.signal();
+		} else {
+			removeIfIdle(flow);
+		}
+	}
+
+	/**
+	 * Takes the next task which should be executed. Shed tasks are added to
+	 * the given list.
+	 * 
+	 * @param shed
+	 *            The list of shed tasks.
+	 * @return the next entry or null if the scheduler is shut down.
+	 * @throws InterruptedException
+	 *             If the thread was interrupted.
+	 */
+	private Entry take(List<InvocationTask> shed) throws InterruptedException {
+		lock.lock();
+		try {
+			for (;;) {
+				Entry entry = poll();
+
+				if (entry == null) {
+					if (shutdown && size == 0) {
+						return null;
+					}
+					available.await();
+				} else if (shouldShed(entry, System.nanoTime())) {
+					finished(entry);
+					shed.add(entry.task);
+				} else {
+					return entry;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Rejects the given task because of overload.
+	 * 
+	 * @param task
+	 *            The task.
+	 * @param reason
+	 *            The reason.
+	 */
+	private void reject(InvocationTask task, String reason) {
+		shedCount.incrementAndGet();
+		task.reject(new OverloadedException(reason));
+	}
+
+	/**
+	 * The worker loop.
+	 */
+	private void work() {
+		List<InvocationTask> shed = new ArrayList<>();
+		try {
+			for (;;) {
+				Entry entry = take(shed);
+
+				// Fail shed tasks outside of the lock
+				for (InvocationTask task : shed) {
+					reject(task, "The invocation was shed because "
+							+ "the remote side is overloaded");
+				}
+				shed.clear();
+
+				if (entry == null) {
+					return;
+				}
+
+				try {
+					entry.runnable.run();
+				} catch (Throwable e) {
+					logger.warning("Failed to execute task. Reason: "
+							+ e.getMessage());
+				} finally {
+					lock.lock();
+					try {
+						finished(entry);
+					} finally {
+						lock.unlock();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// Shutdown now
+		} finally {
+			lock.lock();
+			try {
+				if (--runningWorkers == 0) {
+					terminated.signalAll();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Creates a new invocation scheduler.
+	 * 
+	 * @param threads
+	 *            The number of threads.
+	 */
+	public InvocationScheduler(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be > 0");
+		}
+
+		lock.lock();
+		try {
+			for (int i = 0; i < threads; i++) {
+				Thread worker = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						work();
+					}
+				}, "InvocationScheduler-" + i);
+
+				workers.add(worker);
+				runningWorkers++;
+				worker.start();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the maximum number of queued tasks.
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum number of queued tasks. Invocations which exceed this
+	 * limit are rejected, unless they are exempted.
+	 * 
+	 * @param capacity
+	 *            The new capacity.
+	 * @return this for chaining.
+	 */
+	public InvocationScheduler capacity(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be > 0");
+		}
+		this.capacity = capacity;
+		return this;
+	}
+
+	/**
+	 * @return the target queue delay in milliseconds.
+	 */
+	public long targetDelay() {
+		return TimeUnit.NANOSECONDS.toMillis(targetDelay);
+	}
+
+	/**
+	 * @return the shedding interval in milliseconds.
+	 */
+	public long interval() {
+		return TimeUnit.NANOSECONDS.toMillis(interval);
+	}
+
+	/**
+	 * Sets the shedding parameters. If the queue delay stays above the target
+	 * delay for at least one interval, invocations are shed with increasing
+	 * frequency until the delay drops below the target again.
+	 * 
+	 * @param targetDelay
+	 *            The target queue delay in milliseconds. A value <= 0
+	 *            deactivates the shedding.
+	 * @param interval
+	 *            The interval in milliseconds.
+	 * @return this for chaining.
+	 */
+	public InvocationScheduler shedding(long targetDelay, long interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("interval must be > 0");
+		}
+		this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+		this.targetDelay = TimeUnit.MILLISECONDS.toNanos(targetDelay);
+		return this;
+	}
+
+	/**
+	 * @return the aging quantum in milliseconds.
+	 */
+	public long agingQuantum() {
+		return TimeUnit.NANOSECONDS.toMillis(agingQuantum);
+	}
+
+	/**
+	 * Sets the aging quantum. A task with a higher priority overtakes queued
+	 * tasks with a lower priority only if they are waiting for less than
+	 * <code>(priority difference * aging quantum)</code>, so low priority
+	 * tasks do not starve.
+	 * 
+	 * @param agingQuantum
+	 *            The aging quantum in milliseconds.
+	 * @return this for chaining.
+	 */
+	public InvocationScheduler agingQuantum(long agingQuantum) {
+		if (agingQuantum < 0) {
+			throw new IllegalArgumentException("agingQuantum must be >= 0");
+		}
+		this.agingQuantum = TimeUnit.MILLISECONDS.toNanos(agingQuantum);
+		return this;
+	}
+
+	/**
+	 * Exempts the static binding with the given name from shedding and
+	 * rejection.
+	 * 
+	 * @param name
+	 *            The name of the static binding.
+	 * @return this for chaining.
+	 */
+	public InvocationScheduler exempt(String name) {
+		if (name == null) {
+			throw new NullPointerException("name");
+		}
+		exemptions.add(name);
+		return this;
+	}
+
+	/**
+	 * Removes the exemption of the static binding with the given name.
+	 * 
+	 * @param name
+	 *            The name of the static binding.
+	 * @return this for chaining.
+	 */
+	public InvocationScheduler unexempt(String name) {
+		exemptions.remove(name);
+		return this;
+	}
+
+	/**
+	 * @return the names of the exempted static bindings.
+	 */
+	public Set<String> exemptions() {
+		return Collections.unmodifiableSet(exemptions);
+	}
+
+	/**
+	 * @return the number of queued tasks.
+	 */
+	public int queueSize() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of rejected and shed invocations.
+	 */
+	public long shedCount() {
+		return shedCount.get();
+	}
+
+	/**
+	 * Executes the given task by the calling thread unless this scheduler is
+	 * shut down. The task counts as running task of its flow. It is admitted
+	 * even if the flow is capped or has queued tasks, since the calling thread
+	 * already waits within a running task for it. Queueing the task could
+	 * deadlock the chain if every thread of this scheduler waits like this.
+	 * 
+	 * @param command
+	 *            The task.
+	 * @return true if the task was executed, false if it was not admitted.
+	 */
+	boolean runDirectly(Runnable command) {
+		Entry entry = newEntry(command);
+
+		lock.lock();
+		try {
+			if (shutdown) {
+				return false;
+			}
+
+			InvokerManager manager = entry.task != null ? entry.task.manager()
+					: null;
+			Flow flow = flows.get(manager);
+
+			if (flow == null) {
+				flows.put(manager, flow = new Flow(manager));
+			}
+			entry.flow = flow;
+			flow.running++;
+		} finally {
+			lock.unlock();
+		}
+
+		try {
+			command.run();
+		} finally {
+			lock.lock();
+			try {
+				finished(entry);
+			} finally {
+				lock.unlock();
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+	 */
+	@Override
+	public void execute(Runnable command) {
+		if (command == null) {
+			throw new NullPointerException("command");
+		}
+
+		Entry entry = newEntry(command);
+
+		lock.lock();
+		try {
+			if (shutdown) {
+				throw new RejectedExecutionException("The scheduler "
+						+ "is shut down");
+			}
+
+			// Admission control
+			if (size < capacity || !isSheddable(entry)) {
+				InvokerManager manager = entry.task != null ? entry.task
+						.manager() : null;
+				Flow flow = flows.get(manager);
+				if (flow == null) {
+					flows.put(manager, flow = new Flow(manager));
+				}
+				entry.flow = flow;
+				flow.queue.offer(entry);
+				size++;
+				if (activate(flow)) {
+					available.signal();
+				}
+				return;
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		reject(entry.task, "The invocation was rejected because "
+				+ "the remote side is overloaded");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.ExecutorService#shutdown()
+	 */
+	@Override
+	public void shutdown() {
+		lock.lock();
+		try {
+			shutdown = true;
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.ExecutorService#shutdownNow()
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		List<Runnable> remaining = new ArrayList<>();
+		lock.lock();
+		try {
+			shutdown = true;
+			for (Flow flow : flows.values()) {
+				for (Entry entry : flow.queue) {
+					remaining.add(entry.runnable);
+				}
+				flow.queue.clear();
+				flow.active = false;
+			}
+			flows.clear();
+			activeFlows.clear();
+			size = 0;
+
+			for (Thread worker : workers) {
+				worker.interrupt();
+			}
+		} finally {
+			lock.unlock();
+		}
+		return remaining;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.ExecutorService#isShutdown()
+	 */
+	@Override
+	public boolean isShutdown() {
+		lock.lock();
+		try {
+			return shutdown;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.ExecutorService#isTerminated()
+	 */
+	@Override
+	public boolean isTerminated() {
+		lock.lock();
+		try {
+			return shutdown && runningWorkers == 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.ExecutorService#awaitTermination(long,
+	 * java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		lock.lock();
+		try {
+			while (!shutdown || runningWorkers > 0) {
+				if (remaining <= 0) {
+					return false;
+				}
+				remaining = terminated.awaitNanos(remaining);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.foxnet.rmi.binding.LocalBinding;
+import com.foxnet.rmi.binding.RemoteObject;
+import com.foxnet.rmi.util.concurrent.Future;
+import com.foxnet.rmi.util.concurrent.FutureCallback;
+
+/**
+ * An invocation task executes an invocation message on the local side. While
+ * the target method is running, the task can be accessed using
+ * {@link #current()}, so the target method is able to check the remaining time
+ * budget of the remote caller.
+ * 
+ * @author Christopher Probst
+ */
+public final class InvocationTask implements Runnable {
+
+	// The task which is executed by the current thread
+	private static final ThreadLocal<InvocationTask> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * @return the invocation task which is executed by the current thread or
+	 *         null if the current thread does not execute a remote invocation.
+	 */
+	public static InvocationTask current() {
+		return CURRENT.get();
+	}
+
+	// The invoker manager which received the invocation
+	private final InvokerManager manager;
+
+	// The binding of the invocation
+	private final LocalBinding binding;
+
+	// The invoked method
+	private final Method method;
+
+	// The invocation message
+	private final InvocationMessage message;
+
+	// The future or null
+	private final Future future;
+
+	// The deadline (based on System.nanoTime())
+	private final long deadline;
+
+	// The thread which executes the target method or null
+	private Thread runner;
+
+	// Whether or not the runner was interrupted by a cancellation
+	private boolean interrupted;
+
+	/**
+	 * Interrupts the thread which executes the target method if there is
+	 * such a thread.
+	 */
+	private synchronized void interruptRunner() {
+		if (runner != null && runner != Thread.currentThread()) {
+			interrupted = true;
+			runner.interrupt();
+		}
+	}
+
+	/**
+	 * Creates a new invocation task. The deadline of the remote caller is
+	 * calculated using the current time.
+	 * 
+	 * @param manager
+	 *            The invoker manager.
+	 * @param binding
+	 *            The binding.
+	 * @param method
+	 *            The method.
+	 * @param message
+	 *            The invocation message.
+	 * @param future
+	 *            The future or null.
+	 */
+	InvocationTask(InvokerManager manager, LocalBinding binding,
+			Method method, InvocationMessage message, Future future) {
+		this.manager = manager;
+		this.binding = binding;
+		this.method = method;
+		this.message = message;
+		this.future = future;
+		deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(message.timeout());
+
+		if (future != null) {
+			// Stop the target method if the invocation gets cancelled
+			future.add(new FutureCallback() {
+
+				@Override
+				public void completed(Future future) throws Exception {
+					if (future.cause() instanceof CancellationException) {
+						interruptRunner();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the invoker manager which received the invocation.
+	 */
+	public InvokerManager manager() {
+		return manager;
+	}
+
+	/**
+	 * @return the binding.
+	 */
+	public LocalBinding binding() {
+		return binding;
+	}
+
+	/**
+	 * @return the method.
+	 */
+	public Method method() {
+		return method;
+	}
+
+	/**
+	 * @return the invocation message.
+	 */
+	public InvocationMessage message() {
+		return message;
+	}
+
+	/**
+	 * @return the future or null.
+	 */
+	public Future future() {
+		return future;
+	}
+
+	/**
+	 * @return the priority of this task. The priority of the invocation
+	 *         message has precedence over the {@link Priority} annotation of
+	 *         the method.
+	 */
+	public int priority() {
+		if (message.priority() != 0) {
+			return message.priority();
+		}
+
+		return binding.template().priority(message.methodId());
+	}
+
+	/**
+	 * @return the deadline of this task (based on System.nanoTime()). Only
+	 *         meaningful if this task has a deadline.
+	 */
+	long deadline() {
+		return deadline;
+	}
+
+	/**
+	 * @return true if the remote caller specified a deadline, otherwise false.
+	 */
+	public boolean hasDeadline() {
+		return message.timeout() > 0;
+	}
+
+	/**
+	 * @return the remaining time budget of the remote caller in milliseconds or
+	 *         {@link Long#MAX_VALUE} if there is no deadline.
+	 */
+	public long remainingMillies() {
+		if (!hasDeadline()) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline
+				- System.nanoTime()));
+	}
+
+	/**
+	 * @return true if the deadline of the remote caller is reached, otherwise
+	 *         false.
+	 */
+	public boolean isExpired() {
+		return hasDeadline() && deadline - System.nanoTime() <= 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+
+		// Cancelled while queued
+		if (isCancelled()) {
+			return;
+		}
+
+		/*
+		 * Nobody is waiting for the result anymore, so we do not invoke the
+		 * method at all.
+		 */
+		if (isExpired()) {
+			if (future != null) {
+				future.fail(new TimeoutException("The invocation has "
+						+ "expired before dispatch"));
+			}
+			return;
+		}
+
+		// Save the old task (Nested direct execution)
+		InvocationTask previous = CURRENT.get();
+		CURRENT.set(this);
+		synchronized (this) {
+			runner = Thread.currentThread();
+		}
+		try {
+			/*
+			 * Resolve all remote and local objects and invoke method.
+			 */
+			Object result = method.invoke(binding.target(),
+					manager.remotesToLocals(message.arguments()));
+
+			/*
+			 * Succeed the future with the filtered result. If the invocation
+			 * was cancelled in the meantime or the caller discards the
+			 * result, the result is never converted.
+			 */
+			if (future != null && !future.isCompleted()) {
+				Object remoteResult = message.resultMode() == ResultMode.FULL ? manager
+						.localToRemote(result) : null;
+
+				/*
+				 * A cancellation might complete the future after the check, so
+				 * the reference of a bound result is never sent. Release it
+				 * instead of waiting for the lease to expire.
+				 */
+				if (!future.succeed(remoteResult)
+						&& remoteResult instanceof RemoteObject
+						&& remoteResult != result) {
+					manager.dynamicReg().release(
+							((RemoteObject) remoteResult).id());
+				}
+			}
+		} catch (Throwable e) {
+			if (future != null) {
+				// Fail
+				future.fail(e);
+			}
+		} finally {
+			synchronized (this) {
+				runner = null;
+
+				// Do not leak the interruption to the next task
+				if (interrupted) {
+					interrupted = false;
+					Thread.interrupted();
+				}
+			}
+			CURRENT.set(previous);
+		}
+	}
+
+	/**
+	 * Rejects this task without executing it. The remote caller receives the
+	 * given cause.
+	 * 
+	 * @param cause
+	 *            The cause of the rejection.
+	 */
+	public void reject(Throwable cause) {
+		if (cause == null) {
+			throw new NullPointerException("cause");
+		}
+
+		if (future != null) {
+			future.fail(cause);
+		}
+	}
+
+	/**
+	 * @return true if the future of this task was completed before the target
+	 *         method returned, otherwise false.
+	 */
+	public boolean isCancelled() {
+		return future != null && future.isCompleted();
+	}
+}
@@ -31,9 +31,12 @@
  */
 package com.foxnet.rmi;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.foxnet.rmi.binding.RemoteBinding;
 
@@ -64,6 +67,71 @@ public final class Invoker implements InvocationHandler {
 		}
 	}
 
+	/**
+	 * @param target
+	 *            A proxy or an invoker.
+	 * @return the invoker of the given target.
+	 */
+	private static Invoker invokerOf(Object target) {
+		Invoker invoker = target instanceof Invoker ? (Invoker) target
+				: of(target);
+		if (invoker == null) {
+			throw new IllegalArgumentException(target + " is neither "
+					+ "a proxy nor an invoker");
+		}
+		return invoker;
+	}
+
+	/**
+	 * Invokes the method with the given name and arguments on all given
+	 * targets at once without waiting for the results. Use a
+	 * {@link com.foxnet.rmi.util.concurrent.Gather} to aggregate the returned
+	 * invocations.
+	 * 
+	 * @param targets
+	 *            The proxies or invokers.
+	 * @param methodName
+	 *            The method name.
+	 * @param arguments
+	 *            The arguments.
+	 * @return the invocations in order of the targets.
+	 */
+	public static List<Invocation> scatter(Iterable<?> targets,
+			String methodName, Object... arguments) {
+		List<Invocation> invocations = new ArrayList<>();
+		for (Object target : targets) {
+			// Every invocation converts its own copy of the arguments
+			invocations.add(invokerOf(target).invoke(methodName,
+					arguments != null ? arguments.clone() : null));
+		}
+		return invocations;
+	}
+
+	/**
+	 * Invokes the given method with the given arguments on all given targets
+	 * at once without waiting for the results. Use a
+	 * {@link com.foxnet.rmi.util.concurrent.Gather} to aggregate the returned
+	 * invocations.
+	 * 
+	 * @param targets
+	 *            The proxies or invokers.
+	 * @param method
+	 *            The method.
+	 * @param arguments
+	 *            The arguments.
+	 * @return the invocations in order of the targets.
+	 */
+	public static List<Invocation> scatter(Iterable<?> targets,
+			Method method, Object... arguments) {
+		List<Invocation> invocations = new ArrayList<>();
+		for (Object target : targets) {
+			// Every invocation converts its own copy of the arguments
+			invocations.add(invokerOf(target).invoke(method,
+					arguments != null ? arguments.clone() : null));
+		}
+		return invocations;
+	}
+
 	// The invoker manager which created this invoker
 	private final InvokerManager invokerManager;
 
@@ -73,6 +141,9 @@ public final class Invoker implements InvocationHandler {
 	// The proxy invocation timeout
 	private volatile long proxyTimeout;
 
+	// The result mode or null to use the annotations of the methods
+	private volatile ResultMode resultMode;
+
 	// The lazy proxy object which is created when needed
 	private volatile Object lazyProxy;
 
@@ -102,11 +173,13 @@ public final class Invoker implements InvocationHandler {
 	}
 
 	/**
-	 * Sets the proxy timeout which is used when invoking proxy methods.
+	 * Sets the proxy timeout which is used when invoking proxy methods. The
+	 * transport uses this timeout as deadline for all invocations of this
+	 * invoker.
 	 * 
 	 * @param proxyTimeout
 	 *            The new proxy timeout. A value <= 0 means waiting without a
-	 *            limit.
+	 *            limit (The transport may still apply a default deadline).
 	 * @return this for chaining.
 	 */
 	public Invoker proxyTimeout(long proxyTimeout) {
@@ -114,6 +187,29 @@ public final class Invoker implements InvocationHandler {
 		return this;
 	}
 
+	/**
+	 * @return the result mode of all invocations of this invoker or null if
+	 *         the {@link DiscardResult} annotations of the methods are used.
+	 */
+	public ResultMode resultMode() {
+		return resultMode;
+	}
+
+	/**
+	 * Sets the result mode of all invocations of this invoker. If the result
+	 * is discarded, proxy methods return null or the default value of
+	 * primitive types.
+	 * 
+	 * @param resultMode
+	 *            The new result mode or null to use the {@link DiscardResult}
+	 *            annotations of the methods.
+	 * @return this for chaining.
+	 */
+	public Invoker resultMode(ResultMode resultMode) {
+		this.resultMode = resultMode;
+		return this;
+	}
+
 	/**
 	 * @return the invoker manager of this invoker.
 	 */
@@ -139,14 +235,85 @@ public final class Invoker implements InvocationHandler {
 	 * @return an invocation.
 	 */
 	public Invocation invoke(int methodId, Object... arguments) {
+		return invokeWithPriority(0, methodId, arguments);
+	}
+
+	/**
+	 * Invokes the method with the given method id and arguments using the
+	 * given priority. This method should not be called directly.
+	 * 
+	 * @param priority
+	 *            The priority of this invocation (See {@link Priority}). A
+	 *            value of 0 means that the priority of the method is used.
+	 * @param methodId
+	 *            The methodId.
+	 * @param arguments
+	 *            The arguments.
+	 * @return an invocation.
+	 */
+	public Invocation invokeWithPriority(int priority, int methodId,
+			Object... arguments) {
+		if (priority != 0
+				&& (priority < Priority.MIN_PRIORITY || priority > Priority.MAX_PRIORITY)) {
+			throw new IllegalArgumentException("Invalid priority");
+		}
+		return invoke(priority, methodId, false, arguments);
+	}
+
+	/**
+	 * Invokes the method with the given method id and arguments.
+	 * 
+	 * @param priority
+	 *            The priority or 0 to use the priority of the method.
+	 * @param methodId
+	 *            The methodId.
+	 * @param synchronous
+	 *            Whether or not the calling thread synchronizes the
+	 *            invocation. If so, it enters the call chain before the
+	 *            invocation is sent.
+	 * @param arguments
+	 *            The arguments.
+	 * @return an invocation.
+	 */
+	private Invocation invoke(int priority, int methodId, boolean synchronous,
+			Object[] arguments) {
 		// Convert
 		invokerManager.localsToRemotes(arguments);
 
+		return dispatch(priority, methodId, synchronous, arguments);
+	}
+
+	/**
+	 * Dispatches a new invocation with already converted arguments.
+	 * 
+	 * @param priority
+	 *            The priority or 0 to use the priority of the method.
+	 * @param methodId
+	 *            The methodId.
+	 * @param synchronous
+	 *            Whether or not the calling thread synchronizes the
+	 *            invocation.
+	 * @param arguments
+	 *            The converted arguments.
+	 * @return an invocation.
+	 */
+	private Invocation dispatch(int priority, int methodId,
+			boolean synchronous, Object[] arguments) {
 		// Create invocation
-		Invocation invocation = new Invocation(this, methodId, arguments);
+		Invocation invocation = new Invocation(this, methodId, priority,
+				arguments);
 
-		// Send the invocation
-		invokerManager.sendInvocation(invocation);
+		if (synchronous) {
+			invocation.enterChain();
+		}
+
+		// Send the invocation (if there is capacity)
+		try {
+			invokerManager.dispatchInvocation(invocation);
+		} catch (RuntimeException | Error e) {
+			invocation.leaveChain();
+			throw e;
+		}
 
 		return invocation;
 	}
@@ -167,12 +334,40 @@ public final class Invoker implements InvocationHandler {
 					+ "the valid proxy of this invoker");
 		}
 
+		// Lookup the method id
+		Integer methodId = remoteBinding.methodIds().get(method);
+		if (methodId == null) {
+			throw new IllegalArgumentException("Unknown method");
+		}
+
+		/*
+		 * Convert the arguments only once. Every conversion adds references
+		 * to exported objects, so the regular invocation reuses the converted
+		 * arguments if the one-way message can not be sent.
+		 */
+		invokerManager.localsToRemotes(args);
+
+		// Asynchronous void methods do not need an invocation
+		if (remoteBinding.template().isAsyncVoid(methodId)
+				&& invokerManager.sendOneWay(Invocation.newMessage(this,
+						methodId, 0, args))) {
+			return null;
+		}
+
 		// Invoke the method remotely
-		Invocation invocation = invoke(method, args);
+		Invocation invocation = dispatch(0, methodId, true, args);
 
 		// Simply synchronize and return or throw
 		if (invocation.synchronize(proxyTimeout)) {
-			return invocation.attachment();
+			Object result = invocation.attachment();
+
+			// Discarded results of primitive types
+			if (result == null && method.getReturnType().isPrimitive()
+					&& method.getReturnType() != void.class) {
+				return Array.get(
+						Array.newInstance(method.getReturnType(), 1), 0);
+			}
+			return result;
 		} else {
 			throw invocation.cause();
 		}
@@ -188,11 +383,29 @@ public final class Invoker implements InvocationHandler {
 	 * @return an invocation.
 	 */
 	public Invocation invoke(Method method, Object... arguments) {
+		return invokeWithPriority(0, method, arguments);
+	}
+
+	/**
+	 * Invokes the given method with the given arguments using the given
+	 * priority.
+	 * 
+	 * @param priority
+	 *            The priority of this invocation (See {@link Priority}). A
+	 *            value of 0 means that the priority of the method is used.
+	 * @param method
+	 *            The method.
+	 * @param arguments
+	 *            The arguments.
+	 * @return an invocation.
+	 */
+	public Invocation invokeWithPriority(int priority, Method method,
+			Object... arguments) {
 		Integer methodId = remoteBinding.methodIds().get(method);
 		if (methodId == null) {
 			throw new IllegalArgumentException("Unknown method");
 		}
-		return invoke(methodId, arguments);
+		return invokeWithPriority(priority, methodId, arguments);
 	}
 
 	/**
@@ -205,11 +418,29 @@ public final class Invoker implements InvocationHandler {
 	 * @return an invocation.
 	 */
 	public Invocation invoke(String methodName, Object... arguments) {
+		return invokeWithPriority(0, methodName, arguments);
+	}
+
+	/**
+	 * Invokes the method with the given name and arguments using the given
+	 * priority.
+	 * 
+	 * @param priority
+	 *            The priority of this invocation (See {@link Priority}). A
+	 *            value of 0 means that the priority of the method is used.
+	 * @param methodName
+	 *            The method name.
+	 * @param arguments
+	 *            The arguments.
+	 * @return an invocation.
+	 */
+	public Invocation invokeWithPriority(int priority, String methodName,
+			Object... arguments) {
 		Integer methodId = remoteBinding.nameIds().get(methodName);
 		if (methodId == null) {
 			throw new IllegalArgumentException("Unknown method name");
 		}
-		return invoke(methodId, arguments);
+		return invokeWithPriority(priority, methodId, arguments);
 	}
 
 	/**
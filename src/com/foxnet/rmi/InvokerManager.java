@@ -31,16 +31,40 @@
  */
 package com.foxnet.rmi;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.foxnet.rmi.binding.LocalBinding;
 import com.foxnet.rmi.binding.LocalObject;
 import com.foxnet.rmi.binding.RemoteBinding;
 import com.foxnet.rmi.binding.RemoteObject;
 import com.foxnet.rmi.binding.registry.DynamicRegistry;
+import com.foxnet.rmi.binding.registry.ExportTable;
 import com.foxnet.rmi.binding.registry.StaticRegistry;
+import com.foxnet.rmi.util.concurrent.AdaptiveLimit;
 import com.foxnet.rmi.util.concurrent.Future;
+import com.foxnet.rmi.util.concurrent.FutureCallback;
+import com.foxnet.rmi.util.concurrent.SharedTimer;
+import com.foxnet.rmi.util.iteration.GlobFilter;
 
 /**
  * An invoker manager represents a connection. It can lookup invokers and
@@ -50,6 +74,47 @@ import com.foxnet.rmi.util.concurrent.Future;
  */
 public abstract class InvokerManager {
 
+	/*
+	 * A weak reference to the invoker of a dynamic remote object.
+	 */
+	private static final class RemoteReference extends WeakReference<Invoker> {
+
+		// The id of the remote object
+		private final long id;
+
+		RemoteReference(Invoker invoker, long id,
+				ReferenceQueue<? super Invoker> queue) {
+			super(invoker, queue);
+			this.id = id;
+		}
+	}
+
+	/*
+	 * Returned if there are no released remote objects.
+	 */
+	private static final long[] NO_IDS = new long[0];
+
+	/*
+	 * The references of the invokers of dynamic remote objects.
+	 */
+	private final Set<RemoteReference> remoteReferences = Collections
+			.newSetFromMap(new ConcurrentHashMap<RemoteReference, Boolean>());
+
+	/*
+	 * The references of the collected invokers.
+	 */
+	private final ReferenceQueue<Invoker> collectedInvokers = new ReferenceQueue<>();
+
+	/*
+	 * The lease duration of the remote side or a negative value if unknown.
+	 */
+	private volatile long remoteLeaseDuration = -1;
+
+	/*
+	 * The threads which wait for call chains of this invoker manager.
+	 */
+	final ConcurrentMap<Long, CallChain.Waiter> chainWaiters = new ConcurrentHashMap<>();
+
 	/*
 	 * The close future of this invoker manager.
 	 */
@@ -58,7 +123,7 @@ public abstract class InvokerManager {
 	/*
 	 * The dynamic registry of this invoker manager.
 	 */
-	private final DynamicRegistry dynamicRegistry = new DynamicRegistry();
+	private final DynamicRegistry dynamicRegistry;
 
 	/*
 	 * The static registry of this invoker manager.
@@ -70,6 +135,200 @@ public abstract class InvokerManager {
 	 */
 	private volatile long dynamicProxyTimeout;
 
+	/*
+	 * The number of sent invocations which are not completed yet.
+	 */
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/*
+	 * The maximum number of outstanding invocations (<= 0 means no limit).
+	 */
+	private volatile int inFlightLimit;
+
+	/*
+	 * The adaptive limit of outstanding invocations or null.
+	 */
+	private volatile AdaptiveLimit adaptiveLimit;
+
+	/*
+	 * The overflow policy.
+	 */
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+	/*
+	 * The share of this invoker manager relative to other invoker managers
+	 * when executing incoming invocations.
+	 */
+	private volatile int schedulingWeight = 1;
+
+	/*
+	 * The maximum number of concurrently executing incoming invocations (<= 0
+	 * means no limit).
+	 */
+	private volatile int concurrencyLimit;
+
+	/*
+	 * The invocations which wait for capacity.
+	 */
+	private final Queue<Invocation> waitingInvocations = new ConcurrentLinkedQueue<>();
+
+	/*
+	 * Used to block threads which wait for capacity.
+	 */
+	private final Object capacityLock = new Object();
+
+	/*
+	 * The number of threads which wait for capacity.
+	 */
+	private final AtomicInteger blockedThreads = new AtomicInteger();
+
+	/*
+	 * Releases the capacity of completed invocations.
+	 */
+	private final FutureCallback releaseCallback = new FutureCallback() {
+
+		@Override
+		public void completed(Future future) throws Exception {
+			inFlight.decrementAndGet();
+			resumeInvocations();
+		}
+	};
+
+	/**
+	 * @return the current limit of outstanding invocations (<= 0 means no
+	 *         limit).
+	 */
+	private int effectiveLimit() {
+		AdaptiveLimit adaptive = adaptiveLimit;
+		return adaptive != null ? adaptive.limit() : inFlightLimit;
+	}
+
+	/**
+	 * Tries to reserve capacity for a new invocation.
+	 * 
+	 * @return true if the capacity is reserved, otherwise false.
+	 */
+	private boolean tryAcquire() {
+		for (;;) {
+			int current = inFlight.get(), limit = effectiveLimit();
+
+			// Check the limit and the transport
+			if ((limit > 0 && current >= limit) || !isWritable()) {
+				return false;
+			}
+
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Blocks the calling thread until there is capacity for the given
+	 * invocation. If this method fails, the invocation is failed too.
+	 * 
+	 * @param invocation
+	 *            The invocation which waits for capacity.
+	 * @return true if the capacity is reserved, otherwise false.
+	 */
+	private boolean awaitCapacity(Invocation invocation) {
+		blockedThreads.incrementAndGet();
+		try {
+			synchronized (capacityLock) {
+				while (!tryAcquire()) {
+					if (invocation.isCompleted()) {
+						return false;
+					} else if (closeFuture.isCompleted()) {
+						invocation.fail(new IllegalStateException(
+								"The invoker manager is closed"));
+						return false;
+					} else if (invocation.hasDeadline()) {
+						long remaining = invocation.remainingNanos();
+
+						if (remaining <= 0) {
+							invocation.fail(new TimeoutException("The "
+									+ "invocation has timed out while "
+									+ "waiting for capacity"));
+							return false;
+						}
+
+						TimeUnit.NANOSECONDS.timedWait(capacityLock, remaining);
+					} else {
+						capacityLock.wait();
+					}
+				}
+				return true;
+			}
+		} catch (InterruptedException e) {
+			invocation.fail(e);
+			return false;
+		} finally {
+			blockedThreads.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Sends an invocation which already reserved its capacity.
+	 * 
+	 * @param invocation
+	 *            The invocation.
+	 */
+	private void sendReserved(Invocation invocation) {
+		final AdaptiveLimit adaptive = adaptiveLimit;
+
+		// Release the capacity when completed
+		if (adaptive == null) {
+			invocation.add(releaseCallback);
+		} else {
+			final long sent = System.nanoTime();
+			final int outstanding = inFlight.get();
+
+			// Measure the round-trip time
+			invocation.add(new FutureCallback() {
+
+				@Override
+				public void completed(Future future) throws Exception {
+					Throwable cause = future.cause();
+					adaptive.sample(System.nanoTime() - sent, outstanding,
+							cause instanceof RejectedExecutionException
+									|| cause instanceof TimeoutException);
+					releaseCallback.completed(future);
+				}
+			});
+		}
+
+		// Invocations might fail while waiting
+		if (invocation.isCompleted()) {
+			return;
+		}
+
+		// The remote side gets the remaining budget only
+		if (!invocation.applyRemainingTimeout()) {
+			invocation.fail(new TimeoutException("The invocation has timed "
+					+ "out while waiting for capacity"));
+			return;
+		}
+
+		sendInvocation(invocation);
+	}
+
+	/**
+	 * Sends the given message of an asynchronous void method without creating
+	 * an invocation, so there is neither a completion notification nor a
+	 * limit of outstanding invocations. Proxies use this method to call
+	 * asynchronous void methods, use {@link Invoker#invoke(Method, Object...)}
+	 * if you need the notification. The default implementation does not
+	 * support one-way messages.
+	 * 
+	 * @param message
+	 *            The invocation message.
+	 * @return true if the message is sent, false if a regular invocation must
+	 *         be used instead.
+	 */
+	protected boolean sendOneWay(InvocationMessage message) {
+		return false;
+	}
+
 	/**
 	 * Replaces the given remote object with a proxy if necessary.
 	 * 
@@ -84,8 +343,89 @@ public abstract class InvokerManager {
 		}
 
 		// Create a new invoker
-		return new Invoker(this, new RemoteBinding((RemoteObject) remoteObject,
-				true)).proxyTimeout(dynamicProxyTimeout).proxy();
+		Invoker invoker = new Invoker(this, new RemoteBinding(
+				(RemoteObject) remoteObject, true))
+				.proxyTimeout(dynamicProxyTimeout);
+
+		// Track the invoker to release the remote object when collected
+		remoteReferences.add(new RemoteReference(invoker, invoker.binding()
+				.id(), collectedInvokers));
+
+		return invoker.proxy();
+	}
+
+	/**
+	 * Polls the dynamic remote objects whose invokers were garbage collected
+	 * since the last call. Transports should send the ids to the remote side
+	 * which releases the bindings using {@link DynamicRegistry#release(long...)}.
+	 * 
+	 * @return the ids of the released remote objects, one id per collected
+	 *         invoker.
+	 */
+	protected long[] pollReleasedRemotes() {
+		long[] ids = NO_IDS;
+		int count = 0;
+
+		RemoteReference reference;
+		while ((reference = (RemoteReference) collectedInvokers.poll()) != null) {
+			remoteReferences.remove(reference);
+
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, Math.max(16, count * 2));
+			}
+			ids[count++] = reference.id;
+		}
+
+		return count < ids.length ? Arrays.copyOf(ids, count) : ids;
+	}
+
+	/**
+	 * Collects the dynamic remote objects which are still referenced by
+	 * invokers. Transports should send the ids to the remote side periodically
+	 * which renews the leases using {@link DynamicRegistry#renew(long...)}.
+	 * 
+	 * @return the distinct ids of the referenced remote objects.
+	 */
+	protected long[] referencedRemotes() {
+		Set<Long> ids = new HashSet<>();
+		for (RemoteReference reference : remoteReferences) {
+			if (reference.get() != null) {
+				ids.add(reference.id);
+			}
+		}
+
+		long[] result = new long[ids.size()];
+		int i = 0;
+		for (Long id : ids) {
+			result[i++] = id;
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the lease duration of the bindings which the remote side sends to
+	 * this side. Transports pass it along with the lease updates, so both
+	 * sides may use different lease durations.
+	 * 
+	 * @param leaseDuration
+	 *            The lease duration of the remote side in milliseconds.
+	 */
+	public void remoteLeaseDuration(long leaseDuration) {
+		remoteLeaseDuration = leaseDuration;
+	}
+
+	/**
+	 * @return the interval in milliseconds in which transports should renew
+	 *         the referenced remote objects. Renewing three times per lease of
+	 *         the remote side tolerates a delayed renewal. The lease duration
+	 *         of this side is used until the remote side tells its own.
+	 */
+	protected long renewalInterval() {
+		long leaseDuration = remoteLeaseDuration;
+		if (leaseDuration < 0) {
+			leaseDuration = dynamicReg().leaseDuration();
+		}
+		return leaseDuration > 0 ? leaseDuration / 3 : Long.MAX_VALUE / 2;
 	}
 
 	/**
@@ -153,6 +493,105 @@ public abstract class InvokerManager {
 	 */
 	protected abstract void sendInvocation(Invocation invocation);
 
+	/**
+	 * @return true if the transport is able to accept more data, otherwise
+	 *         false. Invocations are held back while this method returns false.
+	 */
+	protected boolean isWritable() {
+		return true;
+	}
+
+	/**
+	 * Sends waiting invocations and wakes up blocked threads if there is
+	 * capacity again. Transports should call this method when they become
+	 * writable again.
+	 */
+	protected void resumeInvocations() {
+
+		// Wake up the blocked threads
+		if (blockedThreads.get() > 0) {
+			synchronized (capacityLock) {
+				capacityLock.notifyAll();
+			}
+		}
+
+		// Send the waiting invocations
+		while (!waitingInvocations.isEmpty() && tryAcquire()) {
+			Invocation next = waitingInvocations.poll();
+
+			if (next == null || next.isCompleted()) {
+				inFlight.decrementAndGet();
+
+				if (next == null) {
+					break;
+				}
+			} else {
+				sendReserved(next);
+			}
+		}
+	}
+
+	/**
+	 * Sends the invocation to the remote side if the limit of outstanding
+	 * invocations is not reached. Otherwise the overflow policy is applied.
+	 * 
+	 * @param invocation
+	 *            The invocation you want to send.
+	 */
+	final void dispatchInvocation(final Invocation invocation) {
+
+		// The time budget starts now and includes waiting for capacity
+		invocation.startDeadline();
+
+		// Fast path
+		if (tryAcquire()) {
+			sendReserved(invocation);
+			return;
+		}
+
+		switch (overflowPolicy) {
+		case FAIL:
+			invocation.fail(new RejectedExecutionException("Too many "
+					+ "outstanding invocations"));
+			break;
+		case ENQUEUE:
+			// Fail the invocation if it waits longer than its time budget
+			if (invocation.hasDeadline()) {
+				final ScheduledFuture<?> expiry = SharedTimer.schedule(
+						new Runnable() {
+
+							@Override
+							public void run() {
+								if (invocation.fail(new TimeoutException(
+										"The invocation has timed out while "
+												+ "waiting for capacity"))) {
+									waitingInvocations.remove(invocation);
+								}
+							}
+						}, invocation.remainingNanos(), TimeUnit.NANOSECONDS);
+
+				invocation.add(new FutureCallback() {
+
+					@Override
+					public void completed(Future future) throws Exception {
+						expiry.cancel(false);
+					}
+				});
+			}
+
+			waitingInvocations.offer(invocation);
+
+			// The capacity might be released in the meantime
+			resumeInvocations();
+			break;
+		default:
+			if (awaitCapacity(invocation)) {
+				sendReserved(invocation);
+			}
+			break;
+		}
+	}
+
 	/**
 	 * @param proxy
 	 *            The proxy.
@@ -171,12 +610,51 @@ public abstract class InvokerManager {
 	 *            The static registry of this invoker manager.
 	 */
 	public InvokerManager(StaticRegistry staticRegistry) {
+		this(staticRegistry, new ExportTable());
+	}
+
+	/**
+	 * Creates a new invoker manager using the given arguments.
+	 * 
+	 * @param staticRegistry
+	 *            The static registry of this invoker manager.
+	 * @param exportTable
+	 *            The export table which provides the dynamic bindings. Invoker
+	 *            managers which share an export table also share the dynamic
+	 *            bindings of the same target.
+	 */
+	public InvokerManager(StaticRegistry staticRegistry,
+			ExportTable exportTable) {
 		if (staticRegistry == null) {
 			throw new NullPointerException("staticRegistry");
 		}
 
 		// Save the static registry
 		this.staticRegistry = staticRegistry;
+
+		// Create the dynamic registry
+		dynamicRegistry = new DynamicRegistry(exportTable);
+
+		// Release the waiting invocations when closed
+		closeFuture.add(new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				Invocation invocation;
+				while ((invocation = waitingInvocations.poll()) != null) {
+					invocation.fail(new IllegalStateException(
+							"The invoker manager is closed"));
+				}
+
+				synchronized (capacityLock) {
+					capacityLock.notifyAll();
+				}
+
+				// The remote side can not reference our bindings anymore
+				dynamicRegistry.unbindAll();
+				remoteReferences.clear();
+			}
+		});
 	}
 
 	/**
@@ -250,6 +728,131 @@ public abstract class InvokerManager {
 		return this;
 	}
 
+	/**
+	 * @return the number of sent invocations which are not completed yet.
+	 */
+	public int inFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the maximum number of outstanding invocations. A value <= 0
+	 *         means no limit.
+	 */
+	public int inFlightLimit() {
+		return inFlightLimit;
+	}
+
+	/**
+	 * Sets the maximum number of outstanding invocations. If the limit is
+	 * reached the overflow policy is applied to new invocations. This limit
+	 * is ignored while an adaptive limit is set.
+	 * 
+	 * @param inFlightLimit
+	 *            The new limit. A value <= 0 means no limit.
+	 * @return this for chaining.
+	 */
+	public InvokerManager inFlightLimit(int inFlightLimit) {
+		this.inFlightLimit = inFlightLimit;
+		resumeInvocations();
+		return this;
+	}
+
+	/**
+	 * @return the adaptive limit of outstanding invocations or null.
+	 */
+	public AdaptiveLimit adaptiveLimit() {
+		return adaptiveLimit;
+	}
+
+	/**
+	 * Sets the adaptive limit of outstanding invocations. If not null, it
+	 * replaces the fixed in-flight limit and is adjusted using the round-trip
+	 * times of completed invocations, so the number of outstanding
+	 * invocations follows the capacity of the remote side.
+	 * 
+	 * @param adaptiveLimit
+	 *            The adaptive limit or null.
+	 * @return this for chaining.
+	 */
+	public InvokerManager adaptiveLimit(AdaptiveLimit adaptiveLimit) {
+		this.adaptiveLimit = adaptiveLimit;
+		resumeInvocations();
+		return this;
+	}
+
+	/**
+	 * @return the overflow policy.
+	 */
+	public OverflowPolicy overflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Sets the policy which is applied to new invocations if there is no
+	 * capacity.
+	 * 
+	 * @param overflowPolicy
+	 *            The new overflow policy.
+	 * @return this for chaining.
+	 */
+	public InvokerManager overflowPolicy(OverflowPolicy overflowPolicy) {
+		if (overflowPolicy == null) {
+			throw new NullPointerException("overflowPolicy");
+		}
+		this.overflowPolicy = overflowPolicy;
+		return this;
+	}
+
+	/**
+	 * @return the share of this invoker manager relative to other invoker
+	 *         managers when executing incoming invocations.
+	 */
+	public int schedulingWeight() {
+		return schedulingWeight;
+	}
+
+	/**
+	 * Sets the share of this invoker manager when executing incoming
+	 * invocations. If the executor is an {@link InvocationScheduler}, an
+	 * invoker manager with weight 2 gets twice as many tasks executed as an
+	 * invoker manager with weight 1 while both have queued tasks.
+	 * 
+	 * @param schedulingWeight
+	 *            The new weight.
+	 * @return this for chaining.
+	 */
+	public InvokerManager schedulingWeight(int schedulingWeight) {
+		if (schedulingWeight < 1) {
+			throw new IllegalArgumentException("schedulingWeight must be > 0");
+		}
+		this.schedulingWeight = schedulingWeight;
+		return this;
+	}
+
+	/**
+	 * @return the maximum number of concurrently executing incoming
+	 *         invocations. A value <= 0 means no limit.
+	 */
+	public int concurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	/**
+	 * Sets the maximum number of concurrently executing incoming invocations.
+	 * If the executor is an {@link InvocationScheduler}, further invocations
+	 * stay queued until a running invocation of this invoker manager is
+	 * finished.
+	 * 
+	 * @param concurrencyLimit
+	 *            The new limit. A value <= 0 means no limit.
+	 * @return this for chaining.
+	 */
+	public InvokerManager concurrencyLimit(int concurrencyLimit) {
+		this.concurrencyLimit = concurrencyLimit;
+		return this;
+	}
+
 	/**
 	 * This method will handle the invocation request using the given executor.
 	 * If the invocation is finished the future will be notified (If the future
@@ -302,41 +905,22 @@ public abstract class InvokerManager {
 			/*
 			 * Check the return value and the future.
 			 */
-			if (method.getReturnType() != void.class && future == null) {
+			if (method.getReturnType() != void.class && future == null
+					&& message.resultMode() != ResultMode.NONE) {
 				throw new IllegalStateException("The method does return a "
 						+ "non-void value but you have non specified a future");
 			}
 
 			/*
-			 * Create a new invocation and execute it using the given method
-			 * context.
+			 * Create a new invocation task and execute it using the given
+			 * method context. Expired tasks are dropped before dispatch. Nested
+			 * invocations of a call chain are executed by the thread which
+			 * waits for the chain.
 			 */
-			binding.executeInMethodContext(executor, message.methodId(),
-					new Runnable() {
-
-						@Override
-						public void run() {
-							try {
-								/*
-								 * Resolve all remote and local objects and
-								 * invoke method.
-								 */
-								Object result = method.invoke(binding.target(),
-										remotesToLocals(message.arguments()));
-
-								if (future != null) {
-									// Succeed the future with the filtered
-									// result
-									future.succeed(localToRemote(result));
-								}
-							} catch (Throwable e) {
-								if (future != null) {
-									// Fail
-									future.fail(e);
-								}
-							}
-						}
-					});
+			binding.executeInMethodContext(
+					CallChain.executorOf(this, message.chainId(), executor),
+					message.methodId(),
+					new InvocationTask(this, binding, method, message, future));
 		}
 	}
 
@@ -386,6 +970,70 @@ public abstract class InvokerManager {
 	 */
 	public abstract Invoker lookupInvoker(String name) throws LookupException;
 
+	/**
+	 * Gets the invokers of the given names. The default implementation looks
+	 * up every name on its own, transports should resolve all names at once.
+	 * 
+	 * @param names
+	 *            The names of the targets you want to lookup.
+	 * @return a map of the found names and their invokers. Unknown names are
+	 *         missing.
+	 * @throws LookupException
+	 *             If the lookup failed.
+	 */
+	public Map<String, Invoker> lookupInvokers(String... names)
+			throws LookupException {
+		Set<String> known = new HashSet<>(Arrays.asList(lookupNames()));
+		Map<String, Invoker> invokers = new LinkedHashMap<>();
+		for (String name : names) {
+			if (known.contains(name)) {
+				invokers.put(name, lookupInvoker(name));
+			}
+		}
+		return invokers;
+	}
+
+	/**
+	 * Gets the invokers of all names which match the given glob pattern.
+	 * 
+	 * @param pattern
+	 *            The glob pattern. A '*' matches any sequence of characters
+	 *            and a '?' matches any single character.
+	 * @return a map of the matching names and their invokers.
+	 * @throws LookupException
+	 *             If the lookup failed.
+	 */
+	public Map<String, Invoker> lookupInvokersMatching(String pattern)
+			throws LookupException {
+		GlobFilter filter = new GlobFilter(pattern);
+		List<String> names = new ArrayList<>();
+		for (String name : lookupNames()) {
+			if (filter.accept(name)) {
+				names.add(name);
+			}
+		}
+		return lookupInvokers(names.toArray(new String[names.size()]));
+	}
+
+	/**
+	 * Gets the invokers of the given names asynchronously. The default
+	 * implementation blocks until the lookup is finished.
+	 * 
+	 * @param names
+	 *            The names of the targets you want to lookup.
+	 * @return a future which is notified with the map of the found names and
+	 *         their invokers.
+	 */
+	public Future lookupInvokersAsync(String... names) {
+		Future future = new Future();
+		try {
+			future.succeed(lookupInvokers(names));
+		} catch (LookupException e) {
+			future.fail(e);
+		}
+		return future;
+	}
+
 	/**
 	 * Gets the names of all remote bindings.
 	 * 
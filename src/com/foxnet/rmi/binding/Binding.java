@@ -32,11 +32,7 @@
 package com.foxnet.rmi.binding;
 
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 /**
  * This class represents an abstract binding.
@@ -50,8 +46,8 @@ public abstract class Binding extends RemoteObject {
 	 */
 	private static final long serialVersionUID = 1L;
 
-	// All interface methods (ordered by name)
-	private final List<Method> methods;
+	// The reflective metadata of this binding
+	private final BindingTemplate template;
 
 	/**
 	 * Creates a new binding.
@@ -62,55 +58,34 @@ public abstract class Binding extends RemoteObject {
 	 *            The interface classes of this binding.
 	 */
 	public Binding(long id, Class<?>[] interfaces) {
-		super(id, interfaces);
-
-		// This class does not allow null!
-		if (interfaces == null) {
-			throw new NullPointerException("interfaces");
-		}
-
-		// Tmp hash map for storing information about the methods
-		SortedMap<String, Method> methodMap = new TreeMap<>();
-
-		// Collect all methods
-		for (Class<?> interfaceClass : interfaces) {
-
-			// For all methods of the interface
-			for (Method method : interfaceClass.getMethods()) {
-
-				// Get the string
-				String signature = method.getName();
-
-				// Build the string signature
-				for (Class<?> parameterType : method.getParameterTypes()) {
-					signature += parameterType.getName();
-				}
-
-				// Add method if different
-				if (!methodMap.containsKey(signature)) {
-
-					// Put into map
-					methodMap.put(signature, method);
-				}
-			}
-		}
+		this(id, BindingTemplate.of(interfaces));
+	}
 
-		// Stop here... We need methods!!
-		if (methodMap.isEmpty()) {
-			throw new IllegalArgumentException("The given interfaces "
-					+ "do not have any methods");
-		}
+	/**
+	 * Creates a new binding.
+	 * 
+	 * @param id
+	 *            The id of this binding.
+	 * @param template
+	 *            The template of this binding.
+	 */
+	public Binding(long id, BindingTemplate template) {
+		super(id, template.interfaces());
+		this.template = template;
+	}
 
-		// Get array
-		methods = Collections.unmodifiableList(new ArrayList<>(methodMap
-				.values()));
+	/**
+	 * @return the template of this binding.
+	 */
+	public BindingTemplate template() {
+		return template;
 	}
 
 	/**
 	 * @return the list which contains all methods.
 	 */
 	public List<Method> methods() {
-		return methods;
+		return template.methods();
 	}
 
 	/**
@@ -121,7 +96,7 @@ public abstract class Binding extends RemoteObject {
 	 * @return true if the id is valid, otherwise false.
 	 */
 	public boolean containsMethodId(int methodId) {
-		return methodId >= 0 && methodId < methods.size();
+		return methodId >= 0 && methodId < template.methods().size();
 	}
 
 	/**
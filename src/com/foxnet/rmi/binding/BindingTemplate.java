@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.binding;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.foxnet.rmi.AsyncVoid;
+import com.foxnet.rmi.DiscardResult;
+import com.foxnet.rmi.LocalInterface;
+import com.foxnet.rmi.OrderedExecution;
+import com.foxnet.rmi.Priority;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.RemoteInterfaces;
+import com.foxnet.rmi.ResultMode;
+
+/**
+ * A binding template contains the reflective metadata of a set of remote
+ * interfaces. Templates are cached, so all bindings of the same target class
+ * or the same interfaces share one template.
+ * 
+ * @author Christopher Probst
+ */
+public final class BindingTemplate {
+
+	/*
+	 * The templates of the target classes. A template only refers to
+	 * supertypes of its target class, so it does not keep any class loader
+	 * alive which the target class does not keep alive anyway.
+	 */
+	private static final ClassValue<BindingTemplate> classTemplates = new ClassValue<BindingTemplate>() {
+
+		@Override
+		protected BindingTemplate computeValue(Class<?> type) {
+			return of(remoteInterfaces(type));
+		}
+	};
+
+	/*
+	 * The templates of interface arrays mapped to the interface whose class
+	 * loader sees the class loaders of all other interfaces as parents (see
+	 * ownerOf).
+	 */
+	private static final ClassValue<ConcurrentMap<List<Class<?>>, BindingTemplate>> interfaceTemplates = new ClassValue<ConcurrentMap<List<Class<?>>, BindingTemplate>>() {
+
+		@Override
+		protected ConcurrentMap<List<Class<?>>, BindingTemplate> computeValue(
+				Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	/**
+	 * Simply checks whether or not the given interface class is valid.
+	 * 
+	 * @param interfaceClass
+	 *            The interface class you want to check.
+	 * @return true if the interface class is valid, otherwise false.
+	 */
+	private static boolean isValidRemoteInterface(Class<?> interfaceClass) {
+		return !LocalInterface.class.isAssignableFrom(interfaceClass)
+				&& !Remote.class.equals(interfaceClass);
+	}
+
+	/**
+	 * This method collects all valid remote interfaces.
+	 * 
+	 * @param startClass
+	 *            The start class.
+	 * @param endClass
+	 *            The end class.
+	 * @param interfaces
+	 *            The set with all remote interface classes.
+	 */
+	private static void collectAllRemoteInterfaces(Class<?> startClass,
+			Class<?> endClass, Set<Class<?>> interfaces) {
+		if (startClass == null) {
+			throw new NullPointerException("startClass");
+		} else if (endClass == null) {
+			throw new NullPointerException("endClass");
+		} else if (interfaces == null) {
+			throw new NullPointerException("interfaces");
+		} else if (!startClass.isAssignableFrom(endClass)) {
+			throw new IllegalArgumentException("The start class must be "
+					+ "a super class of the end class");
+		}
+
+		for (Class<?> pointer = endClass; pointer != startClass; pointer = pointer
+				.getSuperclass()) {
+			for (Class<?> interfaceClass : pointer.getInterfaces()) {
+				if (isValidRemoteInterface(interfaceClass)) {
+					interfaces.add(interfaceClass);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method collects all remote interfaces or uses the
+	 * {@link RemoteInterfaces} annotation if present to use only the specified
+	 * intefaces.
+	 * 
+	 * @param targetClass
+	 *            The class of the remote target.
+	 * @return an array with all valid remote interfaces.
+	 */
+	private static Class<?>[] remoteInterfaces(Class<?> targetClass) {
+
+		// Get annotation if present
+		RemoteInterfaces remoteInterfaces = targetClass
+				.getAnnotation(RemoteInterfaces.class);
+
+		// Used to collect the interfaces
+		Set<Class<?>> uniqueInterfaces = new HashSet<>();
+
+		/*
+		 * Use the classes from the annotation.
+		 */
+		if (remoteInterfaces != null && remoteInterfaces.value().length > 0) {
+			// Check if the interfaces are valid
+			for (Class<?> interfaceClass : remoteInterfaces.value()) {
+				// Check
+				if (interfaceClass.isInterface()
+						&& isValidRemoteInterface(interfaceClass)
+						&& interfaceClass.isAssignableFrom(targetClass)) {
+					// Add to interfaces
+					uniqueInterfaces.add(interfaceClass);
+				}
+			}
+		} else {
+			// Collect all interfaces
+			collectAllRemoteInterfaces(Object.class, targetClass,
+					uniqueInterfaces);
+		}
+
+		// Copy to array
+		return uniqueInterfaces.toArray(new Class<?>[uniqueInterfaces.size()]);
+	}
+
+	/**
+	 * @param ancestor
+	 *            The possible ancestor.
+	 * @param classLoader
+	 *            The class loader.
+	 * @return true if the ancestor is the given class loader or one of its
+	 *         parents, otherwise false. The bootstrap class loader (null) is
+	 *         the ancestor of all class loaders.
+	 */
+	private static boolean isAncestor(ClassLoader ancestor,
+			ClassLoader classLoader) {
+		if (ancestor == null) {
+			return true;
+		}
+		for (ClassLoader pointer = classLoader; pointer != null; pointer = pointer
+				.getParent()) {
+			if (pointer == ancestor) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the interface with the deepest class loader. If the class loaders
+	 * of all other interfaces are parents of this class loader, a template
+	 * which is cached for this interface does not keep any other class loader
+	 * alive.
+	 * 
+	 * @param interfaces
+	 *            The interface classes.
+	 * @return the owning interface or null if the class loaders of the
+	 *         interfaces are not related this way.
+	 */
+	private static Class<?> ownerOf(Class<?>[] interfaces) {
+		Class<?> owner = interfaces[0];
+		for (int i = 1; i < interfaces.length; i++) {
+			ClassLoader classLoader = interfaces[i].getClassLoader();
+			if (isAncestor(owner.getClassLoader(), classLoader)) {
+				owner = interfaces[i];
+			} else if (!isAncestor(classLoader, owner.getClassLoader())) {
+				return null;
+			}
+		}
+		return owner;
+	}
+
+	/**
+	 * @param targetClass
+	 *            The class of a remote target.
+	 * @return the template of all remote interfaces of the given class.
+	 */
+	public static BindingTemplate of(Class<?> targetClass) {
+		if (targetClass == null) {
+			throw new NullPointerException("targetClass");
+		}
+		return classTemplates.get(targetClass);
+	}
+
+	/**
+	 * @param interfaces
+	 *            The interface classes.
+	 * @return the template of the given interfaces.
+	 */
+	public static BindingTemplate of(Class<?>[] interfaces) {
+		// This class does not allow null!
+		if (interfaces == null) {
+			throw new NullPointerException("interfaces");
+		} else if (interfaces.length == 0) {
+			throw new IllegalArgumentException("The given interfaces "
+					+ "do not have any methods");
+		}
+
+		// Templates of unrelated class loaders are not cached
+		Class<?> owner = ownerOf(interfaces);
+		if (owner == null) {
+			return new BindingTemplate(interfaces.clone());
+		}
+
+		// Lookup the template
+		ConcurrentMap<List<Class<?>>, BindingTemplate> templates = interfaceTemplates
+				.get(owner);
+		List<Class<?>> key = Arrays.<Class<?>> asList(interfaces);
+		BindingTemplate template = templates.get(key);
+
+		if (template == null) {
+			// Copy the interfaces, the array might be changed later
+			template = new BindingTemplate(interfaces.clone());
+			BindingTemplate old = templates.putIfAbsent(
+					Arrays.<Class<?>> asList(template.interfaces), template);
+			if (old != null) {
+				template = old;
+			}
+		}
+
+		return template;
+	}
+
+	// The interface classes
+	private final Class<?>[] interfaces;
+
+	// All interface methods (ordered by name)
+	private final List<Method> methods;
+
+	// Maps methods to their ids
+	private final Map<Method, Integer> methodIds;
+
+	// Maps method names to their ids
+	private final Map<String, Integer> nameIds;
+
+	// The ordered flags of the method ids or null if there are none
+	private final boolean[] orderedMethods;
+
+	// The priorities of the method ids
+	private final int[] priorities;
+
+	// The result modes of the DiscardResult annotations of the method ids
+	private final ResultMode[] resultModes;
+
+	// The asynchronous void flags of the method ids or null if there are none
+	private final boolean[] asyncVoidMethods;
+
+	private BindingTemplate(Class<?>[] interfaces) {
+		this.interfaces = interfaces;
+
+		// Tmp hash map for storing information about the methods
+		SortedMap<String, Method> methodMap = new TreeMap<>();
+
+		// Collect all methods
+		for (Class<?> interfaceClass : interfaces) {
+
+			// For all methods of the interface
+			for (Method method : interfaceClass.getMethods()) {
+
+				// Get the string
+				String signature = method.getName();
+
+				// Build the string signature
+				for (Class<?> parameterType : method.getParameterTypes()) {
+					signature += parameterType.getName();
+				}
+
+				// Add method if different
+				if (!methodMap.containsKey(signature)) {
+
+					// Put into map
+					methodMap.put(signature, method);
+				}
+			}
+		}
+
+		// Stop here... We need methods!!
+		if (methodMap.isEmpty()) {
+			throw new IllegalArgumentException("The given interfaces "
+					+ "do not have any methods");
+		}
+
+		// Get array
+		methods = Collections.unmodifiableList(new ArrayList<>(methodMap
+				.values()));
+
+		// Create maps
+		int index = 0;
+		Map<Method, Integer> tmpMethodIds = new HashMap<>();
+		Map<String, Integer> tmpNameIds = new HashMap<>();
+		boolean[] tmpOrderedMethods = null;
+		boolean[] tmpAsyncVoidMethods = null;
+		priorities = new int[methods.size()];
+		resultModes = new ResultMode[methods.size()];
+		for (Method method : methods) {
+			// Check if AsyncVoid is present on a void method without exceptions
+			AsyncVoid av = method.getAnnotation(AsyncVoid.class);
+			if (av != null && av.value()
+					&& method.getReturnType() == void.class
+					&& method.getExceptionTypes().length == 0) {
+
+				// Lazy setup
+				if (tmpAsyncVoidMethods == null) {
+					tmpAsyncVoidMethods = new boolean[methods.size()];
+				}
+				tmpAsyncVoidMethods[index] = true;
+			}
+
+			// Result mode of the method
+			DiscardResult dr = method.getAnnotation(DiscardResult.class);
+			resultModes[index] = dr != null ? dr.value() : ResultMode.FULL;
+
+			// Clamp the priority of the method
+			Priority priority = method.getAnnotation(Priority.class);
+			priorities[index] = priority != null ? Math.max(
+					Priority.MIN_PRIORITY,
+					Math.min(Priority.MAX_PRIORITY, priority.value()))
+					: Priority.NORM_PRIORITY;
+
+
+			// Check if OrderedExecution is present...
+			OrderedExecution oe = method.getAnnotation(OrderedExecution.class);
+			if (oe != null && oe.value()) {
+
+				// Lazy setup
+				if (tmpOrderedMethods == null) {
+					tmpOrderedMethods = new boolean[methods.size()];
+				}
+				tmpOrderedMethods[index] = true;
+			}
+
+			tmpMethodIds.put(method, index);
+			tmpNameIds.put(method.getName(), index++);
+		}
+
+		// Save unmodifiable maps
+		methodIds = Collections.unmodifiableMap(tmpMethodIds);
+		nameIds = Collections.unmodifiableMap(tmpNameIds);
+		orderedMethods = tmpOrderedMethods;
+		asyncVoidMethods = tmpAsyncVoidMethods;
+	}
+
+	/**
+	 * @return the interface classes.
+	 */
+	public Class<?>[] interfaces() {
+		return interfaces;
+	}
+
+	/**
+	 * @return the list which contains all methods.
+	 */
+	public List<Method> methods() {
+		return methods;
+	}
+
+	/**
+	 * @return the method-to-id map.
+	 */
+	public Map<Method, Integer> methodIds() {
+		return methodIds;
+	}
+
+	/**
+	 * @return the method-name-to-id map.
+	 */
+	public Map<String, Integer> nameIds() {
+		return nameIds;
+	}
+
+	/**
+	 * @return true if at least one method requires ordered execution,
+	 *         otherwise false.
+	 */
+	public boolean hasOrderedMethods() {
+		return orderedMethods != null;
+	}
+
+	/**
+	 * @param methodId
+	 *            The method id.
+	 * @return true if the method with the given id requires ordered execution,
+	 *         otherwise false.
+	 */
+	public boolean isOrdered(int methodId) {
+		return orderedMethods != null && methodId >= 0
+				&& methodId < orderedMethods.length && orderedMethods[methodId];
+	}
+
+	/**
+	 * @param methodId
+	 *            The method id.
+	 * @return the priority of the {@link Priority} annotation of the method
+	 *         with the given id or {@link Priority#NORM_PRIORITY} if the
+	 *         method is not annotated.
+	 */
+	public int priority(int methodId) {
+		return priorities[methodId];
+	}
+
+	/**
+	 * @param methodId
+	 *            The method id.
+	 * @return the result mode of the {@link DiscardResult} annotation of the
+	 *         method with the given id or {@link ResultMode#FULL} if the
+	 *         method is not annotated.
+	 */
+	public ResultMode resultMode(int methodId) {
+		return resultModes[methodId];
+	}
+
+	/**
+	 * @param methodId
+	 *            The method id.
+	 * @return true if and only if the method with the given id is marked as
+	 *         asynchronous and returns void.
+	 */
+	public boolean isAsyncVoid(int methodId) {
+		return asyncVoidMethods != null && asyncVoidMethods[methodId];
+	}
+}
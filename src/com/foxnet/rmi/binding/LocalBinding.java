@@ -32,20 +32,11 @@
 package com.foxnet.rmi.binding;
 
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Queue;
-import java.util.Set;
 import java.util.concurrent.Executor;
-import java.util.logging.Logger;
 
-import com.foxnet.rmi.LocalInterface;
-import com.foxnet.rmi.OrderedExecution;
 import com.foxnet.rmi.Remote;
-import com.foxnet.rmi.RemoteInterfaces;
 
 /**
  * This represents an abstract local binding.
@@ -54,106 +45,17 @@ import com.foxnet.rmi.RemoteInterfaces;
  */
 public abstract class LocalBinding extends Binding {
 
-	// The logger
-	protected final Logger logger = Logger.getLogger(getClass().getName());
-
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
 
 	/**
-	 * Simply checks whether or not the given interface class is valid.
-	 * 
-	 * @param interfaceClass
-	 *            The interface class you want to check.
-	 * @return true if the interface class is valid, otherwise false.
-	 */
-	private static boolean isValidRemoteInterface(Class<?> interfaceClass) {
-		return !LocalInterface.class.isAssignableFrom(interfaceClass)
-				&& !Remote.class.equals(interfaceClass);
-	}
-
-	/**
-	 * This method collects all valid remote interfaces.
-	 * 
-	 * @param startClass
-	 *            The start class.
-	 * @param endClass
-	 *            The end class.
-	 * @param interfaces
-	 *            The set with all remote interface classes.
-	 */
-	private static void collectAllRemoteInterfaces(Class<?> startClass,
-			Class<?> endClass, Set<Class<?>> interfaces) {
-		if (startClass == null) {
-			throw new NullPointerException("startClass");
-		} else if (endClass == null) {
-			throw new NullPointerException("endClass");
-		} else if (interfaces == null) {
-			throw new NullPointerException("interfaces");
-		} else if (!startClass.isAssignableFrom(endClass)) {
-			throw new IllegalArgumentException("The start class must be "
-					+ "a super class of the end class");
-		}
-
-		for (Class<?> pointer = endClass; pointer != startClass; pointer = pointer
-				.getSuperclass()) {
-			for (Class<?> interfaceClass : pointer.getInterfaces()) {
-				if (isValidRemoteInterface(interfaceClass)) {
-					interfaces.add(interfaceClass);
-				}
-			}
-		}
-	}
-
-	/**
-	 * This method collects all remote interfaces or uses the
-	 * {@link RemoteInterfaces} annotation if present to use only the specified
-	 * intefaces.
-	 * 
-	 * @param target
-	 *            The remote target.
-	 * @return an array with all valid remote interfaces.
-	 */
-	private static Class<?>[] remoteInterfaces(Remote target) {
-		if (target == null) {
-			throw new NullPointerException("target");
-		}
-
-		// Get annotation if present
-		RemoteInterfaces remoteInterfaces = target.getClass().getAnnotation(
-				RemoteInterfaces.class);
-
-		// Used to collect the interfaces
-		Set<Class<?>> uniqueInterfaces = new HashSet<>();
-
-		/*
-		 * Use the classes from the annotation.
-		 */
-		if (remoteInterfaces != null && remoteInterfaces.value().length > 0) {
-			// Check if the interfaces are valid
-			for (Class<?> interfaceClass : remoteInterfaces.value()) {
-				// Check
-				if (interfaceClass.isInterface()
-						&& isValidRemoteInterface(interfaceClass)
-						&& interfaceClass.isAssignableFrom(target.getClass())) {
-					// Add to interfaces
-					uniqueInterfaces.add(interfaceClass);
-				}
-			}
-		} else {
-			// Collect all interfaces
-			collectAllRemoteInterfaces(Object.class, target.getClass(),
-					uniqueInterfaces);
-		}
-
-		// Copy to array
-		return uniqueInterfaces.toArray(new Class<?>[uniqueInterfaces.size()]);
-	}
-
-	/**
-	 * This class implements the concept of an ordered execution queue.
+	 * This class implements the concept of an ordered execution queue. Every
+	 * runnable is executed by the executor it was added with, so the tasks of
+	 * a binding which is shared by many connections stay on the executor of
+	 * their connection (e.g. in connection affine mode) while the queue still
+	 * executes them one after another.
 	 * 
 	 * @author Christopher Probst
 	 */
@@ -165,13 +67,25 @@ public abstract class LocalBinding extends Binding {
 		 */
 		private static final long serialVersionUID = 1L;
 
+		// A queued runnable and its executor
+		private static final class Ordered {
+
+			final Runnable runnable;
+			final Executor executor;
+
+			Ordered(Runnable runnable, Executor executor) {
+				this.runnable = runnable;
+				this.executor = executor;
+			}
+		}
+
 		// Lock the queue
 		private final Object queueLock = new Object();
 
 		/*
 		 * Used to queue the runnables.
 		 */
-		private final Queue<Runnable> queue = new LinkedList<Runnable>();
+		private final Queue<Ordered> queue = new LinkedList<Ordered>();
 
 		/**
 		 * This method offers a runnable object.
@@ -181,6 +95,21 @@ public abstract class LocalBinding extends Binding {
 		 * @return true if this queue needs to be executed.
 		 */
 		public boolean addOrderedExecution(Runnable runnable) {
+			return addOrderedExecution(runnable, null);
+		}
+
+		/**
+		 * This method offers a runnable object.
+		 * 
+		 * @param runnable
+		 *            The runnable you want to add.
+		 * @param executor
+		 *            The executor of the runnable or null if the runnable can
+		 *            be executed by any thread.
+		 * @return true if this queue needs to be executed.
+		 */
+		public boolean addOrderedExecution(Runnable runnable,
+				Executor executor) {
 
 			// Init here
 			boolean needsExecution;
@@ -190,13 +119,24 @@ public abstract class LocalBinding extends Binding {
 				needsExecution = queue.isEmpty();
 
 				// Offer command!
-				queue.offer(runnable);
+				queue.offer(new Ordered(runnable, executor));
 			}
 
 			// Return the state
 			return needsExecution;
 		}
 
+		/**
+		 * @return the runnable which is executed next or null if this queue
+		 *         is empty.
+		 */
+		public Runnable head() {
+			synchronized (queueLock) {
+				Ordered head = queue.peek();
+				return head != null ? head.runnable : null;
+			}
+		}
+
 		/*
 		 * (non-Javadoc)
 		 * 
@@ -204,16 +144,17 @@ public abstract class LocalBinding extends Binding {
 		 */
 		@Override
 		public void run() {
-			Runnable runnable = null;
+			Ordered ordered = null;
 
 			for (;;) {
 				synchronized (queueLock) {
 					// Get command
-					runnable = queue.element();
+					ordered = queue.element();
 				}
 
 				// Run!
-				runnable.run();
+				Executor executor = ordered.executor;
+				ordered.runnable.run();
 
 				synchronized (queueLock) {
 
@@ -224,13 +165,50 @@ public abstract class LocalBinding extends Binding {
 					if (queue.isEmpty()) {
 						return;
 					}
+
+					ordered = queue.element();
+				}
+
+				// Continue with the executor of the next runnable
+				if (ordered.executor != null && ordered.executor != executor) {
+					ordered.executor.execute(this);
+					return;
 				}
 			}
 		}
 	}
 
-	// Here we store all ordered execution queues mapped to their method ids
-	private final Map<Integer, OrderedExecutionQueue> orderedExecutionQueues;
+	/**
+	 * Checks the given interface classes against the class of the target.
+	 * 
+	 * @param target
+	 *            The target.
+	 * @param interfaces
+	 *            The interface classes of the target.
+	 * @return the template of the given interfaces.
+	 */
+	private static BindingTemplate checkedTemplate(Remote target,
+			Class<?>[] interfaces) {
+		if (target == null) {
+			throw new NullPointerException("target");
+		}
+
+		BindingTemplate template = BindingTemplate.of(interfaces);
+
+		// Check all given interface classes
+		for (Class<?> interfaceClass : template.interfaces()) {
+			if (!interfaceClass.isAssignableFrom(target.getClass())) {
+				throw new IllegalArgumentException(interfaceClass
+						+ " is not part of the hierarchy of "
+						+ target.getClass());
+			}
+		}
+
+		return template;
+	}
+
+	// The ordered execution queues indexed by method id, created when needed
+	private volatile OrderedExecutionQueue[] orderedExecutionQueues;
 
 	// Here we store the remote target
 	private final Remote target;
@@ -245,7 +223,7 @@ public abstract class LocalBinding extends Binding {
 	 *            The target of this binding.
 	 */
 	public LocalBinding(long id, Remote target) {
-		this(id, target, remoteInterfaces(target));
+		this(id, target, BindingTemplate.of(target.getClass()));
 	}
 
 	/**
@@ -259,53 +237,55 @@ public abstract class LocalBinding extends Binding {
 	 *            The interface classes of the target.
 	 */
 	public LocalBinding(long id, Remote target, Class<?>[] interfaces) {
-		super(id, interfaces);
+		this(id, target, checkedTemplate(target, interfaces));
+	}
 
-		// Check all given interface classes
-		for (Class<?> interfaceClass : interfaces) {
-			if (!interfaceClass.isAssignableFrom(target.getClass())) {
-				throw new IllegalArgumentException(interfaceClass
-						+ " is not part of the hierarchy of "
-						+ target.getClass());
-			}
-		}
+	/**
+	 * Creates a new local binding. The template must belong to the class of
+	 * the target.
+	 * 
+	 * @param id
+	 *            The id of this binding.
+	 * @param target
+	 *            The target of this binding.
+	 * @param template
+	 *            The template of this binding.
+	 */
+	protected LocalBinding(long id, Remote target, BindingTemplate template) {
+		super(id, template);
 
 		// Save target
 		this.target = target;
+	}
 
-		// Annotation
-		OrderedExecution oe;
-
-		// Create tmp
-		Map<Integer, OrderedExecutionQueue> tmpOrderedExecutionQueues = null;
-
-		// Add all methods which
-		for (int i = 0, l = methods().size(); i < l; i++) {
-			// Check if OrderedExecution is present...
-			if ((oe = methods().get(i).getAnnotation(OrderedExecution.class)) != null
-					&& oe.value()) {
+	/**
+	 * @param methodId
+	 *            The id of the method.
+	 * @return the ordered execution queue of the given method or null if the
+	 *         method does not require ordered execution.
+	 */
+	public OrderedExecutionQueue orderedExecutionQueue(int methodId) {
+		if (!template().isOrdered(methodId)) {
+			return null;
+		}
 
-				// Lazy setup
-				if (tmpOrderedExecutionQueues == null) {
-					tmpOrderedExecutionQueues = new HashMap<>();
+		OrderedExecutionQueue[] queues = orderedExecutionQueues;
+		if (queues == null) {
+			synchronized (this) {
+				queues = orderedExecutionQueues;
+				if (queues == null) {
+					// Create the queues of all ordered methods at once
+					queues = new OrderedExecutionQueue[methods().size()];
+					for (int i = 0; i < queues.length; i++) {
+						if (template().isOrdered(i)) {
+							queues[i] = new OrderedExecutionQueue();
+						}
+					}
+					orderedExecutionQueues = queues;
 				}
-
-				// Create new queue
-				tmpOrderedExecutionQueues.put(i, new OrderedExecutionQueue());
 			}
 		}
-
-		// Set the map
-		orderedExecutionQueues = tmpOrderedExecutionQueues != null ? Collections
-				.unmodifiableMap(tmpOrderedExecutionQueues) : null;
-	}
-
-	/**
-	 * @return the ordered execution queues linked to their method ids or null
-	 *         if this binding does not have any ordered executions.
-	 */
-	public Map<Integer, OrderedExecutionQueue> orderedExecutionQueues() {
-		return orderedExecutionQueues;
+		return queues[methodId];
 	}
 
 	/**
@@ -326,8 +306,7 @@ public abstract class LocalBinding extends Binding {
 		}
 
 		// Try to get the queue
-		OrderedExecutionQueue queue = orderedExecutionQueues != null ? orderedExecutionQueues
-				.get(methodId) : null;
+		OrderedExecutionQueue queue = orderedExecutionQueue(methodId);
 
 		/*
 		 * Now execute the runnable. Either directly or the ordered execution
@@ -336,7 +315,7 @@ public abstract class LocalBinding extends Binding {
 		if (queue != null) {
 
 			// Execute queue if necessary
-			if (queue.addOrderedExecution(runnable)) {
+			if (queue.addOrderedExecution(runnable, executor)) {
 
 				// Set to queue
 				runnable = queue;
@@ -32,8 +32,6 @@
 package com.foxnet.rmi.binding;
 
 import java.lang.reflect.Method;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -51,12 +49,6 @@ public final class RemoteBinding extends Binding {
 	// The dynamic flag
 	private final boolean dynamic;
 
-	// Maps methods to their ids
-	private final Map<Method, Integer> methodIds;
-
-	// Maps method names to their ids
-	private final Map<String, Integer> nameIds;
-
 	/**
 	 * Creates a new remote binding.
 	 * 
@@ -84,19 +76,6 @@ public final class RemoteBinding extends Binding {
 
 		// Save
 		this.dynamic = dynamic;
-
-		// Create maps
-		int index = 0;
-		Map<Method, Integer> tmpMethodIds = new HashMap<>();
-		Map<String, Integer> tmpNameIds = new HashMap<>();
-		for (Method method : methods()) {
-			tmpMethodIds.put(method, index);
-			tmpNameIds.put(method.getName(), index++);
-		}
-
-		// Save unmodifiable maps
-		methodIds = Collections.unmodifiableMap(tmpMethodIds);
-		nameIds = Collections.unmodifiableMap(tmpNameIds);
 	}
 
 	/*
@@ -113,13 +92,13 @@ public final class RemoteBinding extends Binding {
 	 * @return the method-to-id map.
 	 */
 	public Map<Method, Integer> methodIds() {
-		return methodIds;
+		return template().methodIds();
 	}
 
 	/**
 	 * @return the method-name-to-id map.
 	 */
 	public Map<String, Integer> nameIds() {
-		return nameIds;
+		return template().nameIds();
 	}
 }
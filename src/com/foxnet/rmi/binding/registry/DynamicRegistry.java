@@ -30,17 +30,18 @@
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package com.foxnet.rmi.binding.registry;
-
-import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.foxnet.rmi.Remote;
 import com.foxnet.rmi.binding.DynamicBinding;
 import com.foxnet.rmi.binding.RemoteObject;
 
 /**
- * A dynamic registry is used to store dynamically created bindings.
+ * A dynamic registry is used to store dynamically created bindings. The
+ * bindings are taken from an {@link ExportTable}, so registries which share a
+ * table also share the bindings of the same target.
  * 
  * @author Christopher Probst
  * @see DynamicBinding
@@ -52,11 +53,67 @@ public final class DynamicRegistry extends Registry<DynamicBinding> {
 	 */
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * The default lease duration of bindings which are sent to the remote
+	 * side.
+	 */
+	public static final long DEFAULT_LEASE_DURATION = 10 * 60 * 1000;
+
+	// The table which provides the bindings
+	private final ExportTable exportTable;
+
 	// Used to store the ids
-	private final Map<Long, DynamicBinding> ids = new HashMap<>();
+	private final ConcurrentMap<Long, DynamicBinding> ids =
+			new ConcurrentHashMap<>();
 
-	// Used to store the dynamic objects
-	private final Map<Remote, DynamicBinding> objects = new IdentityHashMap<>();
+	// Used to store the leases of the ids
+	private final ConcurrentMap<Long, Lease> leases =
+			new ConcurrentHashMap<>();
+
+	// The lease duration of bindings which are sent to the remote side
+	private volatile long leaseDuration = DEFAULT_LEASE_DURATION;
+
+	/**
+	 * Removes the binding with the given id if the given lease is still the
+	 * lease of the binding.
+	 * 
+	 * @param id
+	 *            The id of the binding.
+	 * @param lease
+	 *            The released lease.
+	 */
+	private synchronized void unbindReleased(long id, Lease lease) {
+		if (leases.get(id) == lease) {
+			unbind(id);
+		}
+	}
+
+	/**
+	 * Creates a new dynamic registry which does not share its bindings.
+	 */
+	public DynamicRegistry() {
+		this(new ExportTable());
+	}
+
+	/**
+	 * Creates a new dynamic registry.
+	 * 
+	 * @param exportTable
+	 *            The table which provides the bindings.
+	 */
+	public DynamicRegistry(ExportTable exportTable) {
+		if (exportTable == null) {
+			throw new NullPointerException("exportTable");
+		}
+		this.exportTable = exportTable;
+	}
+
+	/**
+	 * @return the table which provides the bindings.
+	 */
+	public ExportTable exportTable() {
+		return exportTable;
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -64,7 +121,7 @@ public final class DynamicRegistry extends Registry<DynamicBinding> {
 	 * @see com.foxnet.rmi.binding.registry.Registry#bindingMap()
 	 */
 	@Override
-	protected Map<Long, DynamicBinding> bindingMap() {
+	protected ConcurrentMap<Long, DynamicBinding> bindingMap() {
 		return ids;
 	}
 
@@ -76,12 +133,16 @@ public final class DynamicRegistry extends Registry<DynamicBinding> {
 	@Override
 	public synchronized DynamicRegistry unbindAll() {
 		// Unbound all
-		for (Remote target : objects.keySet()) {
-			fireUnboundFrom(target);
+		for (DynamicBinding db : ids.values()) {
+			exportTable.release(db);
+			fireUnbound(db);
+		}
+		for (Lease lease : leases.values()) {
+			lease.invalidate();
 		}
 
 		// Clear the remaining maps
-		objects.clear();
+		leases.clear();
 		ids.clear();
 
 		return this;
@@ -98,11 +159,12 @@ public final class DynamicRegistry extends Registry<DynamicBinding> {
 		DynamicBinding db = ids.remove(id);
 
 		if (db != null) {
-			// Remove from object map
-			objects.remove(db.target());
+			// Remove the lease and the holder
+			leases.remove(id).invalidate();
+			exportTable.release(db);
 
 			// Notify
-			fireUnboundFrom(db.target());
+			fireUnbound(db);
 		}
 		return db;
 	}
@@ -115,17 +177,8 @@ public final class DynamicRegistry extends Registry<DynamicBinding> {
 	 * @return the old binding or null.
 	 */
 	public synchronized DynamicBinding unbind(Object target) {
-		// Remove from object map
-		DynamicBinding db = objects.remove(target);
-
-		if (db != null) {
-			// Remove from id map
-			ids.remove(db.id());
-
-			// Notify
-			fireUnboundFrom(db.target());
-		}
-		return db;
+		DynamicBinding db = exportTable.get(target);
+		return db != null && ids.get(db.id()) == db ? unbind(db.id()) : null;
 	}
 
 	/**
@@ -133,13 +186,91 @@ public final class DynamicRegistry extends Registry<DynamicBinding> {
 	 *            The target of the binding.
 	 * @return the binding with the given target or null.
 	 */
-	public synchronized DynamicBinding get(Remote target) {
-		return objects.get(target);
+	public DynamicBinding get(Remote target) {
+		DynamicBinding db = exportTable.get(target);
+		return db != null && ids.get(db.id()) == db ? db : null;
+	}
+
+	/**
+	 * @return the lease duration of bindings which are sent to the remote
+	 *         side.
+	 */
+	public long leaseDuration() {
+		return leaseDuration;
+	}
+
+	/**
+	 * Sets the lease duration of bindings which are sent to the remote side.
+	 * If the remote side neither renews nor releases a binding within this
+	 * duration, the binding is removed by {@link #unbindExpired()}.
+	 * 
+	 * @param leaseDuration
+	 *            The new lease duration in milliseconds. A value <= 0 means
+	 *            that leases never expire.
+	 * @return this for chaining.
+	 */
+	public DynamicRegistry leaseDuration(long leaseDuration) {
+		this.leaseDuration = leaseDuration;
+		return this;
+	}
+
+	/**
+	 * Releases references which are no longer held by the remote side.
+	 * Bindings without references are removed.
+	 * 
+	 * @param ids
+	 *            The ids of the released references, one id per reference.
+	 * @return this for chaining.
+	 */
+	public DynamicRegistry release(long... ids) {
+		for (long id : ids) {
+			Lease lease = leases.get(id);
+			if (lease != null && lease.release(1)) {
+				unbindReleased(id, lease);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Renews the leases of the bindings with the given ids.
+	 * 
+	 * @param ids
+	 *            The ids of the bindings.
+	 * @return this for chaining.
+	 */
+	public DynamicRegistry renew(long... ids) {
+		long duration = leaseDuration;
+		for (long id : ids) {
+			Lease lease = leases.get(id);
+			if (lease != null) {
+				lease.renew(duration);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Removes all bindings whose lease is expired.
+	 * 
+	 * @return the number of removed bindings.
+	 */
+	public int unbindExpired() {
+		long now = System.currentTimeMillis();
+		int count = 0;
+		for (Map.Entry<Long, Lease> entry : leases.entrySet()) {
+			if (entry.getValue().expire(now)) {
+				unbindReleased(entry.getKey(), entry.getValue());
+				count++;
+			}
+		}
+		return count;
 	}
 
 	/**
 	 * Replaces {@link Remote} objects and stores them dynamically. If the given
-	 * target is not a {@link Remote} object nothing happens.
+	 * target is not a {@link Remote} object nothing happens. Every replacement
+	 * adds a reference which must be released by the remote side.
 	 * 
 	 * @param target
 	 *            The target object.
@@ -151,14 +282,26 @@ public final class DynamicRegistry extends Registry<DynamicBinding> {
 			return target;
 		}
 
-		// Get remote binding
-		return new RemoteObject(bindIfAbsent((Remote) target));
+		for (;;) {
+			// Get remote binding
+			DynamicBinding binding = bindIfAbsent((Remote) target);
+			Lease lease = leases.get(binding.id());
+
+			if (lease != null) {
+				if (lease.acquire(leaseDuration)) {
+					return new RemoteObject(binding);
+				}
+
+				// Released concurrently, remove it before binding again
+				unbindReleased(binding.id(), lease);
+			}
+		}
 	}
 
 	/**
 	 * @see DynamicRegistry#replaceRemote(Object)
 	 */
-	public synchronized Object[] replaceRemotes(Object[] arguments) {
+	public Object[] replaceRemotes(Object[] arguments) {
 		if (arguments != null) {
 			for (int i = 0; i < arguments.length; i++) {
 				// Get the reference
@@ -176,26 +319,34 @@ public final class DynamicRegistry extends Registry<DynamicBinding> {
 	 *            The target you want to bind.
 	 * @return a new dynamic binding or the old one.
 	 */
-	public synchronized DynamicBinding bindIfAbsent(Remote target) {
+	public DynamicBinding bindIfAbsent(Remote target) {
 		if (target == null) {
 			throw new NullPointerException("target");
 		}
 
+		// Lock-free fast path
+		DynamicBinding binding = get(target);
+
+		return binding != null ? binding : bindIfAbsent0(target);
+	}
+
+	private synchronized DynamicBinding bindIfAbsent0(Remote target) {
+
 		// Get old binding...
-		DynamicBinding binding = objects.get(target);
+		DynamicBinding binding = get(target);
 
 		// Is there not an old binding ?
 		if (binding == null) {
 
-			// Create new temp object binding
-			binding = new DynamicBinding(getNextId(), (Remote) target);
+			// Get the shared binding
+			binding = exportTable.acquire(target);
 
 			// Put into maps
-			objects.put(target, binding);
+			leases.put(binding.id(), new Lease());
 			ids.put(binding.id(), binding);
 
 			// Notify the target
-			fireBoundTo(target);
+			fireBound(binding);
 		}
 
 		return binding;
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.binding.registry;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.binding.DynamicBinding;
+
+/**
+ * An export table shares the dynamic bindings of a target between all dynamic
+ * registries which use the table. A target which is exported by many
+ * registries is bound only once, the registries only map the id and count
+ * their own references.
+ * 
+ * @author Christopher Probst
+ * @see DynamicRegistry
+ */
+public final class ExportTable implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/*
+	 * Wraps a target so that it is compared by identity, since the concurrent
+	 * maps have no identity variant.
+	 */
+	private static final class Identity implements Serializable {
+
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		private final Object target;
+
+		Identity(Object target) {
+			this.target = target;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(target);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Identity
+					&& ((Identity) obj).target == target;
+		}
+	}
+
+	/*
+	 * A shared binding and the number of registries which hold it.
+	 */
+	private static final class Export implements Serializable {
+
+		/**
+		 * 
+		 */
+		private static final long serialVersionUID = 1L;
+
+		private final DynamicBinding binding;
+
+		private int holders;
+
+		Export(DynamicBinding binding) {
+			this.binding = binding;
+		}
+	}
+
+	// Used to create ids which are unique in this table
+	private final AtomicLong nextId = new AtomicLong();
+
+	// Used to store the exports of the targets
+	private final ConcurrentMap<Identity, Export> exports =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * @param target
+	 *            The target of the binding.
+	 * @return the shared binding of the given target or null.
+	 */
+	public DynamicBinding get(Object target) {
+		Export export = exports.get(new Identity(target));
+		return export != null ? export.binding : null;
+	}
+
+	/**
+	 * Gets the shared binding of the given target and adds a holder. The
+	 * binding is created if the target is not exported yet.
+	 * 
+	 * @param target
+	 *            The target.
+	 * @return the shared binding.
+	 */
+	synchronized DynamicBinding acquire(Remote target) {
+		Identity identity = new Identity(target);
+		Export export = exports.get(identity);
+
+		if (export == null) {
+			export = new Export(new DynamicBinding(nextId.getAndIncrement(),
+					target));
+			exports.put(identity, export);
+		}
+
+		export.holders++;
+		return export.binding;
+	}
+
+	/**
+	 * Removes a holder of the given binding. The binding is removed from this
+	 * table when there are no holders left.
+	 * 
+	 * @param binding
+	 *            The shared binding.
+	 */
+	synchronized void release(DynamicBinding binding) {
+		Identity identity = new Identity(binding.target());
+		Export export = exports.get(identity);
+
+		if (export != null && export.binding == binding
+				&& --export.holders == 0) {
+			exports.remove(identity);
+		}
+	}
+
+	/**
+	 * @return the number of exported targets.
+	 */
+	public int size() {
+		return exports.size();
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.binding.registry;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The references which the remote side holds to a dynamic binding and the
+ * time when they expire.
+ * 
+ * @author Christopher Probst
+ */
+final class Lease implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	// The number of references held by the remote side (-1 means released)
+	private final AtomicInteger references = new AtomicInteger();
+
+	// The time when the lease expires (0 means no lease)
+	private volatile long expiration;
+
+	/**
+	 * Adds a reference which is held by the remote side and renews the lease.
+	 * 
+	 * @param duration
+	 *            The lease duration in milliseconds. A value <= 0 means that
+	 *            the lease never expires.
+	 * @return true if the reference is added, false if this lease is already
+	 *         released.
+	 */
+	boolean acquire(long duration) {
+		for (;;) {
+			int current = references.get();
+			if (current < 0) {
+				return false;
+			}
+			if (references.compareAndSet(current, current + 1)) {
+				renew(duration);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Removes references which are no longer held by the remote side.
+	 * 
+	 * @param count
+	 *            The number of references.
+	 * @return true if this lease was released by this call, otherwise false.
+	 */
+	boolean release(int count) {
+		for (;;) {
+			int current = references.get();
+			if (current < 0) {
+				return false;
+			}
+			int next = current - count > 0 ? current - count : -1;
+			if (references.compareAndSet(current, next)) {
+				return next < 0;
+			}
+		}
+	}
+
+	/**
+	 * Releases this lease regardless of its references.
+	 */
+	void invalidate() {
+		references.set(-1);
+	}
+
+	/**
+	 * Renews this lease.
+	 * 
+	 * @param duration
+	 *            The lease duration in milliseconds. A value <= 0 means that
+	 *            the lease never expires.
+	 */
+	void renew(long duration) {
+		expiration = duration > 0 ? System.currentTimeMillis() + duration
+				: Long.MAX_VALUE;
+	}
+
+	/**
+	 * Releases this lease if it is expired.
+	 * 
+	 * @param now
+	 *            The current time in milliseconds.
+	 * @return true if this lease was released by this call, otherwise false.
+	 */
+	boolean expire(long now) {
+		int current = references.get();
+		long time = expiration;
+		return current >= 0 && time != 0 && time <= now
+				&& references.compareAndSet(current, -1);
+	}
+}
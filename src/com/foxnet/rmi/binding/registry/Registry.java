@@ -35,14 +35,17 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import com.foxnet.rmi.Remote;
 import com.foxnet.rmi.binding.LocalBinding;
 
 /**
- * This class represents a simple abstract registry of bindings.
+ * This class represents a simple abstract registry of bindings. Lookups by id
+ * do not lock, modifications are serialized by the subclasses.
  * 
  * @author Christopher Probst
  */
@@ -55,11 +58,51 @@ public abstract class Registry<B extends LocalBinding> implements Iterable<B>,
 	private static final long serialVersionUID = 1L;
 
 	// Used to create indeces
-	private long nextId = 0;
+	private final AtomicLong nextId = new AtomicLong();
 
 	// Used to log infos, warnings or messages
 	protected final Logger logger = Logger.getLogger(getClass().getName());
 
+	// The observers of this registry
+	private final List<RegistryObserver> observers =
+			new CopyOnWriteArrayList<>();
+
+	/**
+	 * Notifies the observers and the target of the given new binding.
+	 * 
+	 * @param binding
+	 *            The new binding.
+	 */
+	protected void fireBound(B binding) {
+		for (RegistryObserver observer : observers) {
+			try {
+				observer.bound(this, binding);
+			} catch (Exception e) {
+				logger.warning("Failed to notify the bound() "
+						+ "method. Reason: " + e.getMessage());
+			}
+		}
+		fireBoundTo(binding.target());
+	}
+
+	/**
+	 * Notifies the observers and the target of the given old binding.
+	 * 
+	 * @param binding
+	 *            The old binding.
+	 */
+	protected void fireUnbound(B binding) {
+		for (RegistryObserver observer : observers) {
+			try {
+				observer.unbound(this, binding);
+			} catch (Exception e) {
+				logger.warning("Failed to notify the unbound() "
+						+ "method. Reason: " + e.getMessage());
+			}
+		}
+		fireUnboundFrom(binding.target());
+	}
+
 	/**
 	 * Fires the bound-to event if the given target implements the
 	 * {@link RegistryListener} interface.
@@ -109,13 +152,39 @@ public abstract class Registry<B extends LocalBinding> implements Iterable<B>,
 	 *         This is quite safe because a long can hold very large values.
 	 */
 	protected long getNextId() {
-		return nextId++;
+		return nextId.getAndIncrement();
+	}
+
+	/**
+	 * Adds an observer which is notified about all bindings of this registry.
+	 * 
+	 * @param observer
+	 *            The observer.
+	 * @return this for chaining.
+	 */
+	public Registry<B> addObserver(RegistryObserver observer) {
+		if (observer == null) {
+			throw new NullPointerException("observer");
+		}
+		observers.add(observer);
+		return this;
+	}
+
+	/**
+	 * Removes the given observer.
+	 * 
+	 * @param observer
+	 *            The observer.
+	 * @return true if the observer was removed, otherwise false.
+	 */
+	public boolean removeObserver(RegistryObserver observer) {
+		return observers.remove(observer);
 	}
 
 	/**
-	 * @return the id-2-binding map.
+	 * @return the concurrent id-2-binding map.
 	 */
-	protected abstract Map<Long, B> bindingMap();
+	protected abstract ConcurrentMap<Long, B> bindingMap();
 
 	/**
 	 * Removes the binding with the given id.
@@ -138,14 +207,14 @@ public abstract class Registry<B extends LocalBinding> implements Iterable<B>,
 	 *            The id of the binding you want to get.
 	 * @return the binding with the given id or null.
 	 */
-	public synchronized B get(long id) {
+	public B get(long id) {
 		return bindingMap().get(id);
 	}
 
 	/**
 	 * @return a snapshot of all bindings as list with random access.
 	 */
-	public synchronized List<B> bindings() {
+	public List<B> bindings() {
 		return new ArrayList<B>(bindingMap().values());
 	}
 
@@ -162,7 +231,7 @@ public abstract class Registry<B extends LocalBinding> implements Iterable<B>,
 	/**
 	 * @return the size of the registry.
 	 */
-	public synchronized int size() {
+	public int size() {
 		return bindingMap().size();
 	}
 }
@@ -31,8 +31,8 @@
  */
 package com.foxnet.rmi.binding.registry;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.foxnet.rmi.Remote;
 import com.foxnet.rmi.binding.StaticBinding;
@@ -51,10 +51,12 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 	private static final long serialVersionUID = 1L;
 
 	// Used to store the ids linked with their static binding
-	private final Map<Long, StaticBinding> ids = new HashMap<>();
+	private final ConcurrentMap<Long, StaticBinding> ids =
+			new ConcurrentHashMap<>();
 
 	// Used to store the names linked with their static bindings
-	private final Map<String, StaticBinding> names = new HashMap<>();
+	private final ConcurrentMap<String, StaticBinding> names =
+			new ConcurrentHashMap<>();
 
 	/*
 	 * (non-Javadoc)
@@ -62,7 +64,7 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 	 * @see com.foxnet.rmi.binding.registry.Registry#bindingMap()
 	 */
 	@Override
-	protected Map<Long, StaticBinding> bindingMap() {
+	protected ConcurrentMap<Long, StaticBinding> bindingMap() {
 		return ids;
 	}
 
@@ -82,7 +84,7 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 			names.remove(sb.name());
 
 			// Notify
-			fireUnboundFrom(sb.target());
+			fireUnbound(sb);
 		}
 
 		return sb;
@@ -102,7 +104,7 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 		// Check life cycle objects
 		for (StaticBinding sb : names.values()) {
 			// Notify
-			fireUnboundFrom(sb.target());
+			fireUnbound(sb);
 		}
 
 		// Clear the names
@@ -116,7 +118,7 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 	 *            The name of the static binding.
 	 * @return the static binding with the given name or null.
 	 */
-	public synchronized StaticBinding get(String name) {
+	public StaticBinding get(String name) {
 		return names.get(name);
 	}
 
@@ -136,7 +138,7 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 			ids.remove(sb.id());
 
 			// Notify
-			fireUnboundFrom(sb.target());
+			fireUnbound(sb);
 		}
 
 		return sb;
@@ -145,18 +147,10 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 	/**
 	 * @return an array which contains all names.
 	 */
-	public synchronized String[] names() {
+	public String[] names() {
 
-		// Create array
-		String[] names = new String[ids.size()];
-
-		// Copy to array
-		int i = 0;
-		for (StaticBinding sb : ids.values()) {
-			names[i++] = sb.name();
-		}
-
-		return names;
+		// Snapshot of the names
+		return names.keySet().toArray(new String[0]);
 	}
 
 	/**
@@ -169,7 +163,7 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 	 *            The target you want to bind.
 	 * @return a new static binding or the old one.
 	 */
-	public synchronized StaticBinding bindIfAbsent(String name, Remote target) {
+	public StaticBinding bindIfAbsent(String name, Remote target) {
 		if (name == null) {
 			throw new NullPointerException("name");
 		}
@@ -177,6 +171,15 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 			throw new NullPointerException("target");
 		}
 
+		// Lock-free fast path
+		StaticBinding binding = names.get(name);
+
+		return binding != null ? binding : bindIfAbsent0(name, target);
+	}
+
+	private synchronized StaticBinding bindIfAbsent0(String name,
+			Remote target) {
+
 		// Get old binding...
 		StaticBinding binding = names.get(name);
 
@@ -189,7 +192,7 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 			// Put into maps
 			ids.put(binding.id(), binding);
 			names.put(binding.name(), binding);
-			fireBoundTo(binding.target());
+			fireBound(binding);
 		}
 
 		return binding;
@@ -241,7 +244,7 @@ public final class StaticRegistry extends Registry<StaticBinding> {
 		// Put into maps
 		ids.put(newBinding.id(), newBinding);
 		names.put(newBinding.name(), newBinding);
-		fireBoundTo(newBinding.target());
+		fireBound(newBinding);
 
 		return binding;
 	}
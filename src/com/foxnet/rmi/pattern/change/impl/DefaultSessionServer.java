@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
+import com.foxnet.rmi.Invocation;
 import com.foxnet.rmi.Invoker;
 import com.foxnet.rmi.RemoteInterfaces;
 import com.foxnet.rmi.pattern.change.AdminSessionServer;
@@ -17,6 +18,7 @@ import com.foxnet.rmi.pattern.change.Session;
 import com.foxnet.rmi.pattern.change.SessionServer;
 import com.foxnet.rmi.util.concurrent.Future;
 import com.foxnet.rmi.util.concurrent.FutureCallback;
+import com.foxnet.rmi.util.concurrent.Gather;
 
 /**
  * 
@@ -47,11 +49,19 @@ public final class DefaultSessionServer<T> implements AdminSessionServer<T> {
 			broadcast = new DefaultChangeableQueue<>(new Changeable<T>() {
 				@Override
 				public void applyChange(Change<T> change) {
+					List<Changeable<T>> clients = new ArrayList<>();
 					for (Session<T> session : sessions()) {
-						try {
-							session.client().applyChange(change);
-						} catch (Exception e) {
-							e.printStackTrace();
+						clients.add(session.client());
+					}
+
+					// Apply the change to all clients at once
+					List<Invocation> invocations = Invoker.scatter(clients,
+							"applyChange", change);
+					Gather.allSettled(invocations).synchronize();
+
+					for (Invocation invocation : invocations) {
+						if (invocation.isFailed()) {
+							invocation.cause().printStackTrace();
 						}
 					}
 				}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.OverflowPolicy;
+import com.foxnet.rmi.util.concurrent.AdaptiveLimit;
+
+/**
+ * The adaptive limit grows while the round-trip time stays near its minimum,
+ * shrinks when requests queue up remotely and backs off on drops.
+ * 
+ * @author Christopher Probst
+ */
+public class AdaptiveLimitTest {
+
+	private static final long RTT = 1000000;
+
+	public static void main(String[] args) throws Exception {
+		try {
+			new AdaptiveLimit(5, 10, 20);
+			Check.isTrue(false, "initial limit below the minimum");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		// Grows only while the limit is used
+		AdaptiveLimit limit = new AdaptiveLimit(20, 1, 100);
+		for (int i = 0; i < 10; i++) {
+			limit.sample(RTT, 1, false);
+		}
+		Check.equal(20, limit.limit(), "limit of an unused limit");
+		for (int i = 0; i < 10; i++) {
+			limit.sample(RTT, limit.limit(), false);
+		}
+		Check.isTrue(limit.limit() > 30, "grown limit " + limit.limit());
+
+		// Never exceeds the maximum
+		for (int i = 0; i < 100; i++) {
+			limit.sample(RTT, limit.limit(), false);
+		}
+		Check.equal(100, limit.limit(), "maximum limit");
+
+		// Shrinks when the latency grows
+		int before = limit.limit();
+		for (int i = 0; i < 10; i++) {
+			limit.sample(10 * RTT, limit.limit(), false);
+		}
+		Check.isTrue(limit.limit() < before, "shrunk limit " + limit.limit());
+
+		// Backs off on drops, but never below the minimum
+		before = limit.limit();
+		limit.sample(RTT, limit.limit(), true);
+		Check.equal((int) (before * 0.9), limit.limit(), "backed off limit");
+		for (int i = 0; i < 100; i++) {
+			limit.sample(RTT, limit.limit(), true);
+		}
+		Check.equal(1, limit.limit(), "minimum limit");
+
+		// An invoker manager honors the adaptive limit
+		Loopback loopback = new Loopback();
+		try {
+			loopback.server().staticReg().bind("sleeper",
+					new TimeoutTest.SleeperImpl());
+			InvokerManager manager = loopback.connect();
+			Invoker invoker = manager.lookupInvoker("sleeper");
+			AdaptiveLimit adaptive = new AdaptiveLimit(4, 1, 8);
+			manager.adaptiveLimit(adaptive).overflowPolicy(
+					OverflowPolicy.ENQUEUE);
+
+			List<Invocation> invocations = new ArrayList<>();
+			for (int i = 0; i < 100; i++) {
+				invocations.add(invoker.invoke("sleep", 5L));
+				Check.isTrue(manager.inFlight() <= 8, "in-flight "
+						+ manager.inFlight());
+			}
+			for (Invocation invocation : invocations) {
+				Check.succeeds(invocation, "limited invocation");
+			}
+			Check.isTrue(adaptive.limit() >= 1 && adaptive.limit() <= 8,
+					"adaptive limit " + adaptive.limit());
+			Check.equal(0, manager.inFlight(), "in-flight when idle");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(AdaptiveLimitTest.class);
+	}
+}
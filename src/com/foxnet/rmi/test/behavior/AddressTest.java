@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.net.SocketAddress;
+import java.nio.channels.UnsupportedAddressTypeException;
+
+import org.jboss.netty.channel.ChannelFuture;
+
+import com.foxnet.rmi.transport.network.ConnectionManager;
+
+/**
+ * Clients with addresses which the network transport can not handle get a
+ * failed connect future.
+ * 
+ * @author Christopher Probst
+ */
+public class AddressTest {
+
+	public static void main(String[] args) throws Exception {
+		ConnectionManager client = new ConnectionManager(false);
+		try {
+			ChannelFuture future = client.openClientAsync(new SocketAddress() {
+
+				private static final long serialVersionUID = 1L;
+			}).awaitUninterruptibly();
+			Check.isTrue(
+					future.getCause() instanceof UnsupportedAddressTypeException,
+					"failed connect future " + future.getCause());
+		} finally {
+			client.dispose();
+		}
+		Check.passed(AddressTest.class);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.InvocationScheduler;
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.OverloadedException;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.ThreadUsage;
+
+/**
+ * The invocation scheduler rejects invocations beyond its capacity and sheds
+ * queued invocations once the queue delay stays above the target, except the
+ * invocations of exempted bindings.
+ * 
+ * @author Christopher Probst
+ */
+public class AdmissionTest {
+
+	private static int overloaded(List<Invocation> invocations) {
+		int overloaded = 0;
+		for (Invocation invocation : invocations) {
+			if (!invocation.synchronize()) {
+				Check.isCause(OverloadedException.class, invocation.cause(),
+						"failed invocation");
+				overloaded++;
+			}
+		}
+		return overloaded;
+	}
+
+	public static void main(String[] args) throws Exception {
+		// One invocation thread, so invocations queue up
+		Loopback loopback = new Loopback(new ConnectionManager(
+				new ThreadUsage(1, 1), true, false), new ConnectionManager(
+				false));
+		try {
+			InvocationScheduler scheduler = loopback.server()
+					.invocationScheduler();
+			loopback.server().staticReg().bind("sleeper",
+					new TimeoutTest.SleeperImpl());
+			loopback.server().staticReg().bind("exempt",
+					new TimeoutTest.SleeperImpl());
+			InvokerManager manager = loopback.connect();
+
+			// Invocations beyond the capacity are rejected
+			scheduler.capacity(5).shedding(0, 1000).exempt("exempt");
+			Invocation blocking = manager.lookupInvoker("sleeper").invoke(
+					"sleep", 500L);
+			Thread.sleep(100);
+			List<Invocation> invocations = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				invocations.add(manager.lookupInvoker("sleeper").invoke(
+						"sleep", 0L));
+			}
+			Check.equal(15, overloaded(invocations), "rejected invocations");
+			Check.succeeds(blocking, "blocking invocation");
+			Check.equal(15L, scheduler.shedCount(), "shed count");
+
+			// Exempted bindings are never rejected
+			blocking = manager.lookupInvoker("sleeper").invoke("sleep", 500L);
+			Thread.sleep(100);
+			invocations.clear();
+			for (int i = 0; i < 20; i++) {
+				invocations.add(manager.lookupInvoker("exempt").invoke(
+						"sleep", 0L));
+			}
+			Check.equal(0, overloaded(invocations), "rejected exemptions");
+			Check.succeeds(blocking, "blocking invocation");
+
+			// A standing queue is shed
+			scheduler.capacity(InvocationScheduler.DEFAULT_CAPACITY)
+					.shedding(20, 100);
+			invocations.clear();
+			for (int i = 0; i < 100; i++) {
+				invocations.add(manager.lookupInvoker("sleeper").invoke(
+						"sleep", 10L));
+			}
+			int shed = overloaded(invocations);
+			Check.isTrue(shed > 0 && shed < 100, "shed " + shed
+					+ " of 100 invocations");
+			Check.equal(15L + shed, scheduler.shedCount(), "shed count");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(AdmissionTest.class);
+	}
+}
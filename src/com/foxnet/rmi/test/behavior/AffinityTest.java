@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.OrderedExecution;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.ExecutionMode;
+import com.foxnet.rmi.transport.network.ThreadUsage;
+
+/**
+ * In the connection affine execution mode every connection is served by one
+ * thread, also when the connections share an ordered target.
+ * 
+ * @author Christopher Probst
+ */
+public class AffinityTest {
+
+	public interface Journal extends Remote {
+
+		void append(int connection, int sequence);
+
+		@OrderedExecution
+		void appendOrdered(int connection, int sequence);
+	}
+
+	public static class JournalImpl implements Journal {
+
+		final Map<Integer, Set<Thread>> threads = new HashMap<>();
+		final Map<Integer, List<Integer>> sequences = new HashMap<>();
+
+		@Override
+		public synchronized void append(int connection, int sequence) {
+			if (!threads.containsKey(connection)) {
+				threads.put(connection, new HashSet<Thread>());
+				sequences.put(connection, new ArrayList<Integer>());
+			}
+			threads.get(connection).add(Thread.currentThread());
+			sequences.get(connection).add(sequence);
+		}
+
+		@Override
+		public void appendOrdered(int connection, int sequence) {
+			append(connection, sequence);
+		}
+	}
+
+	private static void check(JournalImpl impl, int connections) {
+		Set<Thread> all = new HashSet<>();
+		for (int i = 0; i < connections; i++) {
+			Set<Thread> threads = impl.threads.get(i);
+			Check.equal(1, threads.size(), "threads of connection " + i);
+			all.addAll(threads);
+		}
+		Check.equal(connections, all.size(), "threads of all connections");
+		impl.threads.clear();
+		impl.sequences.clear();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Loopback loopback = new Loopback(new ConnectionManager(
+				new ThreadUsage(2, 2, ExecutionMode.CONNECTION_AFFINE), true,
+				false), new ConnectionManager(false));
+		try {
+			JournalImpl impl = new JournalImpl();
+			loopback.server().staticReg().bind("journal", impl);
+			Invoker[] invokers = {
+					loopback.connect().lookupInvoker("journal"),
+					loopback.connect().lookupInvoker("journal") };
+
+			for (String method : new String[] { "append", "appendOrdered" }) {
+				List<Invocation> invocations = new ArrayList<>();
+				for (int i = 0; i < 1000; i++) {
+					invocations.add(invokers[i % 2].invoke(method, i % 2, i));
+				}
+				for (Invocation invocation : invocations) {
+					Check.succeeds(invocation, method);
+				}
+
+				// Ordered invocations also keep their order
+				if (method.equals("appendOrdered")) {
+					for (int i = 0; i < 2; i++) {
+						List<Integer> sequence = impl.sequences.get(i);
+						for (int j = 1; j < sequence.size(); j++) {
+							Check.isTrue(sequence.get(j - 1) < sequence.get(j),
+									"order of connection " + i);
+						}
+					}
+				}
+				check(impl, 2);
+			}
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(AffinityTest.class);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.OverflowPolicy;
+
+/**
+ * The overflow policies of an invoker manager whose in-flight limit is
+ * reached.
+ * 
+ * @author Christopher Probst
+ */
+public class BackpressureTest {
+
+	public static void main(String[] args) throws Exception {
+		Loopback loopback = new Loopback();
+		try {
+			loopback.server().staticReg().bind("sleeper",
+					new TimeoutTest.SleeperImpl());
+			InvokerManager manager = loopback.connect();
+			Invoker invoker = manager.lookupInvoker("sleeper");
+
+			// FAIL rejects immediately
+			manager.inFlightLimit(2).overflowPolicy(OverflowPolicy.FAIL);
+			Invocation first = invoker.invoke("sleep", 300L);
+			Invocation second = invoker.invoke("sleep", 300L);
+			Check.fails(invoker.invoke("sleep", 300L),
+					RejectedExecutionException.class, "FAIL");
+			Check.equal(2, manager.inFlight(), "in-flight with FAIL");
+			Check.succeeds(first, "first invocation");
+			Check.succeeds(second, "second invocation");
+
+			// ENQUEUE never blocks the caller
+			manager.inFlightLimit(1).overflowPolicy(OverflowPolicy.ENQUEUE);
+			first = invoker.invoke("sleep", 600L);
+			long start = System.nanoTime();
+			second = invoker.invoke("sleep", 10L);
+			Check.elapsed(start, 0, 200, "ENQUEUE caller");
+			Check.succeeds(second, "enqueued invocation");
+			Check.isTrue(first.isSuccessful(), "enqueued after the first");
+
+			// ENQUEUE expires an invocation which waits too long
+			first = invoker.invoke("sleep", 1000L);
+			start = System.nanoTime();
+			Invoker limited = manager.lookupInvoker("sleeper").proxyTimeout(
+					200);
+			Check.fails(limited.invoke("sleep", 10L), TimeoutException.class,
+					"expired in the ENQUEUE queue");
+			Check.elapsed(start, 150, 900, "ENQUEUE timeout");
+			Check.succeeds(first, "first invocation");
+
+			// BLOCK waits for capacity
+			manager.overflowPolicy(OverflowPolicy.BLOCK);
+			first = invoker.invoke("sleep", 500L);
+			start = System.nanoTime();
+			second = invoker.invoke("sleep", 10L);
+			Check.elapsed(start, 300, 2000, "BLOCK caller");
+			Check.succeeds(second, "blocked invocation");
+
+			// BLOCK gives up when the invocation times out
+			first = invoker.invoke("sleep", 1000L);
+			start = System.nanoTime();
+			Check.fails(limited.invoke("sleep", 10L), TimeoutException.class,
+					"expired while blocking");
+			Check.elapsed(start, 150, 900, "BLOCK timeout");
+			Check.succeeds(first, "first invocation");
+
+			Check.equal(0, manager.inFlight(), "in-flight when idle");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(BackpressureTest.class);
+	}
+}
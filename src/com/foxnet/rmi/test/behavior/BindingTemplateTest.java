@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.OrderedExecution;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.binding.BindingTemplate;
+import com.foxnet.rmi.binding.DynamicBinding;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.ThreadUsage;
+
+/**
+ * Bindings of the same class share one template with the reflective metadata.
+ * Only ordered methods get execution queues, which keep the order of the
+ * invocations of their binding.
+ * 
+ * @author Christopher Probst
+ */
+public class BindingTemplateTest {
+
+	public interface Journal extends Remote {
+
+		@OrderedExecution
+		void append(int entry);
+
+		List<Integer> entries();
+	}
+
+	public static class JournalImpl implements Journal {
+
+		final List<Integer> entries = new ArrayList<>();
+
+		@Override
+		public void append(int entry) {
+			synchronized (entries) {
+				entries.add(entry);
+			}
+		}
+
+		@Override
+		public List<Integer> entries() {
+			synchronized (entries) {
+				return new ArrayList<>(entries);
+			}
+		}
+	}
+
+	public static class SubJournalImpl extends JournalImpl {
+	}
+
+	/**
+	 * Creates templates of interfaces which are loaded by a class loader
+	 * without relation to the class loader of this test.
+	 * 
+	 * @return a weak reference to the foreign class loader.
+	 */
+	private static WeakReference<ClassLoader> foreignTemplates()
+			throws Exception {
+		String[] paths = System.getProperty("java.class.path").split(
+				File.pathSeparator);
+		URL[] urls = new URL[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			urls[i] = new File(paths[i]).toURI().toURL();
+		}
+		try (URLClassLoader loader = new URLClassLoader(urls, null)) {
+			Class<?> journal = loader.loadClass(Journal.class.getName());
+			Check.isTrue(journal != Journal.class, "foreign interface");
+			BindingTemplate.of(loader.loadClass(JournalImpl.class.getName()));
+			Class<?>[] mixed = { CoalescingTest.Echo.class, journal };
+			Check.isTrue(BindingTemplate.of(mixed) != BindingTemplate
+					.of(mixed.clone()), "template of unrelated loaders cached");
+			return new WeakReference<ClassLoader>(loader);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// One template per class and per interface list
+		BindingTemplate template = BindingTemplate.of(JournalImpl.class);
+		Check.isTrue(template == BindingTemplate.of(JournalImpl.class),
+				"template of the class");
+		Class<?>[] interfaces = { Journal.class };
+		Check.isTrue(BindingTemplate.of(interfaces) == BindingTemplate
+				.of(interfaces.clone()), "template of the interfaces");
+		Check.isTrue(BindingTemplate.of(SubJournalImpl.class).methods()
+				.equals(template.methods()), "methods of the subclass");
+
+		// Cached templates do not keep foreign class loaders alive
+		final WeakReference<ClassLoader> foreign = foreignTemplates();
+		Check.eventually(new Check.Condition() {
+
+			@Override
+			public boolean holds() {
+				return foreign.get() == null;
+			}
+		}, 10000, "foreign class loader unloaded");
+
+		// Bindings share the template
+		DynamicBinding first = new DynamicBinding(0, new JournalImpl());
+		DynamicBinding second = new DynamicBinding(1, new JournalImpl());
+		Check.isTrue(first.template() == second.template(),
+				"shared template");
+		Check.isTrue(first.methods() == second.methods(), "shared methods");
+
+		// Only ordered methods have queues, one per binding
+		int append = template.nameIds().get("append");
+		int entries = template.nameIds().get("entries");
+		Check.isTrue(template.hasOrderedMethods(), "ordered methods");
+		Check.isTrue(template.isOrdered(append), "ordered append");
+		Check.isTrue(!template.isOrdered(entries), "unordered entries");
+		Check.isTrue(first.orderedExecutionQueue(append) != null,
+				"queue of the ordered method");
+		Check.isTrue(first.orderedExecutionQueue(append) == first
+				.orderedExecutionQueue(append), "same queue");
+		Check.isTrue(first.orderedExecutionQueue(append) != second
+				.orderedExecutionQueue(append), "queue per binding");
+		Check.equal(null, first.orderedExecutionQueue(entries),
+				"queue of the unordered method");
+
+		// Ordered invocations keep their order on many threads
+		Loopback loopback = new Loopback(new ConnectionManager(
+				new ThreadUsage(1, 4), true, false), new ConnectionManager(
+				false));
+		try {
+			JournalImpl impl = new JournalImpl();
+			loopback.server().staticReg().bind("journal", impl);
+			Invoker invoker = Invoker.of(loopback.lookupProxy("journal"));
+			List<Invocation> invocations = new ArrayList<>();
+			List<Integer> expected = new ArrayList<>();
+			for (int i = 0; i < 500; i++) {
+				invocations.add(invoker.invoke("append", i));
+				expected.add(i);
+			}
+			for (Invocation invocation : invocations) {
+				Check.succeeds(invocation, "ordered invocation");
+			}
+			Check.equal(expected, impl.entries(), "order of the entries");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(BindingTemplateTest.class);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.ThreadUsage;
+
+/**
+ * Nested invocations of a call chain run on the thread which waits for the
+ * chain, so deep callback chains need no further invocation threads.
+ * 
+ * @author Christopher Probst
+ */
+public class CallChainTest {
+
+	public interface Ping extends Remote {
+
+		int ping(Pong pong, int depth);
+	}
+
+	public interface Pong extends Remote {
+
+		int pong(int depth);
+	}
+
+	public static class PingImpl implements Ping {
+
+		final Set<Thread> threads = Collections
+				.synchronizedSet(new HashSet<Thread>());
+
+		@Override
+		public int ping(Pong pong, int depth) {
+			threads.add(Thread.currentThread());
+			return depth == 0 ? 0 : 1 + pong.pong(depth - 1);
+		}
+	}
+
+	public static class PongImpl implements Pong {
+
+		final Set<Thread> threads = Collections
+				.synchronizedSet(new HashSet<Thread>());
+		final Ping ping;
+
+		PongImpl(Ping ping) {
+			this.ping = ping;
+		}
+
+		@Override
+		public int pong(int depth) {
+			threads.add(Thread.currentThread());
+			return depth == 0 ? 0 : 1 + ping.ping(this, depth - 1);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// One invocation thread on each side
+		Loopback loopback = new Loopback(new ConnectionManager(
+				new ThreadUsage(1, 1), true, false), new ConnectionManager(
+				new ThreadUsage(1, 1), false, true));
+		try {
+			PingImpl pingImpl = new PingImpl();
+			loopback.server().staticReg().bind("ping", pingImpl);
+			Ping ping = (Ping) loopback.lookupProxy("ping");
+			PongImpl pongImpl = new PongImpl(ping);
+
+			long start = System.nanoTime();
+			Check.equal(20, ping.ping(pongImpl, 20), "depth of the chain");
+			Check.elapsed(start, 0, 10000, "chain");
+
+			// The callbacks ran on the waiting caller
+			Check.equal(Collections.singleton(Thread.currentThread()),
+					pongImpl.threads, "threads of the callbacks");
+			Check.equal(1, pingImpl.threads.size(), "threads of the server");
+
+			// Chains of concurrent callers do not mix
+			pongImpl.threads.clear();
+			Thread[] callers = new Thread[4];
+			final Ping sharedPing = ping;
+			final Set<Thread> mixed = Collections
+					.synchronizedSet(new HashSet<Thread>());
+			for (int i = 0; i < callers.length; i++) {
+				callers[i] = new Thread() {
+
+					@Override
+					public void run() {
+						PongImpl own = new PongImpl(sharedPing);
+						for (int j = 0; j < 20; j++) {
+							sharedPing.ping(own, 6);
+						}
+						if (!own.threads.equals(Collections.singleton(this))) {
+							mixed.add(this);
+						}
+					}
+				};
+				callers[i].start();
+			}
+			for (Thread caller : callers) {
+				caller.join(30000);
+				Check.isTrue(!caller.isAlive(), "caller finished");
+			}
+			Check.isTrue(mixed.isEmpty(), "callbacks ran on other callers");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(CallChainTest.class);
+	}
+}
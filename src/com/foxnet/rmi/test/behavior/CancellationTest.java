@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.ThreadUsage;
+
+/**
+ * Invocations which fail locally are cancelled on the remote side. A running
+ * method is interrupted, a queued one is skipped and the result of a
+ * cancelled method is never exported.
+ * 
+ * @author Christopher Probst
+ */
+public class CancellationTest {
+
+	public interface Service extends Remote {
+
+		void sleep(long millies) throws InterruptedException;
+
+		void count();
+
+		Service export(long millies) throws InterruptedException;
+	}
+
+	public static class ServiceImpl implements Service {
+
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final CountDownLatch exported = new CountDownLatch(1);
+		final AtomicInteger counted = new AtomicInteger();
+
+		@Override
+		public void sleep(long millies) throws InterruptedException {
+			try {
+				Thread.sleep(millies);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+				throw e;
+			}
+		}
+
+		@Override
+		public void count() {
+			counted.incrementAndGet();
+		}
+
+		@Override
+		public Service export(long millies) throws InterruptedException {
+			// Ignore the interruption, the result is returned anyway
+			long end = System.currentTimeMillis() + millies;
+			while (System.currentTimeMillis() < end) {
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					// Continue
+				}
+			}
+			exported.countDown();
+			return new ServiceImpl();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// One invocation thread, so invocations queue up
+		Loopback loopback = new Loopback(new ConnectionManager(
+				new ThreadUsage(1, 1), true, false), new ConnectionManager(
+				false));
+		try {
+			ServiceImpl impl = new ServiceImpl();
+			loopback.server().staticReg().bind("service", impl);
+			InvokerManager manager = loopback.connect();
+
+			// A timed out invocation interrupts the running method
+			Invocation sleeping = manager.lookupInvoker("service")
+					.proxyTimeout(200).invoke("sleep", 5000L);
+			Check.isTrue(!sleeping.synchronize(), "timed out invocation");
+			Check.isTrue(impl.interrupted.await(2, TimeUnit.SECONDS),
+					"running method interrupted");
+
+			// A cancelled invocation is skipped in the queue
+			Invocation blocking = manager.lookupInvoker("service").invoke(
+					"sleep", 500L);
+			Thread.sleep(100);
+			Invocation queued = manager.lookupInvoker("service").invoke(
+					"count");
+			queued.fail(new CancellationException("Not needed anymore"));
+			Check.succeeds(blocking, "blocking invocation");
+			Check.succeeds(manager.lookupInvoker("service").invoke("count"),
+					"next invocation");
+			Check.equal(1, impl.counted.get(), "executed invocations");
+
+			// The result of a cancelled invocation is not exported
+			Invocation exporting = manager.lookupInvoker("service")
+					.proxyTimeout(100).invoke("export", 500L);
+			Check.isTrue(!exporting.synchronize(), "cancelled export");
+			Check.isTrue(impl.exported.await(2, TimeUnit.SECONDS),
+					"export completed");
+			Check.succeeds(manager.lookupInvoker("service").invoke("count"),
+					"next invocation");
+			Check.equal(0, loopback.server().exportTable().size(),
+					"exported results");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(CancellationTest.class);
+	}
+}
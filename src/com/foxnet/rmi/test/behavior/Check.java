@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.lang.reflect.UndeclaredThrowableException;
+
+import com.foxnet.rmi.util.concurrent.Future;
+
+/**
+ * The assertions of the behavior tests. A failed assertion throws an
+ * {@link AssertionError}, so a test stops at its first failure and its main
+ * method exits with an error.
+ * 
+ * @author Christopher Probst
+ */
+public final class Check {
+
+	/**
+	 * A condition which becomes true eventually.
+	 * 
+	 * @author Christopher Probst
+	 */
+	public interface Condition {
+
+		boolean holds() throws Exception;
+	}
+
+	public static void isTrue(boolean condition, String description) {
+		if (!condition) {
+			throw new AssertionError(description);
+		}
+	}
+
+	public static void equal(Object expected, Object actual,
+			String description) {
+		if (expected == null ? actual != null : !expected.equals(actual)) {
+			throw new AssertionError(description + ": expected <" + expected
+					+ "> but was <" + actual + ">");
+		}
+	}
+
+	/**
+	 * Waits for the given future and checks that it succeeded.
+	 * 
+	 * @return the attachment of the future.
+	 */
+	public static Object succeeds(Future future, String description) {
+		if (!future.synchronize()) {
+			AssertionError error = new AssertionError(description
+					+ ": failed with " + future.cause());
+			error.initCause(future.cause());
+			throw error;
+		}
+		return future.attachment();
+	}
+
+	/**
+	 * Waits for the given future and checks that it failed with the given
+	 * type of cause.
+	 * 
+	 * @return the cause of the future.
+	 */
+	public static Throwable fails(Future future,
+			Class<? extends Throwable> type, String description) {
+		if (future.synchronize()) {
+			throw new AssertionError(description + ": succeeded with "
+					+ future.attachment());
+		}
+		return isCause(type, future.cause(), description);
+	}
+
+	/**
+	 * Checks the given cause. Causes which are thrown by proxies but not
+	 * declared by the method are unwrapped.
+	 * 
+	 * @return the cause.
+	 */
+	public static Throwable isCause(Class<? extends Throwable> type,
+			Throwable cause, String description) {
+		if (cause instanceof UndeclaredThrowableException) {
+			cause = cause.getCause();
+		}
+		if (!type.isInstance(cause)) {
+			AssertionError error = new AssertionError(description
+					+ ": expected " + type.getSimpleName() + " but was "
+					+ cause);
+			error.initCause(cause);
+			throw error;
+		}
+		return cause;
+	}
+
+	/**
+	 * Checks the time which elapsed since the given start.
+	 * 
+	 * @return the elapsed time in milliseconds.
+	 */
+	public static long elapsed(long startNanos, long minMillies,
+			long maxMillies, String description) {
+		long elapsed = (System.nanoTime() - startNanos) / 1000000;
+		if (elapsed < minMillies || elapsed > maxMillies) {
+			throw new AssertionError(description + ": took " + elapsed
+					+ " ms, expected " + minMillies + ".." + maxMillies
+					+ " ms");
+		}
+		return elapsed;
+	}
+
+	/**
+	 * Waits until the given condition holds.
+	 */
+	public static void eventually(Condition condition, long timeoutMillies,
+			String description) throws Exception {
+		long deadline = System.currentTimeMillis() + timeoutMillies;
+		while (!condition.holds()) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new AssertionError(description + ": not true after "
+						+ timeoutMillies + " ms");
+			}
+
+			// Collected references are released periodically
+			System.gc();
+			Thread.sleep(50);
+		}
+	}
+
+	public static void passed(Class<?> test) {
+		System.out.println(test.getSimpleName() + ": passed");
+	}
+
+	private Check() {
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.handler.coalescing.CoalescingHandler;
+
+/**
+ * Pipelined invocations and their results arrive intact whether or not the
+ * writes of a channel are coalesced, including bursts of payloads which are
+ * larger than a gathered write.
+ * 
+ * @author Christopher Probst
+ */
+public class CoalescingTest {
+
+	public interface Echo extends Remote {
+
+		int add(int a, int b);
+
+		byte[] echo(byte[] payload);
+	}
+
+	public static class EchoImpl implements Echo {
+
+		@Override
+		public int add(int a, int b) {
+			return a + b;
+		}
+
+		@Override
+		public byte[] echo(byte[] payload) {
+			return payload;
+		}
+	}
+
+	private static void check(boolean writeCoalescing) throws Exception {
+		String mode = writeCoalescing ? "coalesced" : "not coalesced";
+		Loopback loopback = new Loopback(
+				new ConnectionManager(true).writeCoalescing(writeCoalescing),
+				new ConnectionManager(false).writeCoalescing(writeCoalescing));
+		try {
+			loopback.server().staticReg().bind("echo", new EchoImpl());
+			final Invoker invoker = Invoker.of(loopback.lookupProxy("echo"));
+
+			// Pipelined invocations of concurrent callers
+			final List<Throwable> failures = new ArrayList<>();
+			Thread[] callers = new Thread[4];
+			for (int i = 0; i < callers.length; i++) {
+				final int caller = i;
+				callers[i] = new Thread() {
+
+					@Override
+					public void run() {
+						try {
+							List<Invocation> invocations = new ArrayList<>();
+							for (int j = 0; j < 2000; j++) {
+								invocations.add(invoker.invoke("add", caller,
+										j));
+							}
+							for (int j = 0; j < invocations.size(); j++) {
+								Check.equal(caller + j, Check.succeeds(
+										invocations.get(j), "add"), "sum");
+							}
+						} catch (Throwable e) {
+							synchronized (failures) {
+								failures.add(e);
+							}
+						}
+					}
+				};
+				callers[i].start();
+			}
+			for (Thread caller : callers) {
+				caller.join();
+			}
+			Check.equal(Collections.emptyList(), failures, mode
+					+ " failures of concurrent callers");
+
+			// A burst of payloads around the size of a gathered write
+			Random random = new Random(42);
+			List<byte[]> payloads = new ArrayList<>();
+			List<Invocation> invocations = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				byte[] payload = new byte[random
+						.nextInt(CoalescingHandler.MAX_GATHERED_BYTES * 3)];
+				random.nextBytes(payload);
+				payloads.add(payload);
+				invocations.add(invoker.invoke("echo", (Object) payload));
+			}
+			for (int i = 0; i < invocations.size(); i++) {
+				Check.isTrue(Arrays.equals(payloads.get(i), (byte[]) Check
+						.succeeds(invocations.get(i), "echo")), mode
+						+ " payload " + i + " intact");
+			}
+		} finally {
+			loopback.dispose();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		check(true);
+		check(false);
+		Check.passed(CoalescingTest.class);
+	}
+}
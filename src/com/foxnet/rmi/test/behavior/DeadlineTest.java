@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.InvocationTask;
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.ThreadUsage;
+
+/**
+ * The time budget of a caller travels with its invocations, also to nested
+ * invocations. Invocations which expire while queued are not executed.
+ * 
+ * @author Christopher Probst
+ */
+public class DeadlineTest {
+
+	public interface Budget extends Remote {
+
+		long budget();
+	}
+
+	public interface Service extends Budget {
+
+		long nestedBudget(Budget callback);
+
+		void block(long millies) throws InterruptedException;
+
+		void count();
+	}
+
+	public static class BudgetImpl implements Budget {
+
+		@Override
+		public long budget() {
+			InvocationTask current = InvocationTask.current();
+			return current.hasDeadline() ? current.remainingMillies() : -1;
+		}
+	}
+
+	public static class ServiceImpl extends BudgetImpl implements Service {
+
+		final AtomicInteger counted = new AtomicInteger();
+
+		@Override
+		public long nestedBudget(Budget callback) {
+			return callback.budget();
+		}
+
+		@Override
+		public void block(long millies) throws InterruptedException {
+			Thread.sleep(millies);
+		}
+
+		@Override
+		public void count() {
+			counted.incrementAndGet();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// One invocation thread, so invocations queue up
+		Loopback loopback = new Loopback(new ConnectionManager(
+				new ThreadUsage(1, 1), true, false), new ConnectionManager(
+				false));
+		try {
+			ServiceImpl impl = new ServiceImpl();
+			loopback.server().staticReg().bind("service", impl);
+			InvokerManager manager = loopback.connect();
+
+			Service unlimited = (Service) manager.lookupProxy("service");
+			Check.equal(-1L, unlimited.budget(), "budget without timeout");
+
+			Service limited = (Service) manager.lookupInvoker("service")
+					.proxyTimeout(1000).proxy();
+			long budget = limited.budget();
+			Check.isTrue(budget > 0 && budget <= 1000, "budget " + budget);
+
+			// A callback inherits the remaining budget of its caller
+			budget = limited.nestedBudget(new BudgetImpl());
+			Check.isTrue(budget > 0 && budget <= 1000, "nested budget "
+					+ budget);
+
+			// Expires in the queue behind the running invocation
+			Invocation blocking = manager.lookupInvoker("service").invoke(
+					"block", 800L);
+			Thread.sleep(200);
+			Invocation expiring = manager.lookupInvoker("service")
+					.proxyTimeout(200).invoke("count");
+			Check.fails(expiring, TimeoutException.class, "queued invocation");
+			Check.succeeds(blocking, "blocking invocation");
+
+			// Let the server dequeue the expired invocation
+			unlimited.budget();
+			Check.equal(0, impl.counted.get(), "expired invocations executed");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(DeadlineTest.class);
+	}
+}
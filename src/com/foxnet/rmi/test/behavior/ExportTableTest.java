@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.binding.DynamicBinding;
+import com.foxnet.rmi.binding.registry.DynamicRegistry;
+import com.foxnet.rmi.binding.registry.ExportTable;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+
+/**
+ * A target which is exported to many connections shares one binding. The
+ * binding is removed when the last connection releases it, targets are
+ * distinguished by identity.
+ * 
+ * @author Christopher Probst
+ */
+public class ExportTableTest {
+
+	public interface Hub extends Remote {
+
+		int members();
+	}
+
+	public interface Service extends Remote {
+
+		Hub hub();
+	}
+
+	public static class HubImpl implements Hub {
+
+		@Override
+		public int members() {
+			return 7;
+		}
+
+		// All hubs are equal, but they must be exported separately
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof HubImpl;
+		}
+
+		@Override
+		public int hashCode() {
+			return 0;
+		}
+	}
+
+	public static class ServiceImpl implements Service {
+
+		final Hub hub = new HubImpl();
+
+		@Override
+		public Hub hub() {
+			return hub;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// Registries of the same table share the bindings
+		ExportTable table = new ExportTable();
+		DynamicRegistry first = new DynamicRegistry(table);
+		DynamicRegistry second = new DynamicRegistry(table);
+		Hub hub = new HubImpl(), equalHub = new HubImpl();
+		DynamicBinding binding = first.bindIfAbsent(hub);
+		Check.isTrue(binding == second.bindIfAbsent(hub), "shared binding");
+		Check.isTrue(binding != first.bindIfAbsent(equalHub),
+				"binding of an equal target");
+		Check.equal(2, table.size(), "exports");
+		first.unbind(hub);
+		Check.isTrue(binding == table.get(hub), "binding held by a registry");
+		Check.equal(null, first.get(hub), "binding of the releasing registry");
+		second.unbind(hub);
+		Check.equal(null, table.get(hub), "binding without holders");
+		first.unbindAll();
+		Check.equal(0, table.size(), "exports after unbind all");
+
+		// A target returned to many connections is exported once
+		final Loopback loopback = new Loopback();
+		try {
+			loopback.server().staticReg().bind("service", new ServiceImpl());
+			List<Hub> hubs = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				Service service = (Service) loopback.lookupProxy("service");
+				hubs.add(service.hub());
+				Check.equal(7, service.hub().members(), "members");
+			}
+			Check.equal(1, loopback.server().exportTable().size(),
+					"exports of the server");
+
+			// The export is removed when all connections released it
+			hubs.clear();
+			Check.eventually(new Check.Condition() {
+
+				@Override
+				public boolean holds() {
+					return loopback.server().exportTable().size() == 0;
+				}
+			}, 10000, "released export");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(ExportTableTest.class);
+	}
+}
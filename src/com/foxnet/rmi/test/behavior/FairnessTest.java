@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.InvocationTask;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.ThreadUsage;
+
+/**
+ * The connections of a server share its invocation threads by their
+ * scheduling weights, a flooding connection does not delay the others and
+ * the concurrency limit of a connection caps its running invocations.
+ * 
+ * @author Christopher Probst
+ */
+public class FairnessTest {
+
+	public interface Worker extends Remote {
+
+		void configure(int schedulingWeight, int concurrencyLimit);
+
+		void work(String connection, long millies)
+				throws InterruptedException;
+	}
+
+	public static class WorkerImpl implements Worker {
+
+		final List<String> order = Collections
+				.synchronizedList(new ArrayList<String>());
+		final Map<String, Integer> running = new HashMap<>();
+		final Map<String, Integer> maxRunning = new HashMap<>();
+
+		@Override
+		public void configure(int schedulingWeight, int concurrencyLimit) {
+			InvocationTask.current().manager()
+					.schedulingWeight(schedulingWeight)
+					.concurrencyLimit(concurrencyLimit);
+		}
+
+		private synchronized void running(String connection, int delta) {
+			Integer count = running.get(connection);
+			count = (count != null ? count : 0) + delta;
+			running.put(connection, count);
+
+			Integer max = maxRunning.get(connection);
+			if (max == null || count > max) {
+				maxRunning.put(connection, count);
+			}
+		}
+
+		@Override
+		public void work(String connection, long millies)
+				throws InterruptedException {
+			order.add(connection);
+			running(connection, 1);
+			try {
+				Thread.sleep(millies);
+			} finally {
+				running(connection, -1);
+			}
+		}
+	}
+
+	private static Invoker connect(Loopback loopback, int schedulingWeight,
+			int concurrencyLimit) throws Exception {
+		Invoker invoker = loopback.connect().lookupInvoker("worker");
+		((Worker) invoker.proxy()).configure(schedulingWeight,
+				concurrencyLimit);
+		return invoker;
+	}
+
+	private static List<Invocation> flood(Invoker invoker, String connection,
+			int count, long millies) {
+		List<Invocation> invocations = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			invocations.add(invoker.invoke("work", connection, millies));
+		}
+		return invocations;
+	}
+
+	private static int completed(List<Invocation> invocations) {
+		int completed = 0;
+		for (Invocation invocation : invocations) {
+			if (invocation.isCompleted()) {
+				completed++;
+			}
+		}
+		return completed;
+	}
+
+	private static void awaitAll(List<Invocation> invocations) {
+		for (Invocation invocation : invocations) {
+			Check.succeeds(invocation, "queued invocation");
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// One invocation thread, so invocations queue up
+		Loopback loopback = new Loopback(new ConnectionManager(
+				new ThreadUsage(1, 1), true, false), new ConnectionManager(
+				false));
+		try {
+			// The flood exceeds the target delay on purpose
+			loopback.server().invocationScheduler().shedding(0, 1000);
+			WorkerImpl impl = new WorkerImpl();
+			loopback.server().staticReg().bind("worker", impl);
+			Invoker flooding = connect(loopback, 1, 0);
+			Invoker polite = connect(loopback, 1, 0);
+
+			// A flooding connection does not delay another one
+			List<Invocation> flood = flood(flooding, "flooding", 200, 5);
+			long start = System.nanoTime();
+			for (int i = 0; i < 5; i++) {
+				Check.succeeds(polite.invoke("work", "polite", 5L),
+						"polite invocation");
+			}
+			Check.elapsed(start, 0, 600, "polite invocations");
+			Check.isTrue(completed(flood) < 150, "flood completed "
+					+ completed(flood) + " of 200 meanwhile");
+			awaitAll(flood);
+
+			// The weights decide the shares of backlogged connections
+			Invoker heavy = connect(loopback, 3, 0);
+			Invoker light = connect(loopback, 1, 0);
+			Invocation blocking = polite.invoke("work", "blocking", 300L);
+			Thread.sleep(100);
+			impl.order.clear();
+			List<Invocation> heavyFlood = flood(heavy, "heavy", 40, 1);
+			List<Invocation> lightFlood = flood(light, "light", 40, 1);
+			awaitAll(heavyFlood);
+			awaitAll(lightFlood);
+			Check.succeeds(blocking, "blocking invocation");
+			int heavyShare = Collections.frequency(impl.order.subList(1, 41),
+					"heavy");
+			Check.isTrue(heavyShare >= 27 && heavyShare <= 33, "heavy share "
+					+ heavyShare + " of 40");
+		} finally {
+			loopback.dispose();
+		}
+
+		// Two invocation threads, but one per capped connection
+		loopback = new Loopback(new ConnectionManager(new ThreadUsage(1, 2),
+				true, false), new ConnectionManager(false));
+		try {
+			WorkerImpl impl = new WorkerImpl();
+			loopback.server().staticReg().bind("worker", impl);
+			Invoker capped = connect(loopback, 1, 1);
+			Invoker free = connect(loopback, 1, 0);
+
+			List<Invocation> invocations = flood(capped, "capped", 4, 100);
+			invocations.addAll(flood(free, "free", 4, 100));
+			awaitAll(invocations);
+			Check.equal(1, impl.maxRunning.get("capped"),
+					"concurrent invocations of the capped connection");
+			Check.equal(2, impl.maxRunning.get("free"),
+					"concurrent invocations of the free connection");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(FairnessTest.class);
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.util.concurrent.Gather;
+
+/**
+ * Scattered invocations are aggregated by gathers. Every invocation converts
+ * its own copy of the arguments, so the targets may belong to different
+ * invoker managers.
+ * 
+ * @author Christopher Probst
+ */
+public class GatherTest {
+
+	public interface Greeter extends Remote {
+
+		String name();
+	}
+
+	public interface Replica extends Remote {
+
+		String greet(Greeter greeter, long millies)
+				throws InterruptedException;
+	}
+
+	public static class GreeterImpl implements Greeter {
+
+		@Override
+		public String name() {
+			return "greeter";
+		}
+	}
+
+	public static class ReplicaImpl implements Replica {
+
+		@Override
+		public String greet(Greeter greeter, long millies)
+				throws InterruptedException {
+			// Negative values let Thread.sleep() fail
+			Thread.sleep(millies);
+			return "hello " + greeter.name();
+		}
+	}
+
+	private static List<Invocation> greet(List<?> targets, long... millies) {
+		Greeter greeter = new GreeterImpl();
+		List<Invocation> invocations = new ArrayList<>();
+		for (int i = 0; i < millies.length; i++) {
+			invocations.add(Invoker.of(targets.get(i)).invoke("greet",
+					greeter, millies[i]));
+		}
+		return invocations;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Loopback loopback = new Loopback();
+		try {
+			loopback.server().staticReg().bind("replica", new ReplicaImpl());
+
+			// Targets of different invoker managers
+			InvokerManager first = loopback.connect(), second = loopback
+					.connect();
+			List<Object> replicas = Arrays.asList(
+					first.lookupProxy("replica"),
+					second.lookupProxy("replica"),
+					second.lookupProxy("replica"));
+
+			// The arguments are converted per invocation
+			Greeter greeter = new GreeterImpl();
+			Object[] arguments = { greeter, 0L };
+			Gather all = Gather.allOf(Invoker.scatter(replicas, "greet",
+					arguments));
+			Check.equal(Collections.nCopies(3, "hello greeter"),
+					Check.succeeds(all, "all of"), "results");
+			Check.isTrue(arguments[0] == greeter, "arguments unchanged");
+
+			// The first results are enough, the rest is cancelled
+			long start = System.nanoTime();
+			Gather firstOf = Gather.firstOf(1, greet(replicas, 50, 5000, 5000));
+			Check.equal(Collections.singletonList("hello greeter"),
+					Check.succeeds(firstOf, "first of"), "results");
+			Check.elapsed(start, 0, 2000, "first of");
+			Check.equal(2, firstOf.cancelRemaining(), "cancelled invocations");
+			for (Invocation invocation : greet(replicas, 0, 0, 0)) {
+				Check.succeeds(invocation, "invocation after cancelling");
+			}
+			Check.fails(firstOf.futures().get(1),
+					CancellationException.class, "cancelled invocation");
+
+			// A majority is enough, but all of them must succeed for all of
+			List<Invocation> oneFails = greet(replicas, 0, -1, 0);
+			Gather quorum = Gather.quorum(oneFails);
+			Check.succeeds(quorum, "quorum");
+			Check.equal(2, quorum.attachment().size(), "results of the quorum");
+			Throwable cause = Check.fails(Gather.allOf(oneFails),
+					InvocationTargetException.class, "all of");
+			Check.isCause(IllegalArgumentException.class, cause.getCause(),
+					"cause of the remote failure");
+			Check.fails(Gather.firstOf(3, greet(replicas, 0, -1, -1)),
+					InvocationTargetException.class, "first of three");
+
+			// All settled waits for the failures as well
+			Gather settled = Gather.allSettled(greet(replicas, -1, 300, -1));
+			Check.succeeds(settled, "all settled");
+			Check.equal(1, settled.attachment().size(),
+					"results of all settled");
+
+			// A collective timeout does not affect the invocations
+			List<Invocation> slow = greet(replicas, 0, 1000, 0);
+			start = System.nanoTime();
+			Check.fails(Gather.allOf(slow).timeout(200),
+					TimeoutException.class, "timed out gather");
+			Check.elapsed(start, 150, 900, "timed out gather");
+			Check.succeeds(Gather.allOf(slow), "invocations of the gather");
+
+			// Nothing to wait for
+			Check.equal(Collections.emptyList(), Check.succeeds(
+					Gather.allSettled(Collections.<Invocation> emptyList()),
+					"empty gather"), "results");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(GatherTest.class);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.binding.RemoteObject;
+import com.foxnet.rmi.binding.registry.DynamicRegistry;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+
+/**
+ * Dynamic bindings are removed when the remote side collects its proxies or
+ * stops renewing their leases, while referenced bindings are renewed even if
+ * both sides use different lease durations.
+ * 
+ * @author Christopher Probst
+ */
+public class LeaseTest {
+
+	public interface Callback extends Remote {
+
+		int call();
+	}
+
+	public interface Service extends Remote {
+
+		int callBack(Callback callback, boolean keep);
+	}
+
+	public static class CallbackImpl implements Callback {
+
+		@Override
+		public int call() {
+			return 1;
+		}
+	}
+
+	public static class ServiceImpl implements Service {
+
+		final List<Callback> kept = new ArrayList<>();
+
+		@Override
+		public int callBack(Callback callback, boolean keep) {
+			if (keep) {
+				synchronized (kept) {
+					kept.add(callback);
+				}
+			}
+			return callback.call();
+		}
+	}
+
+	private static void check(long serverLease, long clientLease)
+			throws Exception {
+		String leases = serverLease + "/" + clientLease + " ms";
+		Loopback loopback = new Loopback(
+				new ConnectionManager(true).leaseDuration(serverLease),
+				new ConnectionManager(false).leaseDuration(clientLease));
+		try {
+			ServiceImpl impl = new ServiceImpl();
+			loopback.server().staticReg().bind("service", impl);
+			final InvokerManager manager = loopback.connect();
+			Service service = (Service) manager.lookupProxy("service");
+
+			for (int i = 0; i < 200; i++) {
+				service.callBack(new CallbackImpl(), i < 3);
+			}
+
+			// Collected proxies release their bindings
+			Check.eventually(new Check.Condition() {
+
+				@Override
+				public boolean holds() {
+					return manager.dynamicReg().size() == 3;
+				}
+			}, 10000, "released bindings with leases of " + leases);
+
+			// Referenced bindings outlive their leases
+			Thread.sleep(clientLease * 2);
+			Check.equal(3, manager.dynamicReg().size(), "renewed bindings "
+					+ "with leases of " + leases);
+
+			// Until the proxies are collected
+			synchronized (impl.kept) {
+				impl.kept.clear();
+			}
+			Check.eventually(new Check.Condition() {
+
+				@Override
+				public boolean holds() {
+					return manager.dynamicReg().size() == 0;
+				}
+			}, 10000, "released bindings with leases of " + leases);
+		} finally {
+			loopback.dispose();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// Bindings which are never renewed expire
+		DynamicRegistry registry = new DynamicRegistry().leaseDuration(100);
+		registry.replaceRemote(new CallbackImpl());
+		Check.equal(0, registry.unbindExpired(), "expired before the lease");
+		Thread.sleep(200);
+		Check.equal(1, registry.unbindExpired(), "expired after the lease");
+		Check.equal(0, registry.size(), "bindings after the lease");
+
+		// A released binding is removed at once
+		registry.leaseDuration(60000);
+		long id = ((RemoteObject) registry
+				.replaceRemote(new CallbackImpl())).id();
+		Check.equal(0, registry.release(id).size(), "released binding");
+
+		check(1500, 1500);
+
+		// The holder renews at the interval of the exporting side
+		check(60000, 1500);
+
+		Check.passed(LeaseTest.class);
+	}
+}
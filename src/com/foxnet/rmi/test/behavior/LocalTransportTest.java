@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.foxnet.rmi.AsyncVoid;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.LookupException;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.binding.registry.StaticRegistry;
+import com.foxnet.rmi.transport.local.LocalInvokerManager;
+
+/**
+ * The local transport passes immutable values by reference and copies all
+ * other values, so both sides behave like with the network transport.
+ * 
+ * @author Christopher Probst
+ */
+public class LocalTransportTest {
+
+	public interface Callback extends Remote {
+
+		int call();
+	}
+
+	public interface Service extends Remote {
+
+		String identity(String value);
+
+		List<String> append(List<String> list, int[] array);
+
+		int callBack(Callback callback);
+
+		@AsyncVoid
+		void oneWay();
+
+		void sleep(long millies) throws InterruptedException;
+
+		void fail();
+	}
+
+	public static class ServiceImpl implements Service {
+
+		final CountDownLatch oneWay = new CountDownLatch(1);
+
+		@Override
+		public String identity(String value) {
+			return value;
+		}
+
+		@Override
+		public List<String> append(List<String> list, int[] array) {
+			list.add("appended");
+			array[0] = 99;
+			return list;
+		}
+
+		@Override
+		public int callBack(Callback callback) {
+			return callback.call() + 1;
+		}
+
+		@Override
+		public void oneWay() {
+			oneWay.countDown();
+		}
+
+		@Override
+		public void sleep(long millies) throws InterruptedException {
+			Thread.sleep(millies);
+		}
+
+		@Override
+		public void fail() {
+			throw new IllegalStateException("failed");
+		}
+	}
+
+	public static class CallbackImpl implements Callback {
+
+		@Override
+		public int call() {
+			return 41;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			ServiceImpl impl = new ServiceImpl();
+			StaticRegistry serverRegistry = new StaticRegistry();
+			serverRegistry.bind("service", impl);
+			final LocalInvokerManager manager = LocalInvokerManager.connect(
+					new StaticRegistry(), executor, serverRegistry, executor);
+
+			Check.equal(Arrays.asList("service"),
+					Arrays.asList(manager.lookupNames()), "names");
+			try {
+				manager.lookupInvoker("missing");
+				throw new AssertionError("missing name found");
+			} catch (LookupException e) {
+				// Expected
+			}
+			Service service = (Service) manager.lookupProxy("service");
+
+			// Immutable values are passed by reference
+			String value = new String("value");
+			Check.isTrue(service.identity(value) == value, "passed string");
+
+			// Mutable values are copied in both directions
+			List<String> list = new ArrayList<>();
+			int[] array = { 1 };
+			List<String> result = service.append(list, array);
+			Check.equal(Arrays.asList("appended"), result, "result");
+			Check.isTrue(list.isEmpty() && result != list, "copied list");
+			Check.equal(1, array[0], "copied array");
+
+			// Remote arguments are exported and released when collected
+			Check.equal(42, service.callBack(new CallbackImpl()), "callback");
+			Check.eventually(new Check.Condition() {
+
+				@Override
+				public boolean holds() {
+					return manager.dynamicReg().size() == 0;
+				}
+			}, 10000, "released callback");
+
+			// One-way calls, failures and timeouts like over the network
+			service.oneWay();
+			Check.isTrue(impl.oneWay.await(2, TimeUnit.SECONDS),
+					"one-way call");
+			Invoker invoker = Invoker.of(service);
+			Check.fails(invoker.invoke("fail"),
+					InvocationTargetException.class, "failed invocation");
+			Check.isTrue(!invoker.proxyTimeout(200).invoke("sleep", 5000L)
+					.synchronize(), "timed out invocation");
+			invoker.proxyTimeout(0);
+
+			// Closing closes both sides
+			manager.close();
+			Check.isTrue(manager.peer().closeFuture().isCompleted(),
+					"closed peer");
+			Check.isTrue(!invoker.invoke("identity", "closed").synchronize(),
+					"invocation after closing");
+		} finally {
+			executor.shutdownNow();
+		}
+		Check.passed(LocalTransportTest.class);
+	}
+}
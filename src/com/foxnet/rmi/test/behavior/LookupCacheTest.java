@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.LookupException;
+import com.foxnet.rmi.binding.registry.StaticRegistry;
+
+/**
+ * Lookups are cached by the client and the server pushes the changes of its
+ * registry, so rebound and unbound names are never served from a stale cache
+ * for long, even while the registry changes concurrently.
+ * 
+ * @author Christopher Probst
+ */
+public class LookupCacheTest {
+
+	private static int numberOf(InvokerManager manager, String name)
+			throws LookupException {
+		return ((LookupTest.Service) manager.lookupProxy(name)).number();
+	}
+
+	private static boolean isCurrent(InvokerManager manager,
+			StaticRegistry registry, String name) throws LookupException {
+		return manager.lookupInvoker(name).binding().id() == registry.get(
+				name).id();
+	}
+
+	private static boolean isBound(InvokerManager manager, String name) {
+		try {
+			manager.lookupInvoker(name);
+			return true;
+		} catch (LookupException e) {
+			return false;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Loopback loopback = new Loopback();
+		try {
+			final StaticRegistry registry = loopback.server().staticReg();
+			registry.bind("service", new LookupTest.ServiceImpl(1));
+			final InvokerManager manager = loopback.connect();
+
+			// Cached lookups resolve the same binding
+			long id = manager.lookupInvoker("service").binding().id();
+			for (int i = 0; i < 100; i++) {
+				Check.equal(id, manager.lookupInvoker("service").binding()
+						.id(), "cached binding");
+			}
+
+			// A rebound name resolves the new target
+			registry.bind("service", new LookupTest.ServiceImpl(2));
+			Check.eventually(new Check.Condition() {
+
+				@Override
+				public boolean holds() throws Exception {
+					return isCurrent(manager, registry, "service");
+				}
+			}, 5000, "rebound name");
+			Check.equal(2, numberOf(manager, "service"), "rebound target");
+
+			// An unbound name is not found anymore
+			registry.unbind("service");
+			Check.eventually(new Check.Condition() {
+
+				@Override
+				public boolean holds() {
+					return !isBound(manager, "service");
+				}
+			}, 5000, "unbound name");
+
+			// Lookups during concurrent changes end with the last binding
+			Thread rebinder = new Thread() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < 500; i++) {
+						registry.bind("service", new LookupTest.ServiceImpl(i));
+						if (i % 3 == 0) {
+							registry.unbind("service");
+						}
+					}
+					registry.bind("service", new LookupTest.ServiceImpl(-1));
+				}
+			};
+			rebinder.start();
+			while (rebinder.isAlive()) {
+				isBound(manager, "service");
+			}
+			Check.eventually(new Check.Condition() {
+
+				@Override
+				public boolean holds() throws Exception {
+					return isCurrent(manager, registry, "service");
+				}
+			}, 5000, "last binding");
+			Check.equal(-1, numberOf(manager, "service"), "last target");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(LookupCacheTest.class);
+	}
+}
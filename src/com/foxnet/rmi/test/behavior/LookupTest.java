@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.LookupException;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.util.concurrent.Future;
+
+/**
+ * Many names are resolved by one lookup, either by name, by glob pattern or
+ * asynchronously. With a registry snapshot all lookups are answered locally.
+ * 
+ * @author Christopher Probst
+ */
+public class LookupTest {
+
+	public interface Service extends Remote {
+
+		int number();
+	}
+
+	public static class ServiceImpl implements Service {
+
+		final int number;
+
+		public ServiceImpl(int number) {
+			this.number = number;
+		}
+
+		@Override
+		public int number() {
+			return number;
+		}
+	}
+
+	private static int numberOf(Invoker invoker) {
+		return ((Service) invoker.proxy()).number();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Loopback loopback = new Loopback();
+		try {
+			for (int i = 0; i < 12; i++) {
+				loopback.server().staticReg().bind(
+						(i % 2 == 0 ? "service." : "other.") + i,
+						new ServiceImpl(i));
+			}
+			InvokerManager manager = loopback.connect();
+
+			// Missing names are left out of a batch
+			Map<String, Invoker> batch = manager.lookupInvokers("service.0",
+					"other.1", "missing");
+			Check.equal(new HashSet<>(Arrays.asList("service.0", "other.1")),
+					batch.keySet(), "names of the batch");
+			Check.equal(1, numberOf(batch.get("other.1")), "batch lookup");
+
+			// Glob patterns
+			Check.equal(new TreeSet<>(Arrays.asList("service.10")),
+					new TreeSet<>(manager.lookupInvokersMatching("service.1?")
+							.keySet()), "names matching service.1?");
+			Check.equal(6, manager.lookupInvokersMatching("other.*").size(),
+					"names matching other.*");
+			Check.equal(12, manager.lookupInvokersMatching("*").size(),
+					"names matching *");
+
+			// Asynchronous lookups
+			Future async = manager.lookupInvokersAsync("service.4",
+					"service.6");
+			Check.equal(new HashSet<>(Arrays.asList("service.4", "service.6")),
+					((Map<?, ?>) Check.succeeds(async, "async lookup"))
+							.keySet(), "names of the async lookup");
+
+			// A snapshot answers lookups locally and is kept up to date
+			loopback.client().lookupSnapshot(true);
+			final InvokerManager snapshot = loopback.connect();
+			Check.equal(12, snapshot.lookupNames().length, "snapshot names");
+			Check.equal(2, numberOf(snapshot.lookupInvoker("service.2")),
+					"snapshot lookup");
+			loopback.server().staticReg().bind("late", new ServiceImpl(99));
+			Check.eventually(new Check.Condition() {
+
+				@Override
+				public boolean holds() throws Exception {
+					return snapshot.lookupNames().length == 13;
+				}
+			}, 5000, "late binding in the snapshot");
+			Check.equal(99, numberOf(snapshot.lookupInvoker("late")),
+					"late lookup");
+			try {
+				snapshot.lookupInvoker("missing");
+				throw new AssertionError("missing name found");
+			} catch (LookupException e) {
+				// Expected
+			}
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(LookupTest.class);
+	}
+}
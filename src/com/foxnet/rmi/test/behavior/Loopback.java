@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.LookupException;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+
+/**
+ * A server and a client connection manager which are connected over the
+ * loopback interface using a free port.
+ * 
+ * @author Christopher Probst
+ */
+public final class Loopback {
+
+	/**
+	 * @return a port which is free at the moment.
+	 * @throws IOException
+	 *             If there is no free port.
+	 */
+	public static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private final ConnectionManager server, client;
+	private final int port;
+
+	public Loopback() throws IOException {
+		this(new ConnectionManager(true), new ConnectionManager(false));
+	}
+
+	public Loopback(ConnectionManager server, ConnectionManager client)
+			throws IOException {
+		this.server = server;
+		this.client = client;
+		port = freePort();
+		server.openServer(port);
+	}
+
+	public ConnectionManager server() {
+		return server;
+	}
+
+	public ConnectionManager client() {
+		return client;
+	}
+
+	public int port() {
+		return port;
+	}
+
+	/**
+	 * Opens a new connection to the server.
+	 * 
+	 * @return the invoker manager of the connection.
+	 */
+	public InvokerManager connect() throws IOException {
+		return client.openClient("localhost", port);
+	}
+
+	/**
+	 * Opens a new connection to the server and looks up the given name.
+	 * 
+	 * @return the proxy.
+	 */
+	public Object lookupProxy(String name) throws IOException,
+			LookupException {
+		return connect().lookupProxy(name);
+	}
+
+	public void dispose() {
+		client.dispose();
+		server.dispose();
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.Arrays;
+
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.NetworkResources;
+
+/**
+ * Connection managers share network resources, which outlive a disposed
+ * connection manager until they are released. Direct buffers carry the same
+ * bytes as heap buffers.
+ * 
+ * @author Christopher Probst
+ */
+public class NetworkResourcesTest {
+
+	private static byte[] pattern(int size) {
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; i++) {
+			bytes[i] = (byte) (i * 31);
+		}
+		return bytes;
+	}
+
+	public static void main(String[] args) throws Exception {
+		NetworkResources resources = new NetworkResources(2);
+		ConnectionManager server = new ConnectionManager(null, resources,
+				true, false).directBuffers(true);
+		ConnectionManager direct = new ConnectionManager(null, resources,
+				false, true).directBuffers(true);
+		ConnectionManager heap = new ConnectionManager(null, resources,
+				false, true);
+		try {
+			server.staticReg().bind("echo", new CoalescingTest.EchoImpl());
+			Loopback loopback = new Loopback(server, direct);
+			CoalescingTest.Echo directEcho = (CoalescingTest.Echo) loopback
+					.lookupProxy("echo");
+			CoalescingTest.Echo heapEcho = (CoalescingTest.Echo) heap
+					.openClient("localhost", loopback.port()).lookupProxy(
+							"echo");
+
+			Check.equal(3, directEcho.add(1, 2), "direct buffers");
+			Check.equal(7, heapEcho.add(3, 4), "heap buffers");
+			byte[] bytes = pattern(200000);
+			Check.isTrue(Arrays.equals(bytes, directEcho.echo(bytes)),
+					"large payload over direct buffers");
+			Check.isTrue(Arrays.equals(bytes, heapEcho.echo(bytes)),
+					"large payload over heap buffers");
+
+			// Disposing a connection manager keeps shared resources alive
+			direct.dispose();
+			Check.isTrue(!resources.isReleased(), "resources released early");
+			Check.equal(11, heapEcho.add(5, 6), "after disposing a sharer");
+		} finally {
+			direct.dispose();
+			heap.dispose();
+			server.dispose();
+			resources.release();
+		}
+		Check.isTrue(resources.isReleased(), "resources released");
+
+		// Released resources can not be shared anymore
+		try {
+			new ConnectionManager(null, resources, true, false);
+			throw new AssertionError("released resources accepted");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		Check.passed(NetworkResourcesTest.class);
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.foxnet.rmi.AsyncVoid;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.binding.BindingTemplate;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.ThreadUsage;
+
+/**
+ * Proxy calls of asynchronous void methods are sent as one-way messages. They
+ * return without waiting, keep their order relative to regular invocations
+ * of the same connection and export their remote arguments like regular
+ * invocations.
+ * 
+ * @author Christopher Probst
+ */
+public class OneWayTest {
+
+	public interface Callback extends Remote {
+
+		void called(long value);
+	}
+
+	public interface Counter extends Remote {
+
+		@AsyncVoid
+		void add(long value);
+
+		@AsyncVoid
+		void sleep(long millies);
+
+		@AsyncVoid
+		void callBack(Callback callback);
+
+		long sum();
+
+		List<Long> values();
+	}
+
+	public static class CounterImpl implements Counter {
+
+		final List<Long> values = new ArrayList<>();
+
+		@Override
+		public synchronized void add(long value) {
+			values.add(value);
+		}
+
+		@Override
+		public void sleep(long millies) {
+			try {
+				Thread.sleep(millies);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public void callBack(Callback callback) {
+			callback.called(sum());
+		}
+
+		@Override
+		public synchronized long sum() {
+			long sum = 0;
+			for (long value : values) {
+				sum += value;
+			}
+			return sum;
+		}
+
+		@Override
+		public synchronized List<Long> values() {
+			return new ArrayList<>(values);
+		}
+	}
+
+	public static class CallbackImpl implements Callback {
+
+		final CountDownLatch called = new CountDownLatch(1);
+		volatile long value;
+
+		@Override
+		public void called(long value) {
+			this.value = value;
+			called.countDown();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// Asynchronous void methods are resolved once by the template
+		BindingTemplate template = BindingTemplate.of(CounterImpl.class);
+		Check.isTrue(template.isAsyncVoid(template.nameIds().get("add")),
+				"asynchronous void method");
+		Check.isTrue(!template.isAsyncVoid(template.nameIds().get("sum")),
+				"method with a result");
+
+		// One invocation thread, so the order of execution is the order of
+		// arrival
+		Loopback loopback = new Loopback(new ConnectionManager(
+				new ThreadUsage(1, 1), true, false), new ConnectionManager(
+				false));
+		try {
+			loopback.server().staticReg().bind("counter", new CounterImpl());
+			Counter counter = (Counter) loopback.lookupProxy("counter");
+
+			// One-way calls do not wait for the method
+			long start = System.nanoTime();
+			counter.sleep(500);
+			Check.elapsed(start, 0, 300, "one-way call");
+
+			// A regular invocation sees all previous one-way calls
+			for (long i = 1; i <= 1000; i++) {
+				counter.add(i);
+			}
+			Check.equal(500500L, counter.sum(), "sum after one-way calls");
+			List<Long> values = counter.values();
+			for (int i = 0; i < values.size(); i++) {
+				Check.equal(i + 1L, values.get(i), "value in order");
+			}
+
+			// Remote arguments of one-way calls are exported
+			CallbackImpl callback = new CallbackImpl();
+			counter.callBack(callback);
+			Check.isTrue(callback.called.await(5, TimeUnit.SECONDS),
+					"callback called");
+			Check.equal(500500L, callback.value, "value of the callback");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(OneWayTest.class);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.Priority;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.binding.BindingTemplate;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.ThreadUsage;
+
+/**
+ * Queued invocations are executed by priority and deadline, aging keeps low
+ * priority invocations from starving.
+ * 
+ * @author Christopher Probst
+ */
+public class PriorityTest {
+
+	public interface Recorder extends Remote {
+
+		void block(long millies) throws InterruptedException;
+
+		void record(String tag);
+
+		@Priority(Priority.MAX_PRIORITY)
+		void urgent(String tag);
+	}
+
+	public static class RecorderImpl implements Recorder {
+
+		final List<String> order = new ArrayList<>();
+
+		@Override
+		public void block(long millies) throws InterruptedException {
+			Thread.sleep(millies);
+		}
+
+		@Override
+		public synchronized void record(String tag) {
+			order.add(tag);
+		}
+
+		@Override
+		public void urgent(String tag) {
+			record(tag);
+		}
+
+		synchronized List<String> takeOrder() {
+			List<String> taken = new ArrayList<>(order);
+			order.clear();
+			return taken;
+		}
+	}
+
+	private static void awaitAll(List<Invocation> invocations) {
+		for (Invocation invocation : invocations) {
+			Check.succeeds(invocation, "queued invocation");
+		}
+		invocations.clear();
+	}
+
+	public static void main(String[] args) throws Exception {
+		// The priorities of the methods are resolved once by the template
+		BindingTemplate template = BindingTemplate.of(RecorderImpl.class);
+		Check.equal(Priority.MAX_PRIORITY,
+				template.priority(template.nameIds().get("urgent")),
+				"priority of the annotated method");
+		Check.equal(Priority.NORM_PRIORITY,
+				template.priority(template.nameIds().get("record")),
+				"priority of the method without annotation");
+
+		// One invocation thread, so invocations queue up
+		Loopback loopback = new Loopback(new ConnectionManager(
+				new ThreadUsage(1, 1), true, false), new ConnectionManager(
+				false));
+		try {
+			RecorderImpl impl = new RecorderImpl();
+			loopback.server().staticReg().bind("recorder", impl);
+			InvokerManager manager = loopback.connect();
+			Invoker invoker = manager.lookupInvoker("recorder");
+			List<Invocation> invocations = new ArrayList<>();
+
+			// A high priority overtakes low priorities
+			invocations.add(invoker.invoke("block", 300L));
+			Thread.sleep(100);
+			for (int i = 0; i < 3; i++) {
+				invocations.add(invoker.invokeWithPriority(
+						Priority.MIN_PRIORITY, "record", "low"));
+			}
+			invocations.add(invoker.invokeWithPriority(Priority.MAX_PRIORITY,
+					"record", "high"));
+			invocations.add(invoker.invoke("urgent", "annotated"));
+			awaitAll(invocations);
+			Check.equal(Arrays.asList("high", "annotated", "low", "low",
+					"low"), impl.takeOrder(), "priority order");
+
+			// An earlier deadline overtakes an equal priority
+			loopback.server().invocationScheduler().agingQuantum(200);
+			Invoker limited = manager.lookupInvoker("recorder").proxyTimeout(
+					1000);
+			invocations.add(invoker.invoke("block", 200L));
+			Thread.sleep(100);
+			invocations.add(invoker.invokeWithPriority(Priority.MIN_PRIORITY,
+					"record", "late"));
+			invocations.add(limited.invokeWithPriority(Priority.MIN_PRIORITY,
+					"record", "early"));
+			awaitAll(invocations);
+			Check.equal(Arrays.asList("early", "late"), impl.takeOrder(),
+					"deadline order");
+
+			// A long waiting low priority is not overtaken anymore
+			loopback.server().invocationScheduler().agingQuantum(10);
+			invocations.add(invoker.invoke("block", 500L));
+			Thread.sleep(100);
+			invocations.add(invoker.invokeWithPriority(Priority.MIN_PRIORITY,
+					"record", "aged"));
+			Thread.sleep(200);
+			invocations.add(invoker.invokeWithPriority(Priority.MAX_PRIORITY,
+					"record", "high"));
+			awaitAll(invocations);
+			Check.equal(Arrays.asList("aged", "high"), impl.takeOrder(),
+					"aging order");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(PriorityTest.class);
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.binding.DynamicBinding;
+import com.foxnet.rmi.binding.StaticBinding;
+import com.foxnet.rmi.binding.registry.DynamicRegistry;
+import com.foxnet.rmi.binding.registry.StaticRegistry;
+
+/**
+ * Concurrent bindings of the same names or targets result in one binding
+ * each, while lookups by id run concurrently with binding and unbinding.
+ * 
+ * @author Christopher Probst
+ */
+public class RegistryTest {
+
+	private static final int THREADS = 8, TARGETS = 100;
+
+	/**
+	 * A task which is started by all threads at once.
+	 */
+	private interface Task {
+
+		void run(int thread) throws Exception;
+	}
+
+	private static void runConcurrently(final Task task) throws Exception {
+		final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+		final List<Throwable> failures = new ArrayList<>();
+		Thread[] threads = new Thread[THREADS];
+		for (int i = 0; i < threads.length; i++) {
+			final int thread = i;
+			threads[i] = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+						task.run(thread);
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (!failures.isEmpty()) {
+			AssertionError error = new AssertionError("concurrent task failed");
+			error.initCause(failures.get(0));
+			throw error;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// Concurrent static bindings of the same names
+		final StaticRegistry staticReg = new StaticRegistry();
+		final StaticBinding[][] staticBindings =
+				new StaticBinding[THREADS][TARGETS];
+		runConcurrently(new Task() {
+
+			@Override
+			public void run(int thread) {
+				for (int i = 0; i < TARGETS; i++) {
+					staticBindings[thread][i] = staticReg.bindIfAbsent("name"
+							+ i, new TimeoutTest.SleeperImpl());
+				}
+			}
+		});
+		Check.equal(TARGETS, staticReg.size(), "static bindings");
+		for (int i = 0; i < TARGETS; i++) {
+			StaticBinding binding = staticReg.get("name" + i);
+			Check.isTrue(binding == staticReg.get(binding.id()),
+					"static binding by id");
+			for (int thread = 0; thread < THREADS; thread++) {
+				Check.isTrue(staticBindings[thread][i] == binding,
+						"same static binding");
+			}
+		}
+
+		// Concurrent dynamic bindings of the same targets
+		final DynamicRegistry dynamicReg = new DynamicRegistry();
+		final Remote[] targets = new Remote[TARGETS];
+		for (int i = 0; i < TARGETS; i++) {
+			targets[i] = new TimeoutTest.SleeperImpl();
+		}
+		final DynamicBinding[][] dynamicBindings =
+				new DynamicBinding[THREADS][TARGETS];
+		runConcurrently(new Task() {
+
+			@Override
+			public void run(int thread) {
+				for (int i = 0; i < TARGETS; i++) {
+					dynamicBindings[thread][i] = dynamicReg
+							.bindIfAbsent(targets[i]);
+				}
+			}
+		});
+		Check.equal(TARGETS, dynamicReg.size(), "dynamic bindings");
+		Set<Long> ids = new HashSet<>();
+		for (int i = 0; i < TARGETS; i++) {
+			DynamicBinding binding = dynamicReg.get(targets[i]);
+			Check.isTrue(ids.add(binding.id()), "unique id");
+			Check.isTrue(binding == dynamicReg.get(binding.id()),
+					"dynamic binding by id");
+			for (int thread = 0; thread < THREADS; thread++) {
+				Check.isTrue(dynamicBindings[thread][i] == binding,
+						"same dynamic binding");
+			}
+		}
+
+		// Lookups by id while other threads bind and unbind
+		runConcurrently(new Task() {
+
+			@Override
+			public void run(int thread) {
+				for (int round = 0; round < 200; round++) {
+					for (int i = thread; i < TARGETS; i += THREADS) {
+						if (thread % 2 == 0) {
+							DynamicBinding binding = dynamicReg
+									.bindIfAbsent(targets[i]);
+							DynamicBinding byId = dynamicReg.get(binding.id());
+							Check.isTrue(byId == null || byId == binding,
+									"binding by id");
+							dynamicReg.unbind(targets[i]);
+						} else {
+							DynamicBinding binding = dynamicReg
+									.get(targets[i - 1]);
+							Check.isTrue(binding == null
+									|| binding.target() == targets[i - 1],
+									"target of the binding");
+						}
+					}
+				}
+			}
+		});
+		for (int i = 0; i < TARGETS; i += 2) {
+			Check.equal(null, dynamicReg.get(targets[i]), "unbound target");
+		}
+		Check.equal(TARGETS / 2, dynamicReg.size(), "remaining bindings");
+		Check.equal(TARGETS / 2, dynamicReg.exportTable().size(),
+				"remaining exports");
+		Check.equal(0, dynamicReg.unbindAll().size(),
+				"bindings after unbind all");
+		Check.equal(0, dynamicReg.exportTable().size(),
+				"exports after unbind all");
+
+		Check.passed(RegistryTest.class);
+	}
+}
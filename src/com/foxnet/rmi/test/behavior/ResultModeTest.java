@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.foxnet.rmi.DiscardResult;
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.ResultMode;
+import com.foxnet.rmi.binding.BindingTemplate;
+
+/**
+ * The result mode decides whether results are sent back, only the completion
+ * is acknowledged or nothing is sent back at all. Discarded results are never
+ * exported and proxies return default values for them.
+ * 
+ * @author Christopher Probst
+ */
+public class ResultModeTest {
+
+	public interface Service extends Remote {
+
+		int count();
+
+		@DiscardResult
+		int countDiscarded();
+
+		@DiscardResult(ResultMode.NONE)
+		int countOneWay();
+
+		Service create();
+
+		@DiscardResult
+		void fail();
+	}
+
+	public static class ServiceImpl implements Service {
+
+		final AtomicInteger counted = new AtomicInteger();
+
+		@Override
+		public int count() {
+			return counted.incrementAndGet();
+		}
+
+		@Override
+		public int countDiscarded() {
+			return counted.incrementAndGet();
+		}
+
+		@Override
+		public int countOneWay() {
+			return counted.incrementAndGet();
+		}
+
+		@Override
+		public Service create() {
+			return new ServiceImpl();
+		}
+
+		@Override
+		public void fail() {
+			throw new IllegalStateException("failed");
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// The result modes of the methods are resolved once by the template
+		BindingTemplate template = BindingTemplate.of(ServiceImpl.class);
+		Check.equal(ResultMode.FULL,
+				template.resultMode(template.nameIds().get("count")),
+				"result mode of the method without annotation");
+		Check.equal(ResultMode.NONE,
+				template.resultMode(template.nameIds().get("countOneWay")),
+				"result mode of the annotated method");
+
+		Loopback loopback = new Loopback();
+		try {
+			final ServiceImpl impl = new ServiceImpl();
+			loopback.server().staticReg().bind("service", impl);
+			Service service = (Service) loopback.lookupProxy("service");
+			Invoker invoker = Invoker.of(service);
+
+			// Full results are sent back
+			Check.equal(1, service.count(), "full result");
+			Check.isTrue(service.create() != null, "created service");
+			Check.equal(1, loopback.server().exportTable().size(),
+					"exported results");
+
+			// Discarded results of primitive types are default values
+			Check.equal(0, service.countDiscarded(), "discarded result");
+			Check.equal(2, impl.counted.get(), "invocations");
+
+			// The result mode of the invoker has precedence
+			invoker.resultMode(ResultMode.ACKNOWLEDGE);
+			Check.equal(0, service.count(), "acknowledged result");
+			Check.equal(null, service.create(), "acknowledged service");
+			Check.equal(1, loopback.server().exportTable().size(),
+					"exported results");
+			invoker.resultMode(ResultMode.FULL);
+			Check.equal(4, service.countDiscarded(), "full result");
+			invoker.resultMode(null);
+
+			// Failures are acknowledged as well
+			Check.fails(invoker.invoke("fail"),
+					InvocationTargetException.class, "acknowledged failure");
+
+			// Nothing is sent back, the invocation succeeds when sent
+			Invocation oneWay = invoker.invoke("countOneWay");
+			Check.isTrue(oneWay.isOneWay(), "one way invocation");
+			Check.equal(null, Check.succeeds(oneWay, "one way invocation"),
+					"one way result");
+			Check.equal(0, service.countOneWay(), "one way proxy result");
+			Check.eventually(new Check.Condition() {
+
+				@Override
+				public boolean holds() {
+					return impl.counted.get() == 6;
+				}
+			}, 2000, "one way invocations executed");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(ResultModeTest.class);
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.binding.registry.StaticRegistry;
+import com.foxnet.rmi.transport.shm.SharedMemoryInvokerManager;
+
+/**
+ * Two sides of a shared memory file invoke each other like over the network.
+ * Payloads which do not fit into a ring fail, and the death of the peer
+ * process fails the pending invocations.
+ * 
+ * @author Christopher Probst
+ */
+public class SharedMemoryTest {
+
+	public interface Service extends Remote {
+
+		int add(int a, int b);
+
+		int callBack(LocalTransportTest.Callback callback);
+
+		byte[] payload(int size);
+
+		void sleep(long millies) throws InterruptedException;
+	}
+
+	public static class ServiceImpl implements Service {
+
+		@Override
+		public int add(int a, int b) {
+			return a + b;
+		}
+
+		@Override
+		public int callBack(LocalTransportTest.Callback callback) {
+			return callback.call() + 1;
+		}
+
+		@Override
+		public byte[] payload(int size) {
+			return new byte[size];
+		}
+
+		@Override
+		public void sleep(long millies) throws InterruptedException {
+			Thread.sleep(millies);
+		}
+	}
+
+	/**
+	 * Creates the given shared memory file in a child process and waits
+	 * until the process is killed.
+	 */
+	public static class Creator {
+
+		public static void main(String[] args) throws Exception {
+			StaticRegistry registry = new StaticRegistry();
+			registry.bind("service", new ServiceImpl());
+			SharedMemoryInvokerManager.create(new File(args[0]), 1 << 16,
+					registry, Executors.newCachedThreadPool());
+			System.out.println("ready");
+			System.out.flush();
+			Thread.sleep(Long.MAX_VALUE);
+		}
+	}
+
+	private static File newFile() {
+		return SharedMemoryInvokerManager.fileOf("foxnet-test-"
+				+ System.nanoTime());
+	}
+
+	public static void main(String[] args) throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			// Both sides in this process
+			File file = newFile();
+			StaticRegistry registry = new StaticRegistry();
+			registry.bind("service", new ServiceImpl());
+			SharedMemoryInvokerManager creator = SharedMemoryInvokerManager
+					.create(file, 1 << 16, registry, executor);
+			SharedMemoryInvokerManager opener = SharedMemoryInvokerManager
+					.open(file, new StaticRegistry(), executor);
+
+			Check.equal(Arrays.asList("service"),
+					Arrays.asList(opener.lookupNames()), "names");
+			final Service service = (Service) opener.lookupProxy("service");
+			Check.equal(5, service.add(2, 3), "add");
+			Check.equal(42,
+					service.callBack(new LocalTransportTest.CallbackImpl()),
+					"callback");
+			Check.equal(20000, service.payload(20000).length, "payload");
+			Check.isTrue(!Invoker.of(service).invoke("payload", 1 << 20)
+					.synchronize(), "payload larger than the ring");
+
+			// Concurrent writers share the ring
+			final List<Throwable> failures = Collections
+					.synchronizedList(new ArrayList<Throwable>());
+			Thread[] callers = new Thread[4];
+			for (int i = 0; i < callers.length; i++) {
+				final int caller = i;
+				callers[i] = new Thread() {
+
+					@Override
+					public void run() {
+						try {
+							List<Invocation> invocations = new ArrayList<>();
+							for (int j = 0; j < 1000; j++) {
+								invocations.add(Invoker.of(service).invoke(
+										"add", caller, j));
+							}
+							for (int j = 0; j < invocations.size(); j++) {
+								Check.equal(caller + j, Check.succeeds(
+										invocations.get(j), "add"), "sum");
+							}
+						} catch (Throwable e) {
+							failures.add(e);
+						}
+					}
+				};
+				callers[i].start();
+			}
+			for (Thread caller : callers) {
+				caller.join();
+			}
+			Check.equal(Collections.emptyList(), failures,
+					"failures of concurrent callers");
+
+			// Closing a side fails the invocations of the other side
+			Invocation sleeping = Invoker.of(service).invoke("sleep", 60000L);
+			Thread.sleep(200);
+			long start = System.nanoTime();
+			creator.close();
+			Check.isTrue(!sleeping.synchronize(), "invocation of a closed peer");
+			Check.elapsed(start, 0, 5000, "closed peer detected");
+			Check.isTrue(!file.exists(), "file deleted by the creator");
+			opener.close();
+
+			// The death of the peer process is detected
+			file = newFile();
+			Process process = new ProcessBuilder(new File(new File(
+					System.getProperty("java.home"), "bin"), "java").getPath(),
+					"-cp", System.getProperty("java.class.path"),
+					Creator.class.getName(), file.getPath()).start();
+			try {
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(process.getInputStream()));
+				Check.equal("ready", reader.readLine(), "child process");
+				opener = SharedMemoryInvokerManager.open(file,
+						new StaticRegistry(), executor);
+				sleeping = opener.lookupInvoker("service").invoke("sleep",
+						60000L);
+				Thread.sleep(200);
+				start = System.nanoTime();
+				process.destroyForcibly().waitFor();
+				Check.isTrue(!sleeping.synchronize(),
+						"invocation of a dead peer");
+				Check.elapsed(start, 0, 15000, "dead peer detected");
+				opener.close();
+			} finally {
+				process.destroyForcibly();
+				file.delete();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		Check.passed(SharedMemoryTest.class);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.concurrent.TimeoutException;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+
+/**
+ * Pending requests expire by the timer of the connection manager, requests
+ * without a timeout wait until they are answered as long as a caller waits
+ * for them.
+ * 
+ * @author Christopher Probst
+ */
+public class TimeoutTest {
+
+	public interface Sleeper extends Remote {
+
+		String sleep(long millies) throws InterruptedException;
+	}
+
+	public static class SleeperImpl implements Sleeper {
+
+		@Override
+		public String sleep(long millies) throws InterruptedException {
+			Thread.sleep(millies);
+			return "awake";
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Check.equal(ConnectionManager.DEFAULT_REQUEST_TIMEOUT,
+				new ConnectionManager(false).dispose().requestTimeout(),
+				"default request timeout");
+		Check.isTrue(ConnectionManager.DEFAULT_REQUEST_TIMEOUT > 0,
+				"finite default request timeout");
+
+		Loopback loopback = new Loopback();
+		try {
+			loopback.server().staticReg().bind("sleeper", new SleeperImpl());
+			Sleeper sleeper = (Sleeper) loopback.lookupProxy("sleeper");
+
+			// A waiting caller keeps a slow request without a timeout alive
+			loopback.client().requestTimeout(300);
+			Check.equal("awake", sleeper.sleep(1000), "awaited request");
+
+			// The timer expires an asynchronous invocation without a waiter
+			long start = System.nanoTime();
+			Invocation invocation = Invoker.of(sleeper).invoke("sleep", 2000L);
+			Thread.sleep(1000);
+			Check.isTrue(invocation.isCompleted(), "expired without waiter");
+			Check.fails(invocation, TimeoutException.class, "expired request");
+			Check.elapsed(start, 250, 1500, "request timeout");
+			loopback.client().requestTimeout(0);
+
+			// The proxy timeout has precedence
+			Invoker.of(sleeper).proxyTimeout(200);
+			start = System.nanoTime();
+			try {
+				sleeper.sleep(2000);
+				Check.isTrue(false, "proxy timeout");
+			} catch (Exception e) {
+				// The waiting proxy or the timer of the request fails first
+				Throwable cause = Check.isCause(Exception.class, e,
+						"proxy timeout");
+				Check.isTrue(cause instanceof TimeoutException
+						|| cause instanceof IllegalStateException,
+						"proxy timeout cause " + cause);
+			}
+			Check.elapsed(start, 150, 1500, "proxy timeout");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(TimeoutTest.class);
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.behavior;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.OrderedExecution;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.ExecutionMode;
+import com.foxnet.rmi.transport.network.ThreadUsage;
+import com.foxnet.rmi.util.concurrent.Future;
+
+/**
+ * In the work stealing execution mode invocations run on a fork/join pool,
+ * ordered invocations stay serialized and a worker which blocks on a future
+ * is compensated by the pool.
+ * 
+ * @author Christopher Probst
+ */
+public class WorkStealingTest {
+
+	public interface Gate extends Remote {
+
+		boolean await();
+
+		void open();
+
+		@OrderedExecution
+		void ordered(int sequence);
+	}
+
+	public static class GateImpl implements Gate {
+
+		final Future gate = new Future();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicBoolean overlapped = new AtomicBoolean();
+		final AtomicBoolean forkJoin = new AtomicBoolean(true);
+		final List<Integer> sequences = new ArrayList<>();
+
+		@Override
+		public boolean await() {
+			return gate.synchronize(5000);
+		}
+
+		@Override
+		public void open() {
+			gate.succeed(null);
+		}
+
+		@Override
+		public void ordered(int sequence) {
+			if (running.incrementAndGet() > 1) {
+				overlapped.set(true);
+			}
+			if (!(Thread.currentThread() instanceof ForkJoinWorkerThread)) {
+				forkJoin.set(false);
+			}
+			synchronized (sequences) {
+				sequences.add(sequence);
+			}
+			running.decrementAndGet();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// A single worker, so blocking needs compensation
+		Loopback loopback = new Loopback(new ConnectionManager(
+				new ThreadUsage(1, 1, ExecutionMode.WORK_STEALING), true,
+				false), new ConnectionManager(false));
+		try {
+			GateImpl impl = new GateImpl();
+			loopback.server().staticReg().bind("gate", impl);
+			Invoker invoker = loopback.connect().lookupInvoker("gate");
+
+			List<Invocation> invocations = new ArrayList<>();
+			for (int i = 0; i < 500; i++) {
+				invocations.add(invoker.invoke("ordered", i));
+			}
+			for (Invocation invocation : invocations) {
+				Check.succeeds(invocation, "ordered invocation");
+			}
+			Check.isTrue(!impl.overlapped.get(), "ordered invocations "
+					+ "overlapped");
+			Check.isTrue(impl.forkJoin.get(), "executed by the pool");
+			for (int i = 0; i < impl.sequences.size(); i++) {
+				Check.equal(i, impl.sequences.get(i), "order");
+			}
+
+			// The blocked worker does not prevent opening the gate
+			Invocation waiting = invoker.invoke("await");
+			Thread.sleep(100);
+			Check.succeeds(loopback.connect().lookupInvoker("gate").invoke(
+					"open"), "opening invocation");
+			Check.equal(true, Check.succeeds(waiting, "waiting invocation"),
+					"gate opened");
+		} finally {
+			loopback.dispose();
+		}
+		Check.passed(WorkStealingTest.class);
+	}
+}
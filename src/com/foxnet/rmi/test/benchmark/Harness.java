@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Runs a benchmark with a fixed number of operations per round. The first
+ * rounds warm up the JIT and are not reported, the median of the measured
+ * rounds is printed together with the minimum and the maximum, so results of
+ * different runs are comparable.
+ * 
+ * @author Christopher Probst
+ */
+public final class Harness {
+
+	/**
+	 * A round of a benchmark.
+	 * 
+	 * @author Christopher Probst
+	 */
+	public interface Round {
+
+		/**
+		 * Executes the given number of operations and returns when all of
+		 * them are completed.
+		 */
+		void run(int operations) throws Exception;
+	}
+
+	/**
+	 * The number of warm up rounds.
+	 */
+	public static final int WARM_UP_ROUNDS = Integer.getInteger(
+			"benchmark.warmUpRounds", 3);
+
+	/**
+	 * The number of measured rounds.
+	 */
+	public static final int ROUNDS = Integer.getInteger("benchmark.rounds", 7);
+
+	/**
+	 * Measures the given round and prints the throughput.
+	 * 
+	 * @param name
+	 *            The name of the benchmark.
+	 * @param operations
+	 *            The number of operations per round.
+	 * @param round
+	 *            The round.
+	 * @return the median throughput in operations per second.
+	 */
+	public static double measure(String name, int operations, Round round)
+			throws Exception {
+		for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+			round.run(operations);
+		}
+
+		double[] throughputs = new double[ROUNDS];
+		for (int i = 0; i < ROUNDS; i++) {
+			System.gc();
+			long start = System.nanoTime();
+			round.run(operations);
+			throughputs[i] = operations * 1e9 / (System.nanoTime() - start);
+		}
+		Arrays.sort(throughputs);
+
+		double median = throughputs[ROUNDS / 2];
+		System.out.printf("%-40s %12.0f ops/s (min %.0f, max %.0f)%n", name,
+				median, throughputs[0], throughputs[ROUNDS - 1]);
+		return median;
+	}
+
+	private Harness() {
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.benchmark;
+
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.test.behavior.LookupTest;
+import com.foxnet.rmi.test.behavior.Loopback;
+
+/**
+ * Compares lookups which need a round trip with lookups which are served by
+ * the lookup cache or a registry snapshot.
+ * 
+ * @author Christopher Probst
+ */
+public class LookupBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		Loopback loopback = new Loopback();
+		try {
+			for (int i = 0; i < 100; i++) {
+				loopback.server().staticReg()
+						.bind("service." + i, new LookupTest.ServiceImpl(i));
+			}
+			final InvokerManager manager = loopback.connect();
+			loopback.client().lookupSnapshot(true);
+			final InvokerManager snapshot = loopback.connect();
+
+			Harness.measure("lookups of all names", 2000,
+					new Harness.Round() {
+
+						@Override
+						public void run(int operations) throws Exception {
+							for (int i = 0; i < operations; i++) {
+								manager.lookupNames();
+							}
+						}
+					});
+
+			Harness.measure("cached lookups", 200000, new Harness.Round() {
+
+				@Override
+				public void run(int operations) throws Exception {
+					for (int i = 0; i < operations; i++) {
+						manager.lookupInvoker("service." + (i % 100));
+					}
+				}
+			});
+
+			Harness.measure("glob lookups", 2000, new Harness.Round() {
+
+				@Override
+				public void run(int operations) throws Exception {
+					for (int i = 0; i < operations; i++) {
+						manager.lookupInvokersMatching("service.1*");
+					}
+				}
+			});
+
+			Harness.measure("glob lookups (snapshot)", 20000,
+					new Harness.Round() {
+
+						@Override
+						public void run(int operations) throws Exception {
+							for (int i = 0; i < operations; i++) {
+								snapshot.lookupInvokersMatching("service.1*");
+							}
+						}
+					});
+		} finally {
+			loopback.dispose();
+		}
+	}
+}
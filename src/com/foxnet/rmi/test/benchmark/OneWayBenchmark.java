@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.foxnet.rmi.AsyncVoid;
+import com.foxnet.rmi.Remote;
+import com.foxnet.rmi.test.behavior.Loopback;
+
+/**
+ * Compares one-way calls of asynchronous void methods with regular calls of
+ * the same method which wait for the completion.
+ * 
+ * @author Christopher Probst
+ */
+public class OneWayBenchmark {
+
+	public interface Counter extends Remote {
+
+		@AsyncVoid
+		void addOneWay(long value);
+
+		void add(long value);
+
+		long sum();
+	}
+
+	public static class CounterImpl implements Counter {
+
+		final AtomicLong sum = new AtomicLong();
+
+		@Override
+		public void addOneWay(long value) {
+			sum.addAndGet(value);
+		}
+
+		@Override
+		public void add(long value) {
+			sum.addAndGet(value);
+		}
+
+		@Override
+		public long sum() {
+			return sum.get();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Loopback loopback = new Loopback();
+		try {
+			loopback.server().staticReg().bind("counter", new CounterImpl());
+			final Counter counter = (Counter) loopback.lookupProxy("counter");
+
+			Harness.measure("one-way calls", 50000, new Harness.Round() {
+
+				@Override
+				public void run(int operations) {
+					long expected = counter.sum() + operations;
+					for (int i = 0; i < operations; i++) {
+						counter.addOneWay(1);
+					}
+					// Wait until the server executed all one-way calls
+					while (counter.sum() < expected) {
+						Thread.yield();
+					}
+				}
+			});
+
+			Harness.measure("synchronous calls", 5000, new Harness.Round() {
+
+				@Override
+				public void run(int operations) {
+					for (int i = 0; i < operations; i++) {
+						counter.add(1);
+					}
+				}
+			});
+		} finally {
+			loopback.dispose();
+		}
+	}
+}
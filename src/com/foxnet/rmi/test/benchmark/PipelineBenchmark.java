@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.benchmark;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.test.behavior.CoalescingTest;
+import com.foxnet.rmi.test.behavior.Loopback;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+
+/**
+ * Measures pipelined invocations with and without write coalescing.
+ * 
+ * @author Christopher Probst
+ */
+public class PipelineBenchmark {
+
+	private static void measure(boolean writeCoalescing) throws Exception {
+		Loopback loopback = new Loopback(
+				new ConnectionManager(true).writeCoalescing(writeCoalescing),
+				new ConnectionManager(false).writeCoalescing(writeCoalescing));
+		try {
+			loopback.server().staticReg()
+					.bind("echo", new CoalescingTest.EchoImpl());
+			final Invoker invoker = Invoker.of(loopback.lookupProxy("echo"));
+
+			Harness.measure("pipelined invocations"
+					+ (writeCoalescing ? " (coalesced)" : ""), 20000,
+					new Harness.Round() {
+
+						@Override
+						public void run(int operations) {
+							Invocation[] invocations = new Invocation[operations];
+							for (int i = 0; i < operations; i++) {
+								invocations[i] = invoker.invoke("add", i, 1);
+							}
+							for (Invocation invocation : invocations) {
+								if (!invocation.synchronize()) {
+									throw new IllegalStateException(
+											invocation.cause());
+								}
+							}
+						}
+					});
+		} finally {
+			loopback.dispose();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		measure(false);
+		measure(true);
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.test.benchmark;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.foxnet.rmi.binding.registry.StaticRegistry;
+import com.foxnet.rmi.test.behavior.CoalescingTest;
+import com.foxnet.rmi.test.behavior.Loopback;
+import com.foxnet.rmi.transport.local.LocalInvokerManager;
+import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.shm.SharedMemoryInvokerManager;
+
+/**
+ * Measures synchronous round trips of the transports.
+ * 
+ * @author Christopher Probst
+ */
+public class TransportBenchmark {
+
+	private static final int OPERATIONS = 5000;
+
+	private static void measure(String transport, Object proxy)
+			throws Exception {
+		final CoalescingTest.Echo echo = (CoalescingTest.Echo) proxy;
+		Harness.measure("round trips (" + transport + ")", OPERATIONS,
+				new Harness.Round() {
+
+					@Override
+					public void run(int operations) {
+						for (int i = 0; i < operations; i++) {
+							echo.add(i, 1);
+						}
+					}
+				});
+	}
+
+	private static void measureLocal() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			StaticRegistry registry = new StaticRegistry();
+			registry.bind("echo", new CoalescingTest.EchoImpl());
+			LocalInvokerManager manager = LocalInvokerManager.connect(
+					new StaticRegistry(), executor, registry, executor);
+			measure("local", manager.lookupProxy("echo"));
+			manager.close();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void measureShm() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			File file = SharedMemoryInvokerManager.fileOf("foxnet-benchmark-"
+					+ System.nanoTime());
+			StaticRegistry registry = new StaticRegistry();
+			registry.bind("echo", new CoalescingTest.EchoImpl());
+			SharedMemoryInvokerManager creator = SharedMemoryInvokerManager
+					.create(file, SharedMemoryInvokerManager.DEFAULT_CAPACITY,
+							registry, executor);
+			SharedMemoryInvokerManager opener = SharedMemoryInvokerManager
+					.open(file, new StaticRegistry(), executor);
+			measure("shm", opener.lookupProxy("echo"));
+			opener.close();
+			creator.close();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void measureTcp(boolean directBuffers) throws Exception {
+		Loopback loopback = new Loopback(
+				new ConnectionManager(true).directBuffers(directBuffers),
+				new ConnectionManager(false).directBuffers(directBuffers));
+		try {
+			loopback.server().staticReg()
+					.bind("echo", new CoalescingTest.EchoImpl());
+			measure(directBuffers ? "tcp, direct buffers" : "tcp",
+					loopback.lookupProxy("echo"));
+		} finally {
+			loopback.dispose();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		measureLocal();
+		measureShm();
+		measureTcp(false);
+		measureTcp(true);
+	}
+}
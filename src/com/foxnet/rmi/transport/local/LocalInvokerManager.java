@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.transport.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.InvocationMessage;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.LookupException;
+import com.foxnet.rmi.binding.LocalObject;
+import com.foxnet.rmi.binding.RemoteBinding;
+import com.foxnet.rmi.binding.RemoteObject;
+import com.foxnet.rmi.binding.StaticBinding;
+import com.foxnet.rmi.binding.registry.StaticRegistry;
+import com.foxnet.rmi.util.concurrent.Future;
+import com.foxnet.rmi.util.concurrent.FutureCallback;
+import com.foxnet.rmi.util.concurrent.SharedTimer;
+
+/**
+ * A local invoker manager is connected to another local invoker manager in
+ * the same JVM. Invocations are passed directly to the peer without a
+ * transport. Immutable values are passed by reference, all other values are
+ * copied using serialization, so both sides never share mutable state like
+ * with the network transport.
+ * 
+ * @author Christopher Probst
+ */
+public final class LocalInvokerManager extends InvokerManager {
+
+	// The interval of releasing collected remote objects in milliseconds
+	private static final long RELEASE_INTERVAL = 1000;
+
+	// The types which are immutable and passed by reference
+	private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(
+			Arrays.<Class<?>> asList(String.class, Boolean.class,
+					Character.class, Byte.class, Short.class, Integer.class,
+					Long.class, Float.class, Double.class, BigInteger.class,
+					BigDecimal.class, Class.class, RemoteObject.class,
+					LocalObject.class));
+
+	/**
+	 * Connects two new local invoker managers.
+	 * 
+	 * @param clientRegistry
+	 *            The static registry of the client side.
+	 * @param clientExecutor
+	 *            The executor which executes the invocations of the server
+	 *            side.
+	 * @param serverRegistry
+	 *            The static registry of the server side.
+	 * @param serverExecutor
+	 *            The executor which executes the invocations of the client
+	 *            side.
+	 * @return the client side. Use {@link #peer()} to get the server side.
+	 */
+	public static LocalInvokerManager connect(StaticRegistry clientRegistry,
+			Executor clientExecutor, StaticRegistry serverRegistry,
+			Executor serverExecutor) {
+		LocalInvokerManager client = new LocalInvokerManager(clientRegistry,
+				clientExecutor);
+		LocalInvokerManager server = new LocalInvokerManager(serverRegistry,
+				serverExecutor);
+		client.peer = server;
+		server.peer = client;
+		return client;
+	}
+
+	/**
+	 * @param value
+	 *            The value.
+	 * @return true if the given value can be passed by reference, otherwise
+	 *         false.
+	 */
+	private static boolean isImmutable(Object value) {
+		return value == null || value instanceof Enum<?>
+				|| IMMUTABLE_TYPES.contains(value.getClass());
+	}
+
+	/**
+	 * Copies the given values like a transport would do. The mutable values
+	 * are serialized together, so references between them are preserved.
+	 * 
+	 * @param values
+	 *            The values.
+	 * @return a new array with the copied values.
+	 * @throws IOException
+	 *             If a value could not be serialized.
+	 * @throws ClassNotFoundException
+	 *             If a class could not be found.
+	 */
+	static Object[] copy(Object... values) throws IOException,
+			ClassNotFoundException {
+		if (values == null) {
+			return null;
+		}
+
+		// Collect the mutable values
+		Object[] copies = values.clone();
+		int[] indices = null;
+		int count = 0;
+		for (int i = 0; i < copies.length; i++) {
+			if (!isImmutable(copies[i])) {
+				if (indices == null) {
+					indices = new int[copies.length];
+				}
+				indices[count++] = i;
+			}
+		}
+
+		if (count > 0) {
+			Object[] mutables = new Object[count];
+			for (int i = 0; i < count; i++) {
+				mutables[i] = copies[indices[i]];
+			}
+
+			// Serialize the mutable values
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try (ObjectOutputStream objectOutput = new ObjectOutputStream(
+					output)) {
+				objectOutput.writeObject(mutables);
+			}
+
+			// Read the copies
+			try (ObjectInputStream objectInput = new ObjectInputStream(
+					new ByteArrayInputStream(output.toByteArray()))) {
+				mutables = (Object[]) objectInput.readObject();
+			}
+
+			for (int i = 0; i < count; i++) {
+				copies[indices[i]] = mutables[i];
+			}
+		}
+
+		return copies;
+	}
+
+	// The executor of the incoming invocations
+	private final Executor executor;
+
+	// The responses which are not completed yet
+	private final Set<Future> pendingResponses = Collections
+			.newSetFromMap(new ConcurrentHashMap<Future, Boolean>());
+
+	// Releases the collected remote objects of the peer
+	private final ScheduledFuture<?> releaseTask;
+
+	// The connected invoker manager
+	private volatile LocalInvokerManager peer;
+
+	private LocalInvokerManager(StaticRegistry staticRegistry,
+			Executor executor) {
+		super(staticRegistry);
+
+		if (executor == null) {
+			throw new NullPointerException("executor");
+		}
+		this.executor = executor;
+
+		// The peer releases or holds the references, leases are not needed
+		dynamicReg().leaseDuration(0);
+
+		releaseTask = SharedTimer.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				long[] released = pollReleasedRemotes();
+				if (released.length > 0) {
+					peer.dynamicReg().release(released);
+				}
+			}
+		}, RELEASE_INTERVAL, TimeUnit.MILLISECONDS);
+
+		// Fail the pending responses when closed
+		closeFuture().add(new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				releaseTask.cancel(false);
+				for (Future response : pendingResponses) {
+					response.fail(new ClosedChannelException());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Handles an invocation of the peer.
+	 * 
+	 * @param message
+	 *            The copied invocation message.
+	 * @param response
+	 *            The response or null.
+	 */
+	private void receive(InvocationMessage message, Future response) {
+		try {
+			handleInvocation(message, executor, response);
+		} catch (Exception e) {
+			if (response != null) {
+				response.fail(e);
+			}
+		}
+	}
+
+	/**
+	 * @return the connected invoker manager.
+	 */
+	public LocalInvokerManager peer() {
+		return peer;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.foxnet.rmi.InvokerManager#sendOneWay(com.foxnet.rmi.
+	 * InvocationMessage)
+	 */
+	@Override
+	protected boolean sendOneWay(InvocationMessage message) {
+		if (closeFuture().isCompleted()) {
+			return false;
+		}
+
+		try {
+			peer.receive(message.withArguments(copy(message.arguments())),
+					null);
+		} catch (Exception e) {
+			// Like a failed write, one-way messages are dropped silently
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.foxnet.rmi.InvokerManager#sendInvocation(com.foxnet.rmi.Invocation)
+	 */
+	@Override
+	protected void sendInvocation(final Invocation invocation) {
+		if (closeFuture().isCompleted()) {
+			invocation.fail(new ClosedChannelException());
+			return;
+		}
+
+		// Copy the arguments
+		InvocationMessage message;
+		try {
+			message = invocation.message().withArguments(
+					copy(invocation.message().arguments()));
+		} catch (Exception e) {
+			invocation.fail(e);
+			return;
+		}
+
+		if (invocation.isOneWay()) {
+			peer.receive(message, null);
+			invocation.complete(null, null);
+			return;
+		}
+
+		final Future response = new Future();
+		pendingResponses.add(response);
+
+		// Expire the response like a request
+		final ScheduledFuture<?> timeout = message.timeout() > 0 ? SharedTimer
+				.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						response.fail(new TimeoutException("The request has "
+								+ "timed out"));
+					}
+				}, message.timeout(), TimeUnit.MILLISECONDS) : null;
+
+		response.add(new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				pendingResponses.remove(future);
+				if (timeout != null) {
+					timeout.cancel(false);
+				}
+
+				// Copy the result or the cause
+				Object[] copies;
+				try {
+					copies = copy(future.attachment(), future.cause());
+				} catch (Exception e) {
+					copies = new Object[] { null, e };
+				}
+				invocation.complete(copies[0], (Throwable) copies[1]);
+			}
+		});
+
+		/*
+		 * If the invocation fails locally (timeout, interruption...) the
+		 * response fails too, which cancels the invocation on the peer.
+		 */
+		invocation.add(new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				if (future.isFailed()) {
+					response.fail(new CancellationException("The request "
+							+ "was cancelled by the remote side"));
+				}
+			}
+		});
+
+		peer.receive(message, response);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.foxnet.rmi.InvokerManager#lookupInvoker(java.lang.String)
+	 */
+	@Override
+	public Invoker lookupInvoker(String name) throws LookupException {
+		StaticBinding binding = peer.staticReg().get(name);
+		if (binding == null) {
+			throw new LookupException(new IllegalArgumentException(
+					"Unknown target argument"));
+		}
+		return new Invoker(this, new RemoteBinding(new RemoteObject(binding),
+				false));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.foxnet.rmi.InvokerManager#lookupNames()
+	 */
+	@Override
+	public String[] lookupNames() throws LookupException {
+		return peer.staticReg().names();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.foxnet.rmi.InvokerManager#close()
+	 */
+	@Override
+	public Future close() {
+		closeFuture().complete(null, null);
+		peer.closeFuture().complete(null, null);
+		return closeFuture();
+	}
+}
@@ -34,9 +34,14 @@ package com.foxnet.rmi.transport.network;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.bootstrap.ServerBootstrap;
@@ -58,12 +63,24 @@ import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.jboss.netty.handler.codec.serialization.ClassResolvers;
 import org.jboss.netty.handler.codec.serialization.ObjectDecoder;
 import org.jboss.netty.handler.codec.serialization.ObjectEncoder;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
 import org.jboss.netty.util.internal.ExecutorUtil;
 
+import com.foxnet.rmi.InvocationScheduler;
 import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.binding.LocalBinding;
+import com.foxnet.rmi.binding.RemoteObject;
+import com.foxnet.rmi.binding.StaticBinding;
+import com.foxnet.rmi.binding.registry.DynamicRegistry;
+import com.foxnet.rmi.binding.registry.ExportTable;
+import com.foxnet.rmi.binding.registry.Registry;
+import com.foxnet.rmi.binding.registry.RegistryObserver;
 import com.foxnet.rmi.binding.registry.StaticRegistry;
+import com.foxnet.rmi.transport.network.handler.coalescing.CoalescingHandler;
 import com.foxnet.rmi.transport.network.handler.invocation.InvokerHandler;
 import com.foxnet.rmi.transport.network.handler.lookup.LookupHandler;
+import com.foxnet.rmi.transport.network.handler.lookup.RegistryUpdate;
 import com.foxnet.rmi.transport.network.handler.reqres.ReqResHandler;
 import com.foxnet.rmi.transport.network.handler.setup.SetupHandler;
 
@@ -72,6 +89,19 @@ import com.foxnet.rmi.transport.network.handler.setup.SetupHandler;
  */
 public final class ConnectionManager implements ChannelPipelineFactory {
 
+	/**
+	 * The default timeout of requests which do not specify a timeout. Such
+	 * requests expire after this time if no thread waits for them, requests
+	 * which are synchronized wait without a limit.
+	 */
+	public static final long DEFAULT_REQUEST_TIMEOUT = 5 * 60 * 1000;
+
+	/**
+	 * The initial buffer size of an encoded message. Most messages are small,
+	 * the buffer grows if needed.
+	 */
+	public static final int ENCODER_ESTIMATED_LENGTH = 512;
+
 	/**
 	 * @param channel
 	 *            The channel.
@@ -118,6 +148,34 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 		}
 	}
 
+	/*
+	 * Pushes the changes of the static registry to all connected channels, so
+	 * the remote sides can update their cached lookups.
+	 */
+	private final class RegistryPublisher implements RegistryObserver {
+
+		private void publish(RegistryUpdate update) {
+			for (Channel channel : channels) {
+				if (!(channel instanceof ServerChannel) && channel.isConnected()) {
+					channel.write(update);
+				}
+			}
+		}
+
+		@Override
+		public void bound(Registry<?> registry, LocalBinding binding)
+				throws Exception {
+			publish(new RegistryUpdate(((StaticBinding) binding).name(),
+					new RemoteObject(binding)));
+		}
+
+		@Override
+		public void unbound(Registry<?> registry, LocalBinding binding)
+				throws Exception {
+			publish(new RegistryUpdate(((StaticBinding) binding).name(), null));
+		}
+	}
+
 	// The bootstraps of this connection manager
 	private final ServerBootstrap serverBootstrap;
 	private final ClientBootstrap clientBootstrap;
@@ -128,14 +186,26 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 	// Used to bind targets statically
 	private final StaticRegistry staticRegistry = new StaticRegistry();
 
-	// Cached network executor
-	private final Executor networkExecutor = Executors.newCachedThreadPool();
+	// Used to share dynamic bindings between channels
+	private final ExportTable exportTable = new ExportTable();
+
+	// The network threads of this connection manager
+	private final NetworkResources networkResources;
+
+	// Whether or not the network resources are released when disposed
+	private final boolean ownsNetworkResources;
 
 	// The channel factories which are used to create channels
 	private final ChannelFactory serverChannelFactory, clientChannelFactory;
 
 	// Used to invoke methods
-	private final Executor methodInvocator;
+	private final ExecutorService methodInvocator;
+
+	// The executors which are assigned to new channels
+	private final ExecutorService[] channelInvocators;
+
+	// Used to assign schedulers to channels round robin
+	private final AtomicInteger nextChannelInvocator = new AtomicInteger();
 
 	// Used to limit thread usage
 	private final ThreadUsage threadUsage;
@@ -146,6 +216,27 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 	// The disposed flag
 	private final AtomicBoolean disposed = new AtomicBoolean(false);
 
+	// Used to expire pending requests of all channels
+	private final Timer timer = new HashedWheelTimer(100, TimeUnit.MILLISECONDS);
+
+	// The timeout of requests which do not specify a timeout
+	private volatile long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+	// The lease duration of the dynamic bindings of new channels
+	private volatile long leaseDuration = DynamicRegistry.DEFAULT_LEASE_DURATION;
+
+	// Whether or not new clients request a snapshot of the remote registry
+	private volatile boolean lookupSnapshot;
+
+	// Whether or not new channels coalesce their writes
+	private volatile boolean writeCoalescing = true;
+
+	// Whether or not new channels use direct buffers
+	private volatile boolean directBuffers;
+
+	// The write buffer water marks of new channels (<= 0 means not used)
+	private volatile int writeBufferHighWaterMark, writeBufferLowWaterMark;
+
 	public ConnectionManager(boolean serversOnly) {
 		this(null, serversOnly, !serversOnly);
 	}
@@ -156,6 +247,26 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 
 	public ConnectionManager(ThreadUsage threadUsage, boolean supportServers,
 			boolean supportClients) {
+		this(threadUsage, null, supportServers, supportClients);
+	}
+
+	/**
+	 * Creates a new connection manager.
+	 * 
+	 * @param threadUsage
+	 *            The thread usage or null.
+	 * @param networkResources
+	 *            The network resources which are shared with other connection
+	 *            managers or null to create own resources using the network
+	 *            threads of the thread usage.
+	 * @param supportServers
+	 *            Whether or not servers are supported.
+	 * @param supportClients
+	 *            Whether or not clients are supported.
+	 */
+	public ConnectionManager(ThreadUsage threadUsage,
+			NetworkResources networkResources, boolean supportServers,
+			boolean supportClients) {
 
 		if (!supportServers && !supportClients) {
 			throw new IllegalArgumentException("You must provide "
@@ -170,17 +281,49 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 		// Save the thread usage
 		this.threadUsage = threadUsage;
 
-		// The default method executor
-		methodInvocator = Executors
-				.newFixedThreadPool(threadUsage.invocationThreads);
+		// Create own network resources if not shared
+		ownsNetworkResources = networkResources == null;
+		if (ownsNetworkResources) {
+			networkResources = new NetworkResources(threadUsage.networkThreads);
+		} else if (networkResources.isReleased()) {
+			throw new IllegalArgumentException("The network resources are "
+					+ "already released");
+		}
+		this.networkResources = networkResources;
+
+		// Keep the cached lookups of the remote sides up to date
+		staticRegistry.addObserver(new RegistryPublisher());
+
+		switch (threadUsage.executionMode) {
+		case CONNECTION_AFFINE:
+			// One single-threaded scheduler per invocation thread
+			channelInvocators = new ExecutorService[threadUsage.invocationThreads];
+			for (int i = 0; i < channelInvocators.length; i++) {
+				channelInvocators[i] = new InvocationScheduler(1);
+			}
+			methodInvocator = channelInvocators[0];
+			break;
+		case WORK_STEALING:
+			// Work stealing pool in async (FIFO) mode
+			methodInvocator = new ForkJoinPool(threadUsage.invocationThreads,
+					ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+			channelInvocators = new ExecutorService[] { methodInvocator };
+			break;
+		default:
+			// The default method executor
+			methodInvocator = new InvocationScheduler(
+					threadUsage.invocationThreads);
+			channelInvocators = new ExecutorService[] { methodInvocator };
+			break;
+		}
 
 		// If this manager should handle servers
 		if (supportServers) {
 
 			// Create the channel factoriy
 			serverChannelFactory = new NioServerSocketChannelFactory(
-					networkExecutor, networkExecutor,
-					threadUsage.networkThreads);
+					networkResources.bossExecutor(),
+					networkResources.workerPool());
 
 			// Create the bootstrap
 			serverBootstrap = new ServerBootstrap(serverChannelFactory);
@@ -199,8 +342,8 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 		if (supportClients) {
 			// Create the channel factoriy
 			clientChannelFactory = new NioClientSocketChannelFactory(
-					networkExecutor, networkExecutor,
-					threadUsage.networkThreads);
+					networkResources.bossExecutor(), 1,
+					networkResources.workerPool(), timer);
 
 			// Create the bootstrap
 			clientBootstrap = new ClientBootstrap(clientChannelFactory);
@@ -233,6 +376,16 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 		return openClient(new InetSocketAddress(host, port));
 	}
 
+	/**
+	 * Connects to a server. The NIO transport of Netty 3 only supports
+	 * internet addresses, the returned future fails for other addresses like
+	 * unix domain socket addresses. Processes on the same host can use the
+	 * shared memory transport instead.
+	 * 
+	 * @param socketAddress
+	 *            The address of the server.
+	 * @return the connect future.
+	 */
 	public ChannelFuture openClientAsync(SocketAddress socketAddress) {
 		if (!isSupportingClients()) {
 			throw new IllegalStateException("This connection manager "
@@ -247,6 +400,14 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 		return openServer(new InetSocketAddress(port));
 	}
 
+	/**
+	 * Opens a server. Only internet addresses are supported, see
+	 * {@link #openClientAsync(SocketAddress)}.
+	 * 
+	 * @param socketAddress
+	 *            The local address of the server.
+	 * @return the server channel.
+	 */
 	public ServerChannel openServer(SocketAddress socketAddress) {
 		if (!isSupportingServers()) {
 			throw new IllegalStateException("This connection manager "
@@ -283,6 +444,11 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 		// }
 		// });
 
+		// Coalesce the writes of concurrent invocations
+		if (writeCoalescing) {
+			channelPipeline.addLast("coalescer", new CoalescingHandler());
+		}
+
 		// Used to identify the channel
 		channelPipeline.addLast("id_handler", identificationHandler);
 
@@ -301,7 +467,8 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 								.getContextClassLoader())));
 
 		// Use the default encoder
-		channelPipeline.addLast("obj_encoder", new ObjectEncoder(0xFFFF));
+		channelPipeline.addLast("obj_encoder", new ObjectEncoder(
+				ENCODER_ESTIMATED_LENGTH));
 
 		// The request response handler
 		channelPipeline.addLast("reqres", ReqResHandler.INSTANCE);
@@ -328,13 +495,59 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 	}
 
 	public Executor networkExecutor() {
-		return networkExecutor;
+		return networkResources.bossExecutor();
+	}
+
+	/**
+	 * @return the network resources of this connection manager.
+	 */
+	public NetworkResources networkResources() {
+		return networkResources;
 	}
 
 	public Executor methodInvocator() {
 		return methodInvocator;
 	}
 
+	/**
+	 * @return the scheduler which executes invocations and controls the
+	 *         admission of new invocations. In connection affine mode this is
+	 *         the scheduler of the first channel, in work stealing mode there
+	 *         is no scheduler and null is returned.
+	 */
+	public InvocationScheduler invocationScheduler() {
+		return methodInvocator instanceof InvocationScheduler ? (InvocationScheduler) methodInvocator
+				: null;
+	}
+
+	/**
+	 * @return all schedulers of this connection manager. In connection affine
+	 *         mode there is one scheduler per invocation thread, in work
+	 *         stealing mode there are none, otherwise this array contains only
+	 *         the shared scheduler.
+	 */
+	public InvocationScheduler[] invocationSchedulers() {
+		List<InvocationScheduler> schedulers = new ArrayList<>();
+		for (ExecutorService executor : channelInvocators) {
+			if (executor instanceof InvocationScheduler) {
+				schedulers.add((InvocationScheduler) executor);
+			}
+		}
+		return schedulers.toArray(new InvocationScheduler[schedulers.size()]);
+	}
+
+	/**
+	 * Returns the executor for the incoming invocations of a new channel. In
+	 * connection affine mode the schedulers are assigned round robin,
+	 * otherwise all channels share the same executor.
+	 * 
+	 * @return the executor of a new channel.
+	 */
+	public Executor nextMethodInvocator() {
+		return channelInvocators[(nextChannelInvocator.getAndIncrement() & Integer.MAX_VALUE)
+				% channelInvocators.length];
+	}
+
 	public ChannelGroup channels() {
 		return channels;
 	}
@@ -343,6 +556,144 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 		return staticRegistry;
 	}
 
+	/**
+	 * @return the export table which shares the dynamic bindings of all
+	 *         channels.
+	 */
+	public ExportTable exportTable() {
+		return exportTable;
+	}
+
+	public Timer timer() {
+		return timer;
+	}
+
+	public long requestTimeout() {
+		return requestTimeout;
+	}
+
+	public long leaseDuration() {
+		return leaseDuration;
+	}
+
+	/**
+	 * Sets the lease duration of the dynamic bindings of new channels. The
+	 * remote side renews the leases of the bindings it still references, so
+	 * both sides should use the same duration. Bindings whose proxies are
+	 * garbage collected on the remote side are released earlier.
+	 * 
+	 * @param leaseDuration
+	 *            The new lease duration in milliseconds. A value <= 0 means
+	 *            that bindings are only removed when they are released or
+	 *            the channel is closed.
+	 * @return this for chaining.
+	 */
+	public ConnectionManager leaseDuration(long leaseDuration) {
+		this.leaseDuration = leaseDuration;
+		return this;
+	}
+
+	public boolean isLookupSnapshot() {
+		return lookupSnapshot;
+	}
+
+	/**
+	 * Sets whether or not new clients request a snapshot of the remote static
+	 * registry when connected. If activated, lookups are served from the
+	 * snapshot which is kept up to date by the registry updates of the remote
+	 * side.
+	 * 
+	 * @param lookupSnapshot
+	 *            The lookup snapshot flag.
+	 * @return this for chaining.
+	 */
+	public ConnectionManager lookupSnapshot(boolean lookupSnapshot) {
+		this.lookupSnapshot = lookupSnapshot;
+		return this;
+	}
+
+	public boolean isWriteCoalescing() {
+		return writeCoalescing;
+	}
+
+	/**
+	 * Sets whether or not new channels coalesce their writes. If activated,
+	 * writes which are requested while another write of the same channel is
+	 * in progress are gathered and written at once.
+	 * 
+	 * @param writeCoalescing
+	 *            The write coalescing flag.
+	 * @return this for chaining.
+	 */
+	public ConnectionManager writeCoalescing(boolean writeCoalescing) {
+		this.writeCoalescing = writeCoalescing;
+		return this;
+	}
+
+	public boolean isDirectBuffers() {
+		return directBuffers;
+	}
+
+	/**
+	 * Sets whether or not new channels use direct buffers. Direct buffers are
+	 * sliced from preallocated chunks and are written to the socket without
+	 * copying them into the send buffer pool first.
+	 * 
+	 * @param directBuffers
+	 *            The direct buffers flag.
+	 * @return this for chaining.
+	 */
+	public ConnectionManager directBuffers(boolean directBuffers) {
+		this.directBuffers = directBuffers;
+		return this;
+	}
+
+	public int writeBufferHighWaterMark() {
+		return writeBufferHighWaterMark;
+	}
+
+	public int writeBufferLowWaterMark() {
+		return writeBufferLowWaterMark;
+	}
+
+	/**
+	 * Sets the write buffer water marks of new channels. If the amount of
+	 * queued outgoing bytes of a channel exceeds the high water mark, new
+	 * invocations are held back according to the overflow policy of the
+	 * invoker manager until the amount drops below the low water mark.
+	 * 
+	 * @param lowWaterMark
+	 *            The low water mark in bytes.
+	 * @param highWaterMark
+	 *            The high water mark in bytes. A value <= 0 means that
+	 *            invocations are never held back because of queued bytes.
+	 * @return this for chaining.
+	 */
+	public ConnectionManager writeBufferWaterMarks(int lowWaterMark,
+			int highWaterMark) {
+		if (highWaterMark > 0 && lowWaterMark > highWaterMark) {
+			throw new IllegalArgumentException("lowWaterMark must be "
+					+ "<= highWaterMark");
+		}
+		writeBufferLowWaterMark = lowWaterMark;
+		writeBufferHighWaterMark = highWaterMark;
+		return this;
+	}
+
+	/**
+	 * Sets the timeout of requests which do not specify a timeout. Such
+	 * requests expire after this time if no thread waits for them.
+	 * 
+	 * @param requestTimeout
+	 *            The new request timeout in milliseconds. A value <= 0 means
+	 *            that requests without a timeout never expire.
+	 * @return this for chaining.
+	 */
+	public ConnectionManager requestTimeout(long requestTimeout) {
+		this.requestTimeout = requestTimeout;
+		return this;
+	}
+
 	public boolean isDisposed() {
 		return disposed.get();
 	}
@@ -357,13 +708,16 @@ public final class ConnectionManager implements ChannelPipelineFactory {
 			channels.close().awaitUninterruptibly();
 
 			// Release resources
-			ExecutorUtil.terminate(methodInvocator);
-
-			if (isSupportingServers()) {
-				serverBootstrap.releaseExternalResources();
-			}
-			if (isSupportingClients()) {
-				clientBootstrap.releaseExternalResources();
+			ExecutorUtil.terminate(channelInvocators);
+			timer.stop();
+
+			/*
+			 * Shared network resources are released by their owner. The
+			 * bootstraps are not released, since this would terminate the
+			 * shared boss executor.
+			 */
+			if (ownsNetworkResources) {
+				networkResources.release();
 			}
 		}
 		return this;
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.transport.network;
+
+/**
+ * The execution mode determines which threads of a connection manager execute
+ * the incoming invocations of its channels.
+ * 
+ * @author Christopher Probst
+ */
+public enum ExecutionMode {
+
+	/**
+	 * All channels share one invocation scheduler with the configured number
+	 * of invocation threads.
+	 */
+	SCHEDULED,
+
+	/**
+	 * Every channel is pinned to one of the configured number of
+	 * single-threaded invocation schedulers (usually one per core). The
+	 * invocations and responses of a channel are always processed by the same
+	 * thread, which avoids cross-core traffic for many small calls. An
+	 * invocation must not wait synchronously for an invocation of another
+	 * channel on the same thread.
+	 */
+	CONNECTION_AFFINE,
+
+	/**
+	 * All channels share a work stealing pool with the configured number of
+	 * invocation threads, so there is no single queue which all threads
+	 * contend on. Ordered executions are still executed in order. This mode
+	 * has no admission control, no shedding and no priority or fair
+	 * scheduling.
+	 */
+	WORK_STEALING
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.transport.network;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.netty.channel.socket.nio.NioWorker;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+import org.jboss.netty.channel.socket.nio.ShareableWorkerPool;
+import org.jboss.netty.channel.socket.nio.WorkerPool;
+import org.jboss.netty.util.internal.ExecutorUtil;
+
+/**
+ * The threads and selectors of the network transport. Every connection
+ * manager creates its own resources by default. To share the network threads
+ * between many connection managers, create the resources once and pass them
+ * to each connection manager. Shared resources are not released when a
+ * connection manager is disposed, so {@link #release()} must be called when
+ * all connection managers are disposed.
+ * 
+ * @author Christopher Probst
+ */
+public final class NetworkResources {
+
+	// The executor of the boss and worker threads
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	// The selector loops which handle the I/O of the channels
+	private final ShareableWorkerPool<NioWorker> workerPool;
+
+	// The released flag
+	private final AtomicBoolean released = new AtomicBoolean();
+
+	/**
+	 * Creates new network resources.
+	 * 
+	 * @param workerThreads
+	 *            The number of worker threads (selector loops).
+	 */
+	public NetworkResources(int workerThreads) {
+		if (workerThreads < 1) {
+			throw new IllegalArgumentException("workerThreads must be > 0");
+		}
+		workerPool = new ShareableWorkerPool<>(new NioWorkerPool(executor,
+				workerThreads));
+	}
+
+	/**
+	 * @return the executor of the boss threads.
+	 */
+	public Executor bossExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @return the worker pool which is shared by all channels.
+	 */
+	public WorkerPool<NioWorker> workerPool() {
+		return workerPool;
+	}
+
+	public boolean isReleased() {
+		return released.get();
+	}
+
+	/**
+	 * Stops the worker threads. All channels which use these resources must
+	 * be closed.
+	 */
+	public void release() {
+		if (!released.getAndSet(true)) {
+			workerPool.destroy();
+			ExecutorUtil.terminate(executor);
+		}
+	}
+}
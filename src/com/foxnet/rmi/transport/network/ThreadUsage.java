@@ -50,14 +50,24 @@ public final class ThreadUsage implements Serializable {
 
 	public final int networkThreads, invocationThreads;
 
+	public final ExecutionMode executionMode;
+
 	public ThreadUsage(int networkThreads, int invocationThreads) {
+		this(networkThreads, invocationThreads, ExecutionMode.SCHEDULED);
+	}
+
+	public ThreadUsage(int networkThreads, int invocationThreads,
+			ExecutionMode executionMode) {
 		if (networkThreads < 1) {
 			throw new IllegalArgumentException("networkThreads must be > 0");
 		} else if (invocationThreads < 1) {
 			throw new IllegalArgumentException("invocationThreads must be > 0");
+		} else if (executionMode == null) {
+			throw new NullPointerException("executionMode");
 		}
 
 		this.networkThreads = networkThreads;
 		this.invocationThreads = invocationThreads;
+		this.executionMode = executionMode;
 	}
 }
@@ -0,0 +1,134 @@
+package com.foxnet.rmi.transport.network.handler.coalescing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+
+/**
+ * Coalesces the encoded writes of a channel. If the channel is idle, a write
+ * is passed through immediately. Writes which are requested while a write is
+ * in progress (e.g. responses of concurrently completing invocations) are
+ * gathered and written as one gathering composite buffer when the write in
+ * progress is finished, which saves syscalls without adding latency.
+ * 
+ * @author Christopher Probst
+ * 
+ */
+public final class CoalescingHandler extends SimpleChannelDownstreamHandler {
+
+	/**
+	 * The maximum number of gathered bytes. If exceeded the gathered writes
+	 * are written immediately, so the write buffer water marks of the channel
+	 * are still effective.
+	 */
+	public static final int MAX_GATHERED_BYTES = 0xFFFF;
+
+	private final Object lock = new Object();
+
+	// The gathered writes (guarded by lock)
+	private List<MessageEvent> gathered = new ArrayList<>();
+
+	// The number of gathered bytes (guarded by lock)
+	private int gatheredBytes;
+
+	// The number of writes in progress (guarded by lock)
+	private int writing;
+
+	private List<MessageEvent> takeGathered() {
+		List<MessageEvent> batch = gathered;
+		gathered = new ArrayList<>();
+		gatheredBytes = 0;
+		return batch;
+	}
+
+	private void write(final ChannelHandlerContext ctx,
+			final List<MessageEvent> batch) {
+
+		ChannelBuffer buffer;
+		if (batch.size() == 1) {
+			buffer = (ChannelBuffer) batch.get(0).getMessage();
+		} else {
+			ChannelBuffer[] buffers = new ChannelBuffer[batch.size()];
+			for (int i = 0; i < buffers.length; i++) {
+				buffers[i] = (ChannelBuffer) batch.get(i).getMessage();
+			}
+			// Let the NIO worker write the components with one gathering write
+			buffer = ChannelBuffers.wrappedBuffer(true, buffers);
+		}
+
+		ChannelFuture future = Channels.future(ctx.getChannel());
+		future.addListener(new ChannelFutureListener() {
+
+			@Override
+			public void operationComplete(ChannelFuture future)
+					throws Exception {
+
+				// Notify the futures of the gathered writes
+				for (MessageEvent e : batch) {
+					if (future.isSuccess()) {
+						e.getFuture().setSuccess();
+					} else {
+						e.getFuture().setFailure(future.getCause());
+					}
+				}
+
+				// Write the writes which were gathered meanwhile
+				List<MessageEvent> next = null;
+				synchronized (lock) {
+					if (!gathered.isEmpty()) {
+						next = takeGathered();
+					} else {
+						writing--;
+					}
+				}
+
+				if (next != null) {
+					write(ctx, next);
+				}
+			}
+		});
+
+		Channels.write(ctx, future, buffer);
+	}
+
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e)
+			throws Exception {
+
+		if (!(e.getMessage() instanceof ChannelBuffer)) {
+			super.writeRequested(ctx, e);
+			return;
+		}
+
+		List<MessageEvent> batch;
+		synchronized (lock) {
+			if (writing == 0) {
+				// Idle channel, write immediately
+				batch = new ArrayList<>(1);
+				batch.add(e);
+			} else {
+				gathered.add(e);
+				gatheredBytes += ((ChannelBuffer) e.getMessage())
+						.readableBytes();
+
+				// Wait for the write in progress
+				if (gatheredBytes < MAX_GATHERED_BYTES) {
+					return;
+				}
+
+				batch = takeGathered();
+			}
+			writing++;
+		}
+
+		write(ctx, batch);
+	}
+}
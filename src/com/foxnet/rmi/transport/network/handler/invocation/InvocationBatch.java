@@ -0,0 +1,29 @@
+package com.foxnet.rmi.transport.network.handler.invocation;
+
+import java.io.Serializable;
+
+import com.foxnet.rmi.InvocationMessage;
+
+/**
+ * A burst of one-way invocation messages which is written as one frame.
+ * 
+ * @author Christopher Probst
+ * 
+ */
+final class InvocationBatch implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final InvocationMessage[] messages;
+
+	public InvocationBatch(InvocationMessage[] messages) {
+		this.messages = messages;
+	}
+
+	public InvocationMessage[] getMessages() {
+		return messages;
+	}
+}
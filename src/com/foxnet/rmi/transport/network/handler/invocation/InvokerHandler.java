@@ -11,6 +11,7 @@ import org.jboss.netty.channel.SimpleChannelHandler;
 import com.foxnet.rmi.InvocationMessage;
 import com.foxnet.rmi.InvokerManager;
 import com.foxnet.rmi.transport.network.ConnectionManager;
+import com.foxnet.rmi.transport.network.handler.lookup.RegistryUpdate;
 import com.foxnet.rmi.util.concurrent.Future;
 import com.foxnet.rmi.util.concurrent.Request;
 
@@ -21,17 +22,36 @@ public class InvokerHandler extends SimpleChannelHandler {
 	public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e)
 			throws Exception {
 		final Channel c = ctx.getChannel();
-		ctx.setAttachment(new NetworkInvokerManager(ConnectionManager.of(c)
-				.staticReg(), c));
+		ctx.setAttachment(new NetworkInvokerManager(ConnectionManager.of(c),
+				c));
 
 		super.channelOpen(ctx, e);
 	}
 
+	@Override
+	public void channelConnected(ChannelHandlerContext ctx,
+			ChannelStateEvent e) throws Exception {
+		// Clients request the registry snapshot if configured
+		if (ctx.getChannel().getParent() == null
+				&& ConnectionManager.of(ctx.getChannel()).isLookupSnapshot()) {
+			((NetworkInvokerManager) ctx.getAttachment()).requestSnapshot();
+		}
+
+		super.channelConnected(ctx, e);
+	}
+
 	public static InvokerManager of(Channel channel) {
 		return (InvokerManager) channel.getPipeline()
 				.getContext(InvokerHandler.class).getAttachment();
 	}
 
+	@Override
+	public void channelInterestChanged(ChannelHandlerContext ctx,
+			ChannelStateEvent e) throws Exception {
+		((NetworkInvokerManager) ctx.getAttachment()).channelInterestChanged();
+		super.channelInterestChanged(ctx, e);
+	}
+
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e)
 			throws Exception {
@@ -57,6 +77,29 @@ public class InvokerHandler extends SimpleChannelHandler {
 		} else if (e.getMessage() instanceof InvocationMessage) {
 			// Async invocation
 			im = (InvocationMessage) e.getMessage();
+		} else if (e.getMessage() instanceof InvocationBatch) {
+			// Burst of async invocations
+			NetworkInvokerManager fac = (NetworkInvokerManager) ctx
+					.getAttachment();
+			for (InvocationMessage message : ((InvocationBatch) e.getMessage())
+					.getMessages()) {
+				fac.handleInvocation(message, fac.methodInvocator(), null);
+			}
+			return;
+		} else if (e.getMessage() instanceof LeaseMessage) {
+			// Release and renew our dynamic bindings
+			LeaseMessage lm = (LeaseMessage) e.getMessage();
+			NetworkInvokerManager fac = (NetworkInvokerManager) ctx
+					.getAttachment();
+			fac.remoteLeaseDuration(lm.getLeaseDuration());
+			fac.dynamicReg().release(lm.getReleasedIds())
+					.renew(lm.getRenewedIds());
+			return;
+		} else if (e.getMessage() instanceof RegistryUpdate) {
+			// Update the cached lookups
+			((NetworkInvokerManager) ctx.getAttachment())
+					.registryUpdated((RegistryUpdate) e.getMessage());
+			return;
 		}
 
 		if (im != null) {
@@ -66,7 +109,7 @@ public class InvokerHandler extends SimpleChannelHandler {
 			if (cm != null) {
 
 				// Do invocation
-				fac.handleInvocation(im, cm.methodInvocator(), fut);
+				fac.handleInvocation(im, fac.methodInvocator(), fut);
 			}
 		} else {
 
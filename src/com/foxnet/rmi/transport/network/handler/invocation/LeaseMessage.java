@@ -0,0 +1,42 @@
+package com.foxnet.rmi.transport.network.handler.invocation;
+
+import java.io.Serializable;
+
+/**
+ * Tells the remote side which of its dynamic bindings are released and which
+ * are still referenced. The lease duration of the sender tells the remote side
+ * how often it must renew the bindings of the sender.
+ * 
+ * @author Christopher Probst
+ * 
+ */
+final class LeaseMessage implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final long[] releasedIds;
+	private final long[] renewedIds;
+	private final long leaseDuration;
+
+	public LeaseMessage(long[] releasedIds, long[] renewedIds,
+			long leaseDuration) {
+		this.releasedIds = releasedIds;
+		this.renewedIds = renewedIds;
+		this.leaseDuration = leaseDuration;
+	}
+
+	public long[] getReleasedIds() {
+		return releasedIds;
+	}
+
+	public long[] getRenewedIds() {
+		return renewedIds;
+	}
+
+	public long getLeaseDuration() {
+		return leaseDuration;
+	}
+}
@@ -1,28 +1,159 @@
 package com.foxnet.rmi.transport.network.handler.invocation;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
 
 import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.InvocationMessage;
 import com.foxnet.rmi.Invoker;
 import com.foxnet.rmi.InvokerManager;
 import com.foxnet.rmi.LookupException;
 import com.foxnet.rmi.binding.RemoteBinding;
 import com.foxnet.rmi.binding.RemoteObject;
-import com.foxnet.rmi.binding.registry.StaticRegistry;
+import com.foxnet.rmi.transport.network.ConnectionManager;
 import com.foxnet.rmi.transport.network.handler.lookup.LookupHandler;
+import com.foxnet.rmi.transport.network.handler.lookup.RegistryUpdate;
 import com.foxnet.rmi.util.concurrent.Future;
 import com.foxnet.rmi.util.concurrent.FutureCallback;
 import com.foxnet.rmi.util.concurrent.Request;
+import com.foxnet.rmi.util.iteration.GlobFilter;
 
 final class NetworkInvokerManager extends InvokerManager {
 
+	private static final Logger LOGGER = Logger
+			.getLogger(NetworkInvokerManager.class.getName());
+
+	// The maximum number of one-way messages which are written as one frame
+	private static final int MAX_BATCH_SIZE = 1024;
+
+	// The maximum number of queued one-way messages
+	private static final int LANE_CAPACITY = 16 * MAX_BATCH_SIZE;
+
+	// The interval of sending released remote objects in milliseconds
+	private static final long RELEASE_INTERVAL = 1000;
+
+	private final ConnectionManager connectionManager;
 	private final Channel channel;
+	private final Executor methodInvocator;
+
+	// The queued one-way messages
+	private final Queue<InvocationMessage> oneWayLane = new ConcurrentLinkedQueue<>();
+
+	// The number of queued one-way messages and waiting producers
+	private final AtomicInteger laneSize = new AtomicInteger();
+
+	// Whether or not a frame of one-way messages is being written
+	private final AtomicBoolean draining = new AtomicBoolean();
+
+	// Logs the one-way frames which could not be written
+	private static final ChannelFutureListener FRAME_LISTENER = new ChannelFutureListener() {
+
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			if (!future.isSuccess()) {
+				LOGGER.warning("Failed to write one-way messages. Reason: "
+						+ future.getCause());
+			}
+		}
+	};
+
+	// Orders the writes of one-way frames and invocations
+	private final Object writeLock = new Object();
+
+	// Writes the next frame when the previous frame is written
+	private final ChannelFutureListener drainListener = new ChannelFutureListener() {
+
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			draining.set(false);
+			drainOneWayLane();
+		}
+	};
+
+	// The cached lookups of the remote static registry
+	private final ConcurrentMap<String, RemoteObject> lookupCache =
+			new ConcurrentHashMap<>();
+
+	// Counts the received registry updates to detect outdated lookups
+	private final AtomicLong registryUpdates = new AtomicLong();
 
-	public NetworkInvokerManager(StaticRegistry staticRegistry, Channel channel) {
-		super(staticRegistry);
+	// Whether or not the cache contains the whole remote static registry
+	private volatile boolean lookupCacheComplete;
+
+	// The snapshot request of the remote static registry or null
+	private volatile Request snapshot;
+
+	// The time of the last lease renewal
+	private long lastRenewal;
+
+	// Whether or not the lease duration was sent to the remote side
+	private boolean leaseDurationSent;
+
+	// Releases collected remote objects and renews the leases periodically
+	private final TimerTask leaseTask = new TimerTask() {
+
+		@Override
+		public void run(Timeout timeout) throws Exception {
+			if (!channel.isOpen() || connectionManager.isDisposed()) {
+				return;
+			}
+
+			long[] released = pollReleasedRemotes(), renewed = new long[0];
+
+			long now = System.currentTimeMillis();
+			if (now - lastRenewal >= renewalInterval()) {
+				renewed = referencedRemotes();
+				lastRenewal = now;
+
+				// Remove the bindings which the remote side did not renew
+				dynamicReg().unbindExpired();
+			}
+
+			// The first message tells the remote side our lease duration
+			if (channel.isConnected()
+					&& (!leaseDurationSent || released.length
+							+ renewed.length > 0)) {
+				channel.write(new LeaseMessage(released, renewed,
+						dynamicReg().leaseDuration()));
+				leaseDurationSent = true;
+			}
+
+			connectionManager.timer().newTimeout(this, RELEASE_INTERVAL,
+					TimeUnit.MILLISECONDS);
+		}
+	};
+
+	public NetworkInvokerManager(ConnectionManager connectionManager,
+			Channel channel) {
+		super(connectionManager.staticReg(), connectionManager
+				.exportTable());
+		this.connectionManager = connectionManager;
 		this.channel = channel;
+		methodInvocator = connectionManager.nextMethodInvocator();
+
+		// Use the lease duration of the connection manager
+		dynamicReg().leaseDuration(connectionManager.leaseDuration());
+		lastRenewal = System.currentTimeMillis();
+		connectionManager.timer().newTimeout(leaseTask, RELEASE_INTERVAL,
+				TimeUnit.MILLISECONDS);
 
 		channel.getCloseFuture().addListener(new ChannelFutureListener() {
 
@@ -34,15 +165,187 @@ final class NetworkInvokerManager extends InvokerManager {
 		});
 	}
 
+	void requestSnapshot() {
+		// Resolve all names at once, later lookups are served locally
+		Request req = LookupHandler.newLookupMatching(null);
+		cacheLookup(req, null, true);
+		snapshot = req;
+		channel.write(req);
+	}
+
+	void registryUpdated(RegistryUpdate update) {
+		/*
+		 * Updates are received by the I/O thread like the lookup responses, so
+		 * counting them here tells a lookup whether its response is outdated.
+		 */
+		registryUpdates.incrementAndGet();
+
+		if (update.remoteObject() != null) {
+			lookupCache.put(update.name(), update.remoteObject());
+		} else {
+			lookupCache.remove(update.name());
+		}
+	}
+
+	private void cacheLookup(Request req, final String name,
+			final boolean complete) {
+		final long updates = registryUpdates.get();
+
+		req.add(new FutureCallback() {
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public void completed(Future future) throws Exception {
+				// A registry update received meanwhile might be newer
+				if (!future.isSuccessful() || registryUpdates.get() != updates) {
+					return;
+				}
+
+				if (name != null) {
+					lookupCache.put(name, (RemoteObject) future.attachment());
+				} else {
+					lookupCache.putAll((Map<String, RemoteObject>) future
+							.attachment());
+					if (complete) {
+						lookupCacheComplete = true;
+					}
+				}
+			}
+		});
+	}
+
+	private void awaitSnapshot() {
+		Request req = snapshot;
+		if (req != null) {
+			req.synchronize();
+		}
+	}
+
+	private Map<String, Invoker> invokers(Map<String, RemoteObject> objects) {
+		Map<String, Invoker> invokers = new LinkedHashMap<>();
+		for (Map.Entry<String, RemoteObject> entry : objects.entrySet()) {
+			invokers.put(entry.getKey(), new Invoker(this, new RemoteBinding(
+					entry.getValue(), false)));
+		}
+		return invokers;
+	}
+
+	Executor methodInvocator() {
+		// The executor of the incoming invocations of this channel
+		return methodInvocator;
+	}
+
+	void channelInterestChanged() {
+		// The channel might be writable again
+		resumeInvocations();
+	}
+
+	@Override
+	protected boolean isWritable() {
+		return connectionManager.writeBufferHighWaterMark() <= 0
+				|| channel.isWritable();
+	}
+
+	private ChannelFuture writeOneWayFrame() {
+		List<InvocationMessage> batch = new ArrayList<>();
+		InvocationMessage message;
+		while (batch.size() < MAX_BATCH_SIZE
+				&& (message = oneWayLane.poll()) != null) {
+			batch.add(message);
+		}
+
+		if (batch.isEmpty()) {
+			return null;
+		}
+
+		// Wake up the producers which wait for space
+		if (laneSize.addAndGet(-batch.size()) + batch.size() > LANE_CAPACITY) {
+			synchronized (oneWayLane) {
+				oneWayLane.notifyAll();
+			}
+		}
+
+		ChannelFuture frame = batch.size() == 1 ? channel.write(batch.get(0))
+				: channel.write(new InvocationBatch(batch
+						.toArray(new InvocationMessage[batch.size()])));
+		frame.addListener(FRAME_LISTENER);
+		return frame;
+	}
+
+	private void drainOneWayLane() {
+		/*
+		 * Only one frame of one-way messages is written at a time. The
+		 * messages which are queued meanwhile are written as one burst when
+		 * the frame is written.
+		 */
+		while (!oneWayLane.isEmpty() && draining.compareAndSet(false, true)) {
+			ChannelFuture frame;
+			synchronized (writeLock) {
+				frame = writeOneWayFrame();
+			}
+
+			if (frame == null) {
+				draining.set(false);
+				continue;
+			}
+
+			frame.addListener(drainListener);
+			return;
+		}
+	}
+
+	private ChannelFuture writeInOrder(Object message) {
+		/*
+		 * The queued one-way messages were sent before this message, so they
+		 * are flushed first. The channel keeps the order of the writes.
+		 */
+		synchronized (writeLock) {
+			while (writeOneWayFrame() != null) {
+				// Flush the whole lane
+			}
+			return channel.write(message);
+		}
+	}
+
+	private void awaitOneWayLane() {
+		synchronized (oneWayLane) {
+			while (laneSize.get() > LANE_CAPACITY && channel.isOpen()) {
+				try {
+					oneWayLane.wait(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	@Override
+	protected boolean sendOneWay(InvocationMessage message) {
+		if (!channel.isOpen()) {
+			return false;
+		}
+
+		// Block the producer while the lane is full
+		if (laneSize.incrementAndGet() > LANE_CAPACITY) {
+			awaitOneWayLane();
+		}
+
+		oneWayLane.offer(message);
+		drainOneWayLane();
+		return true;
+	}
+
 	@Override
 	protected void sendInvocation(final Invocation invocation) {
 
-		if (!invocation.isAsyncVoid()) {
-			// Create request
-			Request req = new Request(invocation.message());
+		if (!invocation.isOneWay()) {
+			// Create request which expires with the invocation
+			final Request req = new Request(invocation.message()).timeout(
+					invocation.message().timeout()).awaitedWith(invocation);
 
-			// Write the request
-			channel.write(req);
+			// Write the request after the queued one-way messages
+			writeInOrder(req);
 
 			req.add(new FutureCallback() {
 
@@ -51,8 +354,22 @@ final class NetworkInvokerManager extends InvokerManager {
 					invocation.complete(future.attachment(), future.cause());
 				}
 			});
+
+			/*
+			 * If the invocation fails locally (timeout, interruption...) the
+			 * request fails too, which cancels it on the remote side.
+			 */
+			invocation.add(new FutureCallback() {
+
+				@Override
+				public void completed(Future future) throws Exception {
+					if (future.isFailed()) {
+						req.fail(future.cause());
+					}
+				}
+			});
 		} else {
-			channel.write(invocation.message()).addListener(
+			writeInOrder(invocation.message()).addListener(
 					new ChannelFutureListener() {
 
 						@Override
@@ -66,6 +383,11 @@ final class NetworkInvokerManager extends InvokerManager {
 
 	@Override
 	public String[] lookupNames() throws LookupException {
+		awaitSnapshot();
+		if (lookupCacheComplete) {
+			return lookupCache.keySet().toArray(new String[0]);
+		}
+
 		Request req = LookupHandler.newLookupAll();
 		channel.write(req);
 		if (req.synchronize()) {
@@ -78,7 +400,14 @@ final class NetworkInvokerManager extends InvokerManager {
 	@Override
 	public Invoker lookupInvoker(String target) throws LookupException {
 
+		awaitSnapshot();
+		RemoteObject cached = lookupCache.get(target);
+		if (cached != null) {
+			return new Invoker(this, new RemoteBinding(cached, false));
+		}
+
 		Request req = LookupHandler.newLookup(target);
+		cacheLookup(req, target, false);
 		channel.write(req);
 		if (req.synchronize()) {
 			return new Invoker(this, new RemoteBinding(
@@ -88,6 +417,86 @@ final class NetworkInvokerManager extends InvokerManager {
 		}
 	}
 
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, Invoker> lookupInvokers(String... targets)
+			throws LookupException {
+		awaitSnapshot();
+		Future future = lookupInvokersAsync(targets);
+		if (future.synchronize()) {
+			return (Map<String, Invoker>) future.attachment();
+		} else {
+			throw new LookupException(future.cause());
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<String, Invoker> lookupInvokersMatching(String pattern)
+			throws LookupException {
+		awaitSnapshot();
+		if (lookupCacheComplete) {
+			GlobFilter filter = new GlobFilter(pattern);
+			Map<String, RemoteObject> found = new LinkedHashMap<>();
+			for (Map.Entry<String, RemoteObject> entry : lookupCache
+					.entrySet()) {
+				if (filter.accept(entry.getKey())) {
+					found.put(entry.getKey(), entry.getValue());
+				}
+			}
+			return invokers(found);
+		}
+
+		Request req = LookupHandler.newLookupMatching(pattern);
+		cacheLookup(req, null, false);
+		channel.write(req);
+		if (req.synchronize()) {
+			return invokers((Map<String, RemoteObject>) req.attachment());
+		} else {
+			throw new LookupException(req.cause());
+		}
+	}
+
+	@Override
+	public Future lookupInvokersAsync(String... targets) {
+		final Future future = new Future();
+
+		// Try to resolve all names using the cache
+		Map<String, RemoteObject> found = new LinkedHashMap<>();
+		for (String target : targets) {
+			RemoteObject cached = lookupCache.get(target);
+			if (cached != null) {
+				found.put(target, cached);
+			} else if (!lookupCacheComplete) {
+				found = null;
+				break;
+			}
+		}
+		if (found != null) {
+			future.succeed(invokers(found));
+			return future;
+		}
+
+		// Resolve all names in one round trip
+		Request req = LookupHandler.newLookup(targets);
+		cacheLookup(req, null, false);
+		req.add(new FutureCallback() {
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public void completed(Future request) throws Exception {
+				if (request.isSuccessful()) {
+					future.succeed(invokers((Map<String, RemoteObject>) request
+							.attachment()));
+				} else {
+					future.fail(request.cause());
+				}
+			}
+		});
+		channel.write(req);
+		return future;
+	}
+
 	@Override
 	public Future close() {
 		channel.close();
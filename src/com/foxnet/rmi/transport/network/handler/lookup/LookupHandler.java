@@ -31,6 +31,9 @@
  */
 package com.foxnet.rmi.transport.network.handler.lookup;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
@@ -40,6 +43,7 @@ import com.foxnet.rmi.binding.RemoteObject;
 import com.foxnet.rmi.binding.StaticBinding;
 import com.foxnet.rmi.transport.network.ConnectionManager;
 import com.foxnet.rmi.util.concurrent.Request;
+import com.foxnet.rmi.util.iteration.GlobFilter;
 
 /**
  * 
@@ -57,6 +61,35 @@ public final class LookupHandler extends SimpleChannelUpstreamHandler {
 		return new Request(new LookupMessage(null));
 	}
 
+	/**
+	 * Creates a request which resolves all given names in one round trip. The
+	 * request succeeds with a map of the found names and their remote
+	 * objects, unknown names are missing.
+	 * 
+	 * @param targets
+	 *            The names.
+	 * @return the request.
+	 */
+	public static Request newLookup(String[] targets) {
+		if (targets == null) {
+			throw new NullPointerException("targets");
+		}
+		return new Request(new LookupMessage(null, targets, null, false));
+	}
+
+	/**
+	 * Creates a request which resolves all names matching the given glob
+	 * pattern. Use '*' for any sequence and '?' for any single character.
+	 * The request succeeds with a map of the names and their remote objects.
+	 * 
+	 * @param pattern
+	 *            The glob pattern or null to resolve all names.
+	 * @return the request.
+	 */
+	public static Request newLookupMatching(String pattern) {
+		return new Request(new LookupMessage(null, null, pattern, true));
+	}
+
 	public static final LookupHandler INSTANCE = new LookupHandler();
 
 	@Override
@@ -77,7 +110,31 @@ public final class LookupHandler extends SimpleChannelUpstreamHandler {
 
 				LookupMessage lm = (LookupMessage) request.data();
 
-				if (lm.target() != null) {
+				if (lm.targets() != null || lm.isMatching()) {
+
+					// Resolve many names at once
+					Map<String, RemoteObject> result = new LinkedHashMap<>();
+
+					if (lm.targets() != null) {
+						for (String target : lm.targets()) {
+							StaticBinding sb = cm.staticReg().get(target);
+							if (sb != null) {
+								result.put(target, new RemoteObject(sb));
+							}
+						}
+					} else {
+						GlobFilter filter = lm.pattern() != null ? new GlobFilter(
+								lm.pattern()) : null;
+						for (StaticBinding sb : cm.staticReg()) {
+							if (filter == null || filter.accept(sb.name())) {
+								result.put(sb.name(), new RemoteObject(sb));
+							}
+						}
+					}
+
+					request.succeed(result);
+
+				} else if (lm.target() != null) {
 
 					StaticBinding sb = cm.staticReg().get(lm.target());
 
@@ -40,12 +40,35 @@ final class LookupMessage implements Serializable {
 	 */
 	private static final long serialVersionUID = 1L;
 	private final String target;
+	private final String[] targets;
+	private final String pattern;
+	private final boolean matching;
 
 	public LookupMessage(String target) {
+		this(target, null, null, false);
+	}
+
+	public LookupMessage(String target, String[] targets, String pattern,
+			boolean matching) {
 		this.target = target;
+		this.targets = targets;
+		this.pattern = pattern;
+		this.matching = matching;
 	}
 
 	public String target() {
 		return target;
 	}
+
+	public String[] targets() {
+		return targets;
+	}
+
+	public String pattern() {
+		return pattern;
+	}
+
+	public boolean isMatching() {
+		return matching;
+	}
 }
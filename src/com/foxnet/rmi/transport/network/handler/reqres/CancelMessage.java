@@ -0,0 +1,28 @@
+package com.foxnet.rmi.transport.network.handler.reqres;
+
+import java.io.Serializable;
+
+/**
+ * Tells the remote side that nobody is interested in the response of a request
+ * anymore.
+ * 
+ * @author Christopher Probst
+ * 
+ */
+final class CancelMessage implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final long id;
+
+	public CancelMessage(long id) {
+		this.id = id;
+	}
+
+	public long getId() {
+		return id;
+	}
+}
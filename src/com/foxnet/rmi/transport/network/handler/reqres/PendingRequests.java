@@ -0,0 +1,21 @@
+package com.foxnet.rmi.transport.network.handler.reqres;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.foxnet.rmi.util.concurrent.Request;
+
+/**
+ * Stores the pending requests of a channel in both directions.
+ * 
+ * @author Christopher Probst
+ * 
+ */
+final class PendingRequests {
+
+	// The requests which were sent and wait for a response
+	final ConcurrentMap<Long, Request> outgoing = new ConcurrentHashMap<>();
+
+	// The requests which were received and are not answered yet
+	final ConcurrentMap<Long, Request> incoming = new ConcurrentHashMap<>();
+}
@@ -1,8 +1,10 @@
 package com.foxnet.rmi.transport.network.handler.reqres;
 
 import java.nio.channels.ClosedChannelException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
 import org.jboss.netty.channel.Channel;
@@ -14,7 +16,10 @@ import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
 
+import com.foxnet.rmi.transport.network.ConnectionManager;
 import com.foxnet.rmi.util.concurrent.Future;
 import com.foxnet.rmi.util.concurrent.FutureCallback;
 import com.foxnet.rmi.util.concurrent.Request;
@@ -27,17 +32,96 @@ public final class ReqResHandler extends SimpleChannelHandler {
 	// The logger
 	protected final Logger logger = Logger.getLogger(getClass().getName());
 
-	@SuppressWarnings("unchecked")
 	private static void cancelRequests(ChannelHandlerContext ctx) {
 
-		// Lookup the queue
-		ConcurrentMap<Long, Request> requests = (ConcurrentMap<Long, Request>) ctx
-				.getAttachment();
+		// Lookup the pending requests
+		PendingRequests pending = (PendingRequests) ctx.getAttachment();
 
 		// Finish the remaining requests
-		for (Object request : requests.values().toArray()) {
+		for (Object request : pending.outgoing.values().toArray()) {
 			((Request) request).fail(new ClosedChannelException());
 		}
+
+		// Nobody can receive the responses anymore
+		for (Long id : pending.incoming.keySet()) {
+			Request request = pending.incoming.remove(id);
+			if (request != null) {
+				request.fail(new CancellationException("The channel "
+						+ "of the request was closed"));
+			}
+		}
+	}
+
+	/**
+	 * Expires a request. A request with a deadline fails when the deadline is
+	 * reached. A request without a deadline fails after the default request
+	 * timeout only if no thread waits for it, otherwise the check is
+	 * repeated. So abandoned requests do not stay pending forever while
+	 * synchronized requests wait without a limit.
+	 */
+	private static final class Expiration implements TimerTask {
+
+		private final ConnectionManager cm;
+		private final Request request;
+		private volatile Timeout timeout;
+
+		Expiration(ConnectionManager cm, Request request) {
+			this.cm = cm;
+			this.request = request;
+		}
+
+		void schedule(long delayMillies) {
+			timeout = cm.timer().newTimeout(this, delayMillies,
+					TimeUnit.MILLISECONDS);
+		}
+
+		void cancel() {
+			Timeout current = timeout;
+			if (current != null) {
+				current.cancel();
+			}
+		}
+
+		@Override
+		public void run(Timeout expired) throws Exception {
+			if (request.isCompleted()) {
+				return;
+			} else if (request.hasDeadline()) {
+				request.fail(new TimeoutException("The request has "
+						+ "timed out after " + request.timeout() + " ms"));
+			} else if (cm.requestTimeout() <= 0) {
+				// Disabled in the meantime
+				return;
+			} else if (request.isAwaited()) {
+				schedule(cm.requestTimeout());
+			} else {
+				request.fail(new TimeoutException("Nobody waited for the "
+						+ "request within " + cm.requestTimeout() + " ms"));
+			}
+		}
+	}
+
+	private static Expiration scheduleExpiration(ChannelHandlerContext ctx,
+			Request request) {
+
+		// Lookup the connection manager
+		ConnectionManager cm = ConnectionManager.of(ctx.getChannel());
+
+		if (cm == null) {
+			return null;
+		}
+
+		Expiration expiration = new Expiration(cm, request);
+		if (request.hasDeadline()) {
+			// Fail the request when the deadline is reached
+			expiration.schedule(request.remainingMillies());
+		} else if (cm.requestTimeout() > 0) {
+			// Check periodically whether somebody waits for the request
+			expiration.schedule(cm.requestTimeout());
+		} else {
+			return null;
+		}
+		return expiration;
 	}
 
 	/*
@@ -51,8 +135,8 @@ public final class ReqResHandler extends SimpleChannelHandler {
 	@Override
 	public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e)
 			throws Exception {
-		// Create a new queue at beginning
-		ctx.setAttachment(new ConcurrentHashMap<Long, Request>());
+		// Create new pending requests at beginning
+		ctx.setAttachment(new PendingRequests());
 		super.channelOpen(ctx, e);
 	}
 
@@ -74,11 +158,13 @@ public final class ReqResHandler extends SimpleChannelHandler {
 		super.channelClosed(ctx, e);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
 			throws Exception {
 
+		// Lookup the pending requests
+		final PendingRequests pending = (PendingRequests) ctx.getAttachment();
+
 		// If reqres message...
 		if (e.getMessage() instanceof ReqResMessage) {
 			ReqResMessage reqResMessage = (ReqResMessage) e.getMessage();
@@ -89,6 +175,9 @@ public final class ReqResHandler extends SimpleChannelHandler {
 				Request request = new Request(reqResMessage.getData(),
 						reqResMessage.getId());
 
+				// Remember the request until it is answered
+				pending.incoming.put(request.id(), request);
+
 				// Get final channel
 				final Channel channel = ctx.getChannel();
 
@@ -100,21 +189,26 @@ public final class ReqResHandler extends SimpleChannelHandler {
 						// Convert
 						Request request = (Request) future;
 
-						// Just write the response
-						channel.write(new ReqResMessage(request.attachment(),
-								request.cause(), request.id(), false));
+						/*
+						 * Cancelled requests were already removed, so nobody
+						 * is interested in the response.
+						 */
+						if (pending.incoming.remove(request.id(), request)) {
+
+							// Just write the response
+							channel.write(new ReqResMessage(request
+									.attachment(), request.cause(), request
+									.id(), false));
+						}
 					}
 				});
 
 				// Send upstream
 				Channels.fireMessageReceived(ctx, request);
 			} else {
-				// Lookup requests
-				ConcurrentMap<Long, Request> requests = (ConcurrentMap<Long, Request>) ctx
-						.getAttachment();
-
 				// Try to find the correct request
-				Request request = requests.remove(reqResMessage.getId());
+				Request request = pending.outgoing
+						.remove(reqResMessage.getId());
 
 				if (request == null) {
 					logger.warning("Response message received but "
@@ -126,13 +220,23 @@ public final class ReqResHandler extends SimpleChannelHandler {
 							reqResMessage.getCause());
 				}
 			}
+		} else if (e.getMessage() instanceof CancelMessage) {
+			CancelMessage cancelMessage = (CancelMessage) e.getMessage();
+
+			// Remove the request, so the response is never written
+			Request request = pending.incoming.remove(cancelMessage.getId());
+
+			if (request != null) {
+				// Notify the handler of the request
+				request.fail(new CancellationException("The request "
+						+ "was cancelled by the remote side"));
+			}
 		} else {
 			// Not for us...
 			super.messageReceived(ctx, e);
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e)
 			throws Exception {
@@ -143,20 +247,41 @@ public final class ReqResHandler extends SimpleChannelHandler {
 			final Request request = (Request) e.getMessage();
 
 			// Lookup requests
-			final ConcurrentMap<Long, Request> requests = (ConcurrentMap<Long, Request>) ctx
-					.getAttachment();
+			final ConcurrentMap<Long, Request> requests = ((PendingRequests) ctx
+					.getAttachment()).outgoing;
+
+			// Get final channel
+			final Channel channel = ctx.getChannel();
 
 			// Try to save the request or fail it
 			if (requests.putIfAbsent(request.id(), request) != null) {
 				request.fail(new IllegalStateException("The request "
 						+ "id is already used"));
 			} else {
+				// Schedule the expiration of the request
+				final Expiration expiration = scheduleExpiration(ctx, request);
+
 				// Remove the request when finished
 				request.add(new FutureCallback() {
 
 					@Override
 					public void completed(Future future) throws Exception {
-						requests.remove(((Request) future).id());
+						Request request = (Request) future;
+
+						/*
+						 * If the request is still pending, it was failed
+						 * locally (timeout, cancellation...). Tell the remote
+						 * side to stop working on it.
+						 */
+						if (requests.remove(request.id()) != null
+								&& request.isFailed() && channel.isConnected()) {
+							channel.write(new CancelMessage(request.id()));
+						}
+
+						// Not needed anymore
+						if (expiration != null) {
+							expiration.cancel();
+						}
 					}
 				});
 
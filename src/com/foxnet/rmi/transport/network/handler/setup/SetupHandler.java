@@ -31,11 +31,15 @@
  */
 package com.foxnet.rmi.transport.network.handler.setup;
 
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
 import org.jboss.netty.channel.ChannelHandler.Sharable;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.channel.socket.SocketChannelConfig;
+import org.jboss.netty.channel.socket.nio.NioChannelConfig;
+
+import com.foxnet.rmi.transport.network.ConnectionManager;
 
 /**
  * 
@@ -72,6 +76,24 @@ public final class SetupHandler extends SimpleChannelUpstreamHandler {
 		// Deactivate the tcp delay
 		cfg.setTcpNoDelay(true);
 
+		// Lookup the connection manager
+		ConnectionManager cm = ConnectionManager.of(ctx.getChannel());
+
+		// Use direct buffers if requested
+		if (cm != null && cm.isDirectBuffers()) {
+			cfg.setBufferFactory(DirectChannelBufferFactory.getInstance());
+		}
+
+		// Limit the outgoing bytes if requested
+		if (cm != null && cm.writeBufferHighWaterMark() > 0
+				&& cfg instanceof NioChannelConfig) {
+			NioChannelConfig nioCfg = (NioChannelConfig) cfg;
+
+			// Set both water marks
+			nioCfg.setWriteBufferHighWaterMark(cm.writeBufferHighWaterMark());
+			nioCfg.setWriteBufferLowWaterMark(cm.writeBufferLowWaterMark());
+		}
+
 		// Super
 		super.channelOpen(ctx, e);
 	}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.transport.shm;
+
+import java.io.Serializable;
+
+/**
+ * A message of the shared memory transport.
+ * 
+ * @author Christopher Probst
+ */
+final class Frame implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	// An invocation message, one-way if the id is invalid
+	static final byte INVOCATION = 0;
+
+	// The response of a request
+	static final byte RESPONSE = 1;
+
+	// Cancels a request
+	static final byte CANCEL = 2;
+
+	// Looks up a static binding or all names if the name is null
+	static final byte LOOKUP = 3;
+
+	// The released and renewed ids of dynamic bindings and the lease duration
+	static final byte LEASE = 4;
+
+	private final byte kind;
+	private final long id;
+	private final Object data;
+	private final Throwable cause;
+
+	public Frame(byte kind, long id, Object data, Throwable cause) {
+		this.kind = kind;
+		this.id = id;
+		this.data = data;
+		this.cause = cause;
+	}
+
+	public byte kind() {
+		return kind;
+	}
+
+	public long id() {
+		return id;
+	}
+
+	public Object data() {
+		return data;
+	}
+
+	public Throwable cause() {
+		return cause;
+	}
+}
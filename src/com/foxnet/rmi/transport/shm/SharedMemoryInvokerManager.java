@@ -0,0 +1,703 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.transport.shm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import com.foxnet.rmi.Invocation;
+import com.foxnet.rmi.InvocationMessage;
+import com.foxnet.rmi.Invoker;
+import com.foxnet.rmi.InvokerManager;
+import com.foxnet.rmi.LookupException;
+import com.foxnet.rmi.binding.RemoteBinding;
+import com.foxnet.rmi.binding.RemoteObject;
+import com.foxnet.rmi.binding.StaticBinding;
+import com.foxnet.rmi.binding.registry.StaticRegistry;
+import com.foxnet.rmi.util.concurrent.Future;
+import com.foxnet.rmi.util.concurrent.FutureCallback;
+import com.foxnet.rmi.util.concurrent.Request;
+import com.foxnet.rmi.util.concurrent.SharedTimer;
+
+/**
+ * A shared memory invoker manager connects two processes on the same host
+ * using a memory-mapped file, preferably in /dev/shm. The file contains one
+ * single-producer single-consumer ring per direction. Each side polls its
+ * incoming ring with a reader thread which spins, yields and finally parks
+ * with a growing delay while the ring is empty, so no system calls are
+ * needed while messages are flowing.
+ * <p>
+ * One side creates the file using {@link #create(File, int, StaticRegistry,
+ * Executor)}, the other side opens it using {@link #open(File,
+ * StaticRegistry, Executor)}. The creator deletes the file when closed.
+ * <p>
+ * The reader threads publish a heartbeat. If the reader of the peer stops for
+ * five seconds (e.g. the process crashed), this side is closed, so neither
+ * pending requests nor writers into a full ring wait forever.
+ * 
+ * @author Christopher Probst
+ */
+public final class SharedMemoryInvokerManager extends InvokerManager {
+
+	// Identifies a shared memory file
+	private static final int MAGIC = 0x46585348;
+
+	// The offsets of the header fields
+	private static final int MAGIC_OFFSET = 0, CAPACITY_OFFSET = 4,
+			CREATOR_CLOSED_OFFSET = 8, OPENER_CLOSED_OFFSET = 12,
+			CREATOR_HEARTBEAT_OFFSET = 64, OPENER_HEARTBEAT_OFFSET = 128;
+
+	// The size of the header which is followed by the rings
+	private static final int HEADER_SIZE = 4096;
+
+	// The default capacity of a ring
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+
+	// The number of empty polls before yielding, spinning needs another core
+	private static final int SPIN_LIMIT = Runtime.getRuntime()
+			.availableProcessors() > 1 ? 10000 : 0;
+
+	// The number of empty polls before parking
+	private static final int YIELD_LIMIT = SPIN_LIMIT + 100;
+
+	// The maximum park time in nanoseconds
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(1);
+
+	// The time without a heartbeat after which the peer is considered dead
+	private static final long PEER_TIMEOUT_NANOS = TimeUnit.SECONDS
+			.toNanos(5);
+
+	// The interval of sending released remote objects in milliseconds
+	private static final long RELEASE_INTERVAL = 1000;
+
+	/**
+	 * @param name
+	 *            The name of the shared memory file.
+	 * @return the file in /dev/shm or in the temporary directory if there is
+	 *         no /dev/shm.
+	 */
+	public static File fileOf(String name) {
+		File shm = new File("/dev/shm");
+		return new File(shm.isDirectory() ? shm : new File(
+				System.getProperty("java.io.tmpdir")), name);
+	}
+
+	private static int ringOffset(int capacity, boolean second) {
+		int ringSize = (SharedMemoryRing.sizeOf(capacity) + HEADER_SIZE - 1)
+				& -HEADER_SIZE;
+		return HEADER_SIZE + (second ? ringSize : 0);
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int size) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.position(offset);
+		duplicate.limit(offset + size);
+		return duplicate.slice();
+	}
+
+	/**
+	 * Creates a new shared memory file and the side of the creator.
+	 * 
+	 * @param file
+	 *            The file. An existing file is replaced.
+	 * @param capacity
+	 *            The capacity of each ring which must be a power of two.
+	 * @param staticRegistry
+	 *            The static registry.
+	 * @param executor
+	 *            The executor of the incoming invocations.
+	 * @return the invoker manager.
+	 * @throws IOException
+	 *             If the file could not be created.
+	 */
+	public static SharedMemoryInvokerManager create(File file, int capacity,
+			StaticRegistry staticRegistry, Executor executor)
+			throws IOException {
+		if (capacity < 8 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("The capacity must be a "
+					+ "power of two");
+		}
+
+		// Replace the file, so the opener never sees old rings
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Failed to delete " + file);
+		}
+
+		int size = ringOffset(capacity, true)
+				+ SharedMemoryRing.sizeOf(capacity);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(size);
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, size);
+
+			SharedMemoryInvokerManager manager = new SharedMemoryInvokerManager(
+					file, buffer, capacity, true, staticRegistry, executor);
+
+			// The file is ready to be opened
+			buffer.putInt(CAPACITY_OFFSET, capacity);
+			buffer.putInt(MAGIC_OFFSET, MAGIC);
+			return manager;
+		}
+	}
+
+	/**
+	 * Opens an existing shared memory file.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param staticRegistry
+	 *            The static registry.
+	 * @param executor
+	 *            The executor of the incoming invocations.
+	 * @return the invoker manager.
+	 * @throws IOException
+	 *             If the file could not be opened or is not a shared memory
+	 *             file.
+	 */
+	public static SharedMemoryInvokerManager open(File file,
+			StaticRegistry staticRegistry, Executor executor)
+			throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, raf.length());
+
+			if (buffer.capacity() < HEADER_SIZE
+					|| buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+				throw new IOException(file + " is not a shared memory file");
+			} else if (buffer.getInt(CREATOR_CLOSED_OFFSET) != 0) {
+				throw new ClosedChannelException();
+			}
+
+			return new SharedMemoryInvokerManager(file, buffer,
+					buffer.getInt(CAPACITY_OFFSET), false, staticRegistry,
+					executor);
+		}
+	}
+
+	// The shared memory file
+	private final File file;
+
+	// The mapped file
+	private final MappedByteBuffer buffer;
+
+	// Whether or not this side created the file
+	private final boolean creator;
+
+	// The rings of both directions
+	private final SharedMemoryRing in, out;
+
+	// The executor of the incoming invocations
+	private final Executor executor;
+
+	// The sent requests which are not answered yet
+	private final ConcurrentMap<Long, Request> outgoing = new ConcurrentHashMap<>();
+
+	// The received requests which are not answered yet
+	private final ConcurrentMap<Long, Request> incoming = new ConcurrentHashMap<>();
+
+	// Whether or not this side is closed
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	// The thread which reads the incoming ring
+	private final Thread reader;
+
+	// Releases collected remote objects and renews the leases periodically
+	private final ScheduledFuture<?> leaseTask;
+
+	// The time of the last lease renewal
+	private long lastRenewal;
+
+	// Whether or not the lease duration was sent to the peer
+	private boolean leaseDurationSent;
+
+	private SharedMemoryInvokerManager(File file, MappedByteBuffer buffer,
+			int capacity, boolean creator, StaticRegistry staticRegistry,
+			Executor executor) {
+		super(staticRegistry);
+
+		if (executor == null) {
+			throw new NullPointerException("executor");
+		}
+		this.file = file;
+		this.buffer = buffer;
+		this.creator = creator;
+		this.executor = executor;
+
+		// The creator writes the first ring, the opener the second one
+		int size = SharedMemoryRing.sizeOf(capacity);
+		SharedMemoryRing first = new SharedMemoryRing(slice(buffer,
+				ringOffset(capacity, false), size), capacity);
+		SharedMemoryRing second = new SharedMemoryRing(slice(buffer,
+				ringOffset(capacity, true), size), capacity);
+		out = creator ? first : second;
+		in = creator ? second : first;
+
+		reader = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				readFrames();
+			}
+		}, "SharedMemoryInvokerManager-Reader-" + file.getName());
+		reader.setDaemon(true);
+		reader.start();
+
+		lastRenewal = System.currentTimeMillis();
+		leaseTask = SharedTimer.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				sendLeases();
+			}
+		}, RELEASE_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	private void sendLeases() {
+		long[] released = pollReleasedRemotes(), renewed = new long[0];
+
+		long now = System.currentTimeMillis();
+		if (now - lastRenewal >= renewalInterval()) {
+			renewed = referencedRemotes();
+			lastRenewal = now;
+
+			// Remove the bindings which the remote side did not renew
+			dynamicReg().unbindExpired();
+		}
+
+		// The first frame tells the peer our lease duration
+		if (!leaseDurationSent || released.length + renewed.length > 0) {
+			leaseDurationSent = true;
+			final Frame frame = new Frame(Frame.LEASE, Request.INVALID_ID,
+					new long[][] { released, renewed,
+							{ dynamicReg().leaseDuration() } }, null);
+
+			// The ring might be full, so never block the timer
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						write(frame);
+					} catch (IOException e) {
+						// The leases are renewed again or expire
+					}
+				}
+			});
+		}
+	}
+
+	private boolean isPeerClosed() {
+		return buffer.getInt(creator ? OPENER_CLOSED_OFFSET
+				: CREATOR_CLOSED_OFFSET) != 0;
+	}
+
+	private long peerHeartbeat() {
+		return buffer.getLong(creator ? OPENER_HEARTBEAT_OFFSET
+				: CREATOR_HEARTBEAT_OFFSET);
+	}
+
+	/**
+	 * Waits for the next poll of a ring.
+	 * 
+	 * @param idle
+	 *            The number of empty polls.
+	 */
+	private static void backOff(int idle) {
+		if (idle < SPIN_LIMIT) {
+			return;
+		} else if (idle < YIELD_LIMIT) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(Math.min(MAX_PARK_NANOS,
+					1000L << Math.min(10, idle - YIELD_LIMIT)));
+		}
+	}
+
+	private void write(Frame frame) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			output.writeObject(frame);
+		}
+		byte[] data = bytes.toByteArray();
+
+		if (data.length > out.maxFrameLength()) {
+			throw new IOException("The message is too large (" + data.length
+					+ " > " + out.maxFrameLength() + ")");
+		}
+
+		synchronized (out) {
+			long heartbeat = 0, since = 0;
+			for (int idle = 0; !out.offer(data); idle++) {
+				if (closed.get() || isPeerClosed()) {
+					throw new ClosedChannelException();
+				}
+
+				// A full ring is only waited for while the peer is alive
+				if (idle >= YIELD_LIMIT) {
+					long now = System.nanoTime(), beat = peerHeartbeat();
+					if (idle == YIELD_LIMIT || beat != heartbeat) {
+						heartbeat = beat;
+						since = now;
+					} else if (now - since > PEER_TIMEOUT_NANOS) {
+						close();
+						throw new ClosedChannelException();
+					}
+				}
+				backOff(idle);
+			}
+		}
+	}
+
+	private void readFrames() {
+		int heartbeatOffset = creator ? CREATOR_HEARTBEAT_OFFSET
+				: OPENER_HEARTBEAT_OFFSET;
+		long heartbeat = 0, peerBeat = 0, peerSince = 0;
+		int idle = 0;
+		while (!closed.get()) {
+			// Tell the peer that this side still reads
+			buffer.putLong(heartbeatOffset, ++heartbeat);
+
+			byte[] data = in.poll();
+			if (data != null) {
+				idle = 0;
+				try (ObjectInputStream input = new ObjectInputStream(
+						new ByteArrayInputStream(data))) {
+					receive((Frame) input.readObject());
+				} catch (Exception e) {
+					// Like a broken stream, the connection is unusable
+					close();
+				}
+			} else if (idle++ > YIELD_LIMIT && isPeerClosed()) {
+				close();
+			} else {
+				// A peer which opened the file and stopped reading is dead
+				if (idle > YIELD_LIMIT) {
+					long now = System.nanoTime(), beat = peerHeartbeat();
+					if (beat == 0 || beat != peerBeat) {
+						peerBeat = beat;
+						peerSince = now;
+					} else if (now - peerSince > PEER_TIMEOUT_NANOS) {
+						close();
+						continue;
+					}
+				}
+				backOff(idle);
+			}
+		}
+	}
+
+	private void receive(final Frame frame) {
+		switch (frame.kind()) {
+		case Frame.INVOCATION:
+			final Request request = frame.id() != Request.INVALID_ID ? accept(frame)
+					: null;
+			try {
+				handleInvocation((InvocationMessage) frame.data(), executor,
+						request);
+			} catch (Exception e) {
+				if (request != null) {
+					request.fail(e);
+				}
+			}
+			break;
+		case Frame.LOOKUP:
+			final Request lookup = accept(frame);
+
+			// Answer by the executor, the reader never writes
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					if (lookup.data() == null) {
+						lookup.succeed(staticReg().names());
+						return;
+					}
+
+					StaticBinding binding = staticReg().get(
+							(String) lookup.data());
+					if (binding == null) {
+						lookup.fail(new IllegalArgumentException(
+								"Unknown target argument"));
+					} else {
+						lookup.succeed(new RemoteObject(binding));
+					}
+				}
+			});
+			break;
+		case Frame.RESPONSE:
+			Request response = outgoing.remove(frame.id());
+			if (response != null) {
+				response.complete(frame.data(), frame.cause());
+			}
+			break;
+		case Frame.CANCEL:
+			// Remove the request, so the response is never written
+			Request cancelled = incoming.remove(frame.id());
+			if (cancelled != null) {
+				cancelled.fail(new CancellationException("The request "
+						+ "was cancelled by the remote side"));
+			}
+			break;
+		case Frame.LEASE:
+			long[][] ids = (long[][]) frame.data();
+			remoteLeaseDuration(ids[2][0]);
+			dynamicReg().release(ids[0]);
+			dynamicReg().renew(ids[1]);
+			break;
+		}
+	}
+
+	private Request accept(Frame frame) {
+		Request request = new Request(frame.data(), frame.id());
+
+		// Remember the request until it is answered
+		incoming.put(request.id(), request);
+
+		// Send the result back when completed
+		request.add(new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				Request request = (Request) future;
+
+				// Cancelled requests were already removed
+				if (incoming.remove(request.id(), request)) {
+					Frame response = new Frame(Frame.RESPONSE, request.id(),
+							request.attachment(), request.cause());
+					try {
+						write(response);
+					} catch (IOException e) {
+						// The response might be not serializable
+						if (!closed.get()) {
+							write(new Frame(Frame.RESPONSE, request.id(),
+									null, e));
+						}
+					}
+				}
+			}
+		});
+		return request;
+	}
+
+	private void send(byte kind, final Request request) {
+		outgoing.put(request.id(), request);
+
+		// Schedule the expiration of the request
+		final ScheduledFuture<?> timeout = request.hasDeadline() ? SharedTimer
+				.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						request.fail(new TimeoutException("The request has "
+								+ "timed out"));
+					}
+				}, request.timeout(), TimeUnit.MILLISECONDS) : null;
+
+		request.add(new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				/*
+				 * If the request is still pending, it was failed locally
+				 * (timeout, cancellation...). Tell the remote side to stop
+				 * working on it.
+				 */
+				if (outgoing.remove(request.id()) != null
+						&& request.isFailed() && !closed.get()) {
+					write(new Frame(Frame.CANCEL, request.id(), null, null));
+				}
+
+				// Not needed anymore
+				if (timeout != null) {
+					timeout.cancel(false);
+				}
+			}
+		});
+
+		try {
+			if (closed.get()) {
+				throw new ClosedChannelException();
+			}
+			write(new Frame(kind, request.id(), request.data(), null));
+		} catch (IOException e) {
+			request.fail(e);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.foxnet.rmi.InvokerManager#sendOneWay(com.foxnet.rmi.
+	 * InvocationMessage)
+	 */
+	@Override
+	protected boolean sendOneWay(InvocationMessage message) {
+		if (closed.get()) {
+			return false;
+		}
+
+		try {
+			write(new Frame(Frame.INVOCATION, Request.INVALID_ID, message,
+					null));
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.foxnet.rmi.InvokerManager#sendInvocation(com.foxnet.rmi.Invocation)
+	 */
+	@Override
+	protected void sendInvocation(final Invocation invocation) {
+		if (invocation.isOneWay()) {
+			try {
+				write(new Frame(Frame.INVOCATION, Request.INVALID_ID,
+						invocation.message(), null));
+				invocation.complete(null, null);
+			} catch (IOException e) {
+				invocation.fail(e);
+			}
+			return;
+		}
+
+		// Create request which expires with the invocation
+		final Request req = new Request(invocation.message())
+				.timeout(invocation.message().timeout());
+
+		req.add(new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				invocation.complete(future.attachment(), future.cause());
+			}
+		});
+
+		/*
+		 * If the invocation fails locally (timeout, interruption...) the
+		 * request fails too, which cancels it on the remote side.
+		 */
+		invocation.add(new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				if (future.isFailed()) {
+					req.fail(future.cause());
+				}
+			}
+		});
+
+		send(Frame.INVOCATION, req);
+	}
+
+	private Object lookup(String name) throws LookupException {
+		Request req = new Request(name);
+		send(Frame.LOOKUP, req);
+		if (req.synchronize()) {
+			return req.attachment();
+		} else {
+			throw new LookupException(req.cause());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.foxnet.rmi.InvokerManager#lookupInvoker(java.lang.String)
+	 */
+	@Override
+	public Invoker lookupInvoker(String name) throws LookupException {
+		if (name == null) {
+			throw new NullPointerException("name");
+		}
+		return new Invoker(this, new RemoteBinding(
+				(RemoteObject) lookup(name), false));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.foxnet.rmi.InvokerManager#lookupNames()
+	 */
+	@Override
+	public String[] lookupNames() throws LookupException {
+		return (String[]) lookup(null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.foxnet.rmi.InvokerManager#close()
+	 */
+	@Override
+	public Future close() {
+		if (closed.compareAndSet(false, true)) {
+			// Tell the peer
+			buffer.putInt(creator ? CREATOR_CLOSED_OFFSET
+					: OPENER_CLOSED_OFFSET, 1);
+			leaseTask.cancel(false);
+			LockSupport.unpark(reader);
+
+			for (Request request : outgoing.values()) {
+				request.fail(new ClosedChannelException());
+			}
+
+			if (creator) {
+				file.delete();
+			}
+			closeFuture().complete(null, null);
+		}
+		return closeFuture();
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.transport.shm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A single-producer single-consumer ring of frames in a (mapped) buffer. The
+ * positions are counters which never wrap, each on its own cache line. A frame
+ * is a length followed by the data and starts at a multiple of 8, so the
+ * length never wraps.
+ * <p>
+ * Mapped buffers do not order their accesses and a volatile field of this JVM
+ * does not order the accesses of the other process. So the positions are
+ * published with a release write and read with an acquire read through a
+ * view of the buffer, which fences the frames on every architecture.
+ * 
+ * @author Christopher Probst
+ */
+final class SharedMemoryRing {
+
+	// The offset of the write position
+	private static final int TAIL_OFFSET = 0;
+
+	// The offset of the read position
+	private static final int HEAD_OFFSET = 64;
+
+	// The offset of the frames
+	private static final int DATA_OFFSET = 128;
+
+	// Accesses the aligned positions of a buffer atomically
+	private static final VarHandle POSITION = MethodHandles
+			.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	/**
+	 * @param capacity
+	 *            The capacity of the ring.
+	 * @return the number of bytes used by a ring with the given capacity.
+	 */
+	static int sizeOf(int capacity) {
+		return DATA_OFFSET + capacity;
+	}
+
+	/**
+	 * @param length
+	 *            The length of the data.
+	 * @return the number of bytes used by a frame with the given length.
+	 */
+	private static int frameSize(int length) {
+		return (4 + length + 7) & ~7;
+	}
+
+	// The buffer of the ring
+	private final ByteBuffer buffer;
+
+	// The capacity of the ring (a power of two)
+	private final int capacity;
+
+	// The positions of the producer
+	private long tail, cachedHead;
+
+	// The position of the consumer
+	private long head;
+
+	/**
+	 * Creates a new ring.
+	 * 
+	 * @param buffer
+	 *            The buffer of the ring. Only this ring must use the buffer.
+	 * @param capacity
+	 *            The capacity of the ring which must be a power of two.
+	 */
+	SharedMemoryRing(ByteBuffer buffer, int capacity) {
+		if (capacity < 8 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("The capacity must be a "
+					+ "power of two");
+		} else if (buffer.capacity() < sizeOf(capacity)) {
+			throw new IllegalArgumentException("The buffer is too small");
+		} else if (!buffer.isDirect()) {
+			throw new IllegalArgumentException("The buffer must be direct");
+		} else if (buffer.alignmentOffset(0, 8) != 0) {
+			throw new IllegalArgumentException("The buffer is not aligned");
+		}
+		this.buffer = buffer;
+		this.capacity = capacity;
+
+		// Continue where the rings were left
+		tail = (long) POSITION.getAcquire(buffer, TAIL_OFFSET);
+		head = cachedHead = (long) POSITION.getAcquire(buffer, HEAD_OFFSET);
+	}
+
+	/**
+	 * @return the maximum length of a frame.
+	 */
+	int maxFrameLength() {
+		return capacity / 2;
+	}
+
+	private void copy(int index, byte[] src, int offset, int length) {
+		int first = Math.min(length, capacity - index);
+		buffer.position(DATA_OFFSET + index);
+		buffer.put(src, offset, first);
+		if (first < length) {
+			buffer.position(DATA_OFFSET);
+			buffer.put(src, offset + first, length - first);
+		}
+	}
+
+	private void copy(int index, byte[] dst) {
+		int first = Math.min(dst.length, capacity - index);
+		buffer.position(DATA_OFFSET + index);
+		buffer.get(dst, 0, first);
+		if (first < dst.length) {
+			buffer.position(DATA_OFFSET);
+			buffer.get(dst, first, dst.length - first);
+		}
+	}
+
+	/**
+	 * Writes a frame. Only one thread must call this method at a time.
+	 * 
+	 * @param frame
+	 *            The frame.
+	 * @return true if the frame was written, false if the ring is full.
+	 */
+	boolean offer(byte[] frame) {
+		if (frame.length > maxFrameLength()) {
+			throw new IllegalArgumentException("The frame is too large ("
+					+ frame.length + " > " + maxFrameLength() + ")");
+		}
+
+		int size = frameSize(frame.length);
+		if (tail + size - cachedHead > capacity) {
+			// Refresh the read position
+			cachedHead = (long) POSITION.getAcquire(buffer, HEAD_OFFSET);
+			if (tail + size - cachedHead > capacity) {
+				return false;
+			}
+		}
+
+		int index = (int) (tail & (capacity - 1));
+		buffer.putInt(DATA_OFFSET + index, frame.length);
+		copy(index + 4, frame, 0, frame.length);
+
+		// Publish the frame
+		POSITION.setRelease(buffer, TAIL_OFFSET, tail += size);
+		return true;
+	}
+
+	/**
+	 * Reads a frame. Only one thread must call this method at a time.
+	 * 
+	 * @return the frame or null if the ring is empty.
+	 */
+	byte[] poll() {
+		if ((long) POSITION.getAcquire(buffer, TAIL_OFFSET) == head) {
+			return null;
+		}
+
+		int index = (int) (head & (capacity - 1));
+		byte[] frame = new byte[buffer.getInt(DATA_OFFSET + index)];
+		copy(index + 4, frame);
+
+		// Release the space of the frame
+		POSITION.setRelease(buffer, HEAD_OFFSET,
+				head += frameSize(frame.length));
+		return frame;
+	}
+}
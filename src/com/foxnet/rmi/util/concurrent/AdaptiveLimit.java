@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.util.concurrent;
+
+/**
+ * An adaptive concurrency limit in the style of TCP Vegas. The limit is
+ * adjusted using the round-trip times of completed requests: If the measured
+ * latency stays near the minimum latency (no queueing on the remote side) the
+ * limit grows, if the latency grows because requests are queued the limit
+ * shrinks. Dropped requests (e.g. rejected because of overload or timed out)
+ * shrink the limit multiplicatively.
+ * <p>
+ * The minimum latency is measured again from time to time, so the limit
+ * adapts to a changing remote side.
+ * 
+ * @author Christopher Probst
+ */
+public final class AdaptiveLimit {
+
+	/**
+	 * The default initial limit.
+	 */
+	public static final int DEFAULT_INITIAL_LIMIT = 20;
+
+	/**
+	 * The default minimum limit.
+	 */
+	public static final int DEFAULT_MIN_LIMIT = 1;
+
+	/**
+	 * The default maximum limit.
+	 */
+	public static final int DEFAULT_MAX_LIMIT = 1000;
+
+	// The number of samples after which the minimum latency is reset
+	private static final int PROBE_SAMPLES = 1000;
+
+	// The factor which is applied to the limit when a request was dropped
+	private static final double BACKOFF_RATIO = 0.9;
+
+	// The bounds of the limit
+	private final int minLimit, maxLimit;
+
+	// The current limit
+	private volatile int limit;
+
+	// The exact limit (guarded by this)
+	private double estimatedLimit;
+
+	// The minimum round-trip time in nanoseconds (guarded by this)
+	private long minRtt;
+
+	// The number of samples since the last probe (guarded by this)
+	private int samples;
+
+	/**
+	 * Creates a new adaptive limit using the default bounds.
+	 */
+	public AdaptiveLimit() {
+		this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+	}
+
+	/**
+	 * Creates a new adaptive limit.
+	 * 
+	 * @param initialLimit
+	 *            The initial limit.
+	 * @param minLimit
+	 *            The minimum limit.
+	 * @param maxLimit
+	 *            The maximum limit.
+	 */
+	public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit) {
+		if (minLimit < 1) {
+			throw new IllegalArgumentException("minLimit must be > 0");
+		} else if (maxLimit < minLimit) {
+			throw new IllegalArgumentException("maxLimit must be >= minLimit");
+		} else if (initialLimit < minLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException("initialLimit must be "
+					+ "between minLimit and maxLimit");
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		limit = initialLimit;
+		estimatedLimit = initialLimit;
+	}
+
+	/**
+	 * @return the current limit.
+	 */
+	public int limit() {
+		return limit;
+	}
+
+	/**
+	 * @return the minimum limit.
+	 */
+	public int minLimit() {
+		return minLimit;
+	}
+
+	/**
+	 * @return the maximum limit.
+	 */
+	public int maxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Adds a sample of a completed request and adjusts the limit.
+	 * 
+	 * @param rttNanos
+	 *            The round-trip time of the request in nanoseconds.
+	 * @param inFlight
+	 *            The number of outstanding requests when the request was
+	 *            sent.
+	 * @param dropped
+	 *            Whether or not the request was dropped.
+	 */
+	public synchronized void sample(long rttNanos, int inFlight,
+			boolean dropped) {
+		if (rttNanos <= 0) {
+			return;
+		}
+
+		// Measure the minimum latency again
+		if (++samples >= PROBE_SAMPLES) {
+			samples = 0;
+			minRtt = 0;
+		}
+
+		if (minRtt == 0 || rttNanos < minRtt) {
+			minRtt = rttNanos;
+		}
+
+		double current = estimatedLimit;
+		double step = Math.max(1, Math.log10(current));
+
+		if (dropped) {
+			current *= BACKOFF_RATIO;
+		} else {
+			// The estimated number of requests queued on the remote side
+			double queued = current * (1 - (double) minRtt / rttNanos);
+
+			if (queued >= 6 * step) {
+				current -= step;
+			} else if (queued <= 3 * step && inFlight * 2 >= current) {
+				// Grow only if the limit is actually used
+				current += step;
+			}
+		}
+
+		estimatedLimit = Math.min(maxLimit, Math.max(minLimit, current));
+		limit = (int) estimatedLimit;
+	}
+
+}
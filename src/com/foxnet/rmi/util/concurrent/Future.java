@@ -33,6 +33,10 @@ package com.foxnet.rmi.util.concurrent;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -63,6 +67,9 @@ public class Future {
 	// Used to store the state
 	private volatile boolean completed;
 
+	// The number of threads which wait for this future
+	private final AtomicInteger waiters = new AtomicInteger();
+
 	/**
 	 * Used to modify the attachment when completed.
 	 * 
@@ -189,7 +196,78 @@ public class Future {
 	 *            The timeout you want to wait in milliseconds.
 	 * @return true if the future was successful, otherwise false.
 	 */
-	public boolean synchronize(long timeoutMillies) {
+	public boolean synchronize(final long timeoutMillies) {
+
+		// Let a work stealing pool compensate the blocked worker
+		if (!completed && Thread.currentThread() instanceof ForkJoinWorkerThread) {
+			try {
+				ForkJoinPool.managedBlock(new ManagedBlocker() {
+
+					@Override
+					public boolean isReleasable() {
+						return completed;
+					}
+
+					@Override
+					public boolean block() {
+						await(timeoutMillies);
+						return true;
+					}
+				});
+			} catch (InterruptedException e) {
+				// Fail this future (Thread got interrupted...)
+				fail(e);
+			}
+			return isSuccessful();
+		}
+
+		return await(timeoutMillies);
+	}
+
+	/**
+	 * Marks the calling thread as waiting or no longer waiting for this
+	 * future. Subclasses which wait without {@link #synchronize(long)} must
+	 * mark the waiting thread themselves.
+	 * 
+	 * @param awaiting
+	 *            True when the thread starts to wait, false when it stops.
+	 */
+	protected final void awaiting(boolean awaiting) {
+		if (awaiting) {
+			waiters.incrementAndGet();
+		} else {
+			waiters.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return true if at least one thread waits for this future at the
+	 *         moment, otherwise false.
+	 */
+	public boolean isAwaited() {
+		return waiters.get() > 0;
+	}
+
+	/**
+	 * Blocks until this future completes or the given timeout expires.
+	 * 
+	 * @param timeoutMillies
+	 *            The timeout you want to wait in milliseconds.
+	 * @return true if the future was successful, otherwise false.
+	 */
+	private boolean await(long timeoutMillies) {
+		awaiting(true);
+		try {
+			return awaitLocked(timeoutMillies);
+		} finally {
+			awaiting(false);
+		}
+	}
+
+	/**
+	 * @see #await(long)
+	 */
+	private boolean awaitLocked(long timeoutMillies) {
 
 		synchronized (lock) {
 			if (!completed) {
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A gather is a future which aggregates the completion of other futures (e.g.
+ * invocations which were scattered across many invokers). The gather succeeds
+ * as soon as the required number of futures succeeded and fails as soon as
+ * this is not possible anymore. The attachment is the list of the attachments
+ * of the successful futures in order of completion. A failed gather uses the
+ * cause of the first failed future.
+ * 
+ * @author Christopher Probst
+ */
+public final class Gather extends Future {
+
+	/**
+	 * Creates a gather which succeeds if all futures succeed and fails as soon
+	 * as one future fails.
+	 * 
+	 * @param futures
+	 *            The futures.
+	 * @return the new gather.
+	 */
+	public static Gather allOf(Collection<? extends Future> futures) {
+		return new Gather(futures, futures.size(), false);
+	}
+
+	/**
+	 * @see #allOf(Collection)
+	 */
+	public static Gather allOf(Future... futures) {
+		return allOf(Arrays.asList(futures));
+	}
+
+	/**
+	 * Creates a gather which succeeds as soon as the given number of futures
+	 * succeeded.
+	 * 
+	 * @param count
+	 *            The number of required successful futures.
+	 * @param futures
+	 *            The futures.
+	 * @return the new gather.
+	 */
+	public static Gather firstOf(int count, Collection<? extends Future> futures) {
+		return new Gather(futures, count, false);
+	}
+
+	/**
+	 * @see #firstOf(int, Collection)
+	 */
+	public static Gather firstOf(int count, Future... futures) {
+		return firstOf(count, Arrays.asList(futures));
+	}
+
+	/**
+	 * Creates a gather which succeeds as soon as the majority of the futures
+	 * succeeded.
+	 * 
+	 * @param futures
+	 *            The futures.
+	 * @return the new gather.
+	 */
+	public static Gather quorum(Collection<? extends Future> futures) {
+		return new Gather(futures, futures.size() / 2 + 1, false);
+	}
+
+	/**
+	 * @see #quorum(Collection)
+	 */
+	public static Gather quorum(Future... futures) {
+		return quorum(Arrays.asList(futures));
+	}
+
+	/**
+	 * Creates a gather which succeeds when all futures are completed,
+	 * regardless of their success.
+	 * 
+	 * @param futures
+	 *            The futures.
+	 * @return the new gather.
+	 */
+	public static Gather allSettled(Collection<? extends Future> futures) {
+		return new Gather(futures, 0, true);
+	}
+
+	/**
+	 * @see #allSettled(Collection)
+	 */
+	public static Gather allSettled(Future... futures) {
+		return allSettled(Arrays.asList(futures));
+	}
+
+	// The gathered futures
+	private final List<Future> futures;
+
+	// The number of required successful futures
+	private final int required;
+
+	// Whether or not all futures must be completed
+	private final boolean settle;
+
+	// The attachments of the successful futures (guarded by itself)
+	private final List<Object> results = new ArrayList<>();
+
+	// The number of failed futures (guarded by results)
+	private int failures;
+
+	// The cause of the first failed future (guarded by results)
+	private Throwable firstCause;
+
+	/**
+	 * Called when a gathered future is completed.
+	 * 
+	 * @param future
+	 *            The completed future.
+	 */
+	private void collect(Future future) {
+		List<Object> attachment = null;
+		Throwable cause = null;
+
+		synchronized (results) {
+			if (isCompleted()) {
+				return;
+			}
+
+			if (future.isSuccessful()) {
+				results.add(future.attachment());
+			} else {
+				failures++;
+				if (firstCause == null) {
+					firstCause = future.cause();
+				}
+			}
+
+			if (settle) {
+				if (results.size() + failures == futures.size()) {
+					attachment = new ArrayList<>(results);
+				}
+			} else if (results.size() >= required) {
+				attachment = new ArrayList<>(results);
+			} else if (failures > futures.size() - required) {
+				cause = firstCause;
+			}
+		}
+
+		if (attachment != null) {
+			succeed(Collections.unmodifiableList(attachment));
+		} else if (cause != null) {
+			fail(cause);
+		}
+	}
+
+	/**
+	 * Creates a new gather.
+	 * 
+	 * @param futures
+	 *            The futures.
+	 * @param required
+	 *            The number of required successful futures.
+	 * @param settle
+	 *            Whether or not all futures must be completed.
+	 */
+	private Gather(Collection<? extends Future> futures, int required,
+			boolean settle) {
+		if (futures == null) {
+			throw new NullPointerException("futures");
+		} else if (required < 0 || required > futures.size()) {
+			throw new IllegalArgumentException("required must be between 0 "
+					+ "and the number of futures");
+		}
+
+		this.futures = Collections.unmodifiableList(new ArrayList<>(futures));
+		this.required = required;
+		this.settle = settle;
+
+		// Nothing to wait for
+		if (this.futures.isEmpty() || (!settle && required == 0)) {
+			succeed(Collections.emptyList());
+			return;
+		}
+
+		FutureCallback callback = new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				collect(future);
+			}
+		};
+
+		for (Future future : this.futures) {
+			future.add(callback);
+		}
+	}
+
+	/**
+	 * Fails this gather with a {@link TimeoutException} if it is not
+	 * completed within the given timeout. The gathered futures are not
+	 * affected (See {@link #cancelRemaining()}).
+	 * 
+	 * @param timeoutMillies
+	 *            The collective timeout in milliseconds.
+	 * @return this for chaining.
+	 */
+	public Gather timeout(final long timeoutMillies) {
+		if (timeoutMillies <= 0 || isCompleted()) {
+			return this;
+		}
+
+		final ScheduledFuture<?> timeout = SharedTimer.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				fail(new TimeoutException("The gather has timed out after "
+						+ timeoutMillies + " ms"));
+			}
+		}, timeoutMillies, TimeUnit.MILLISECONDS);
+
+		// Release the timer entry when completed
+		add(new FutureCallback() {
+
+			@Override
+			public void completed(Future future) throws Exception {
+				timeout.cancel(false);
+			}
+		});
+
+		return this;
+	}
+
+	/**
+	 * Fails all gathered futures which are not completed yet with a
+	 * {@link CancellationException}. Failed invocations are cancelled on the
+	 * remote side.
+	 * 
+	 * @return the number of cancelled futures.
+	 */
+	public int cancelRemaining() {
+		int cancelled = 0;
+		for (Future future : futures) {
+			if (!future.isCompleted()
+					&& future.fail(new CancellationException("The future "
+							+ "is not required anymore"))) {
+				cancelled++;
+			}
+		}
+		return cancelled;
+	}
+
+	/**
+	 * @return the gathered futures.
+	 */
+	public List<Future> futures() {
+		return futures;
+	}
+
+	/**
+	 * @return the number of required successful futures.
+	 */
+	public int required() {
+		return required;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.foxnet.rmi.util.concurrent.Future#attachment()
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Object> attachment() {
+		return (List<Object>) super.attachment();
+	}
+}
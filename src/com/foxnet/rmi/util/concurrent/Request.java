@@ -31,6 +31,7 @@
  */
 package com.foxnet.rmi.util.concurrent;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -52,6 +53,15 @@ public final class Request extends Future {
 	// Used to store the initial data
 	private final Object data;
 
+	// Used to store the timeout in milliseconds (<= 0 means no timeout)
+	private volatile long timeout;
+
+	// Used to store the deadline (based on System.nanoTime())
+	private volatile long deadline;
+
+	// The future which is synchronized instead of this request or null
+	private volatile Future awaitedWith;
+
 	/**
 	 * Creates a new request using the given data and a generated unique id.
 	 * 
@@ -83,6 +93,79 @@ public final class Request extends Future {
 		this.data = data;
 	}
 
+	/**
+	 * Sets the timeout of this request. The deadline of this request is
+	 * calculated using the current time and the given timeout.
+	 * 
+	 * @param timeoutMillies
+	 *            The timeout in milliseconds. A value <= 0 means no timeout.
+	 * @return this for chaining.
+	 */
+	public Request timeout(long timeoutMillies) {
+		deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(timeoutMillies);
+		timeout = timeoutMillies;
+		return this;
+	}
+
+	/**
+	 * Sets the future which callers synchronize instead of this request, e.g.
+	 * the invocation which is completed by this request.
+	 * 
+	 * @param future
+	 *            The future.
+	 * @return this for chaining.
+	 */
+	public Request awaitedWith(Future future) {
+		awaitedWith = future;
+		return this;
+	}
+
+	/**
+	 * @return true if at least one thread waits for this request or the
+	 *         future which is synchronized instead, otherwise false.
+	 */
+	@Override
+	public boolean isAwaited() {
+		Future future = awaitedWith;
+		return super.isAwaited() || future != null && future.isAwaited();
+	}
+
+	/**
+	 * @return the timeout of this request in milliseconds. A value <= 0 means
+	 *         no timeout.
+	 */
+	public long timeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return true if this request has a deadline, otherwise false.
+	 */
+	public boolean hasDeadline() {
+		return timeout > 0;
+	}
+
+	/**
+	 * @return the remaining time until the deadline of this request is reached
+	 *         in milliseconds or {@link Long#MAX_VALUE} if this request does
+	 *         not have a deadline.
+	 */
+	public long remainingMillies() {
+		if (!hasDeadline()) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline
+				- System.nanoTime()));
+	}
+
+	/**
+	 * @return true if the deadline of this request is reached, otherwise false.
+	 */
+	public boolean isExpired() {
+		return hasDeadline() && deadline - System.nanoTime() <= 0;
+	}
+
 	/**
 	 * @return the data of this request.
 	 */
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2011 Christopher Probst
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of the 'FoxNet RMI' nor the names of its 
+ *   contributors may be used to endorse or promote products derived
+ *   from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR 
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.foxnet.rmi.util.concurrent;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timer which is shared by all parts which are not bound to a connection
+ * manager and its wheel timer (e.g. invocations waiting for capacity, gathers
+ * and the local transports). The tasks must be short, they are executed by a
+ * single daemon thread. Cancelled tasks are removed immediately, so they do
+ * not keep their futures reachable until their delay elapses.
+ * 
+ * @author Christopher Probst
+ */
+public final class SharedTimer {
+
+	// The executor of the timer tasks
+	private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(
+			1, new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "SharedTimer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		EXECUTOR.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Executes the given task once after the given delay.
+	 * 
+	 * @param task
+	 *            The task.
+	 * @param delay
+	 *            The delay.
+	 * @param unit
+	 *            The unit of the delay.
+	 * @return the future which can be used to cancel the task.
+	 */
+	public static ScheduledFuture<?> schedule(Runnable task, long delay,
+			TimeUnit unit) {
+		return EXECUTOR.schedule(task, delay, unit);
+	}
+
+	/**
+	 * Executes the given task periodically.
+	 * 
+	 * @param task
+	 *            The task.
+	 * @param delay
+	 *            The initial delay and the delay between two executions.
+	 * @param unit
+	 *            The unit of the delay.
+	 * @return the future which can be used to cancel the task.
+	 */
+	public static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task,
+			long delay, TimeUnit unit) {
+		return EXECUTOR.scheduleWithFixedDelay(task, delay, delay, unit);
+	}
+
+	private SharedTimer() {
+	}
+}
@@ -0,0 +1,50 @@
+package com.foxnet.rmi.util.iteration;
+
+import java.util.regex.Pattern;
+
+/**
+ * A filter which accepts strings matching a glob pattern. A '*' matches any
+ * sequence of characters and a '?' matches any single character.
+ * 
+ * @author Christopher Probst
+ */
+public final class GlobFilter implements Filter<String> {
+
+	// The compiled glob pattern
+	private final Pattern pattern;
+
+	public GlobFilter(String glob) {
+		if (glob == null) {
+			throw new NullPointerException("glob");
+		}
+
+		// Convert to a regular expression
+		StringBuilder regex = new StringBuilder(), literal = new StringBuilder();
+		for (char c : glob.toCharArray()) {
+			if (c == '*' || c == '?') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+
+		pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.foxnet.rmi.util.iteration.Filter#accept(java.lang.Object)
+	 */
+	@Override
+	public boolean accept(String element) {
+		return element != null && pattern.matcher(element).matches();
+	}
+}